@@ -0,0 +1,61 @@
+package com.refuel.benchmark;
+
+import com.refuel.business.RefuelConstants;
+import com.refuel.view.RefuelController;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of reading the monthly spending of a loaded data file and finding its extremes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx6g")
+public class RefuelAggregateBenchmark {
+
+    @Param({"10000", "1000000", "50000000"})
+    public long lineCount;
+
+    @Param({RefuelConstants.FUEL_TYPE_ALL, "98"})
+    public String fuelType;
+
+    private RefuelController refuelController;
+    private Map<Integer, Double> refuelingByMonth;
+
+    @Setup
+    public void setUp() throws Exception {
+        refuelController = new RefuelController();
+        refuelController.fillRefuelInfoList(RefuelDataGenerator.dataFile(lineCount));
+        refuelingByMonth = refuelController.createRefuelingByMonth(fuelType);
+    }
+
+    @Benchmark
+    public Map<Integer, Double> createRefuelingByMonth() {
+        return refuelController.createRefuelingByMonth(fuelType);
+    }
+
+    @Benchmark
+    public Double getMaxOfRefuelingByMonth() {
+        return refuelController.getMaxOfRefuelingByMonth(refuelingByMonth);
+    }
+
+    @Benchmark
+    public Double getMinOfRefuelingByMonth() {
+        return refuelController.getMinOfRefuelingByMonth(refuelingByMonth);
+    }
+}
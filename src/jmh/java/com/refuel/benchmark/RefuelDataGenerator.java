@@ -0,0 +1,95 @@
+package com.refuel.benchmark;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.util.Random;
+
+/**
+ * Writes synthetic refuel data files for the benchmarks.
+ * <p>
+ * The files are generated from a fixed seed, so every run measures the same data: a few fuel types, prices and
+ * amounts with both decimal separators, and dates spread over several years.
+ */
+public final class RefuelDataGenerator {
+
+    private static final String[] FUEL_TYPES = {"98", "95", "D", "E85", "LPG"};
+    private static final LocalDate FIRST_DATE = LocalDate.of(2010, 1, 1);
+    private static final int DAYS = 10 * 365;
+    private static final long SEED = 20190201L;
+
+    private RefuelDataGenerator() {
+    }
+
+    /**
+     * usage: RefuelDataGenerator lineCount outputFile
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: RefuelDataGenerator <lineCount> <outputFile>");
+            System.exit(1);
+        }
+        generate(Long.parseLong(args[0]), new File(args[1]));
+    }
+
+    /**
+     * returns a data file with the given number of lines in the temp directory, generating it only if it does not
+     * exist yet, since the larger files take a while to write
+     */
+    public static File dataFile(long lineCount) throws IOException {
+        File file = new File(System.getProperty("java.io.tmpdir"), "refuel-benchmark-" + lineCount + ".txt");
+        if (!file.isFile()) {
+            File partFile = new File(file.getPath() + ".part");
+            generate(lineCount, partFile);
+            Files.move(partFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        return file;
+    }
+
+    public static void generate(long lineCount, File file) throws IOException {
+        Random random = new Random(SEED);
+        try (BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(file.toPath()),
+                StandardCharsets.UTF_8), 1 << 16)) {
+            for (long line = 0; line < lineCount; line++) {
+                writer.write(nextLine(random));
+                writer.newLine();
+            }
+        }
+    }
+
+    /**
+     * returns lines that can be parsed without a file, e.g. for the parser benchmark
+     */
+    public static String[] lines(int lineCount) {
+        Random random = new Random(SEED);
+        String[] lines = new String[lineCount];
+        for (int line = 0; line < lineCount; line++) {
+            lines[line] = nextLine(random);
+        }
+        return lines;
+    }
+
+    private static String nextLine(Random random) {
+        char separator = random.nextBoolean() ? '.' : ',';
+        LocalDate date = FIRST_DATE.plusDays(random.nextInt(DAYS));
+        return FUEL_TYPES[random.nextInt(FUEL_TYPES.length)] + '|'
+                + decimal(1000 + random.nextInt(1500), 3, separator) + '|'
+                + decimal(500 + random.nextInt(6000), 2, separator) + '|'
+                + twoDigits(date.getDayOfMonth()) + '.' + twoDigits(date.getMonthValue()) + '.' + date.getYear();
+    }
+
+    private static String decimal(int unscaled, int scale, char separator) {
+        String digits = String.valueOf(unscaled);
+        int point = digits.length() - scale;
+        return digits.substring(0, point) + separator + digits.substring(point);
+    }
+
+    private static String twoDigits(int value) {
+        return value < 10 ? "0" + value : String.valueOf(value);
+    }
+}
@@ -0,0 +1,46 @@
+package com.refuel.benchmark;
+
+import com.refuel.view.RefuelController;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to load a whole data file, including parsing and building the aggregates.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx6g")
+public class RefuelLoadBenchmark {
+
+    @Param({"10000", "1000000", "50000000"})
+    public long lineCount;
+
+    private File dataFile;
+
+    @Setup
+    public void setUp() throws Exception {
+        dataFile = RefuelDataGenerator.dataFile(lineCount);
+    }
+
+    @Benchmark
+    public RefuelController fillRefuelInfoList() throws Exception {
+        RefuelController refuelController = new RefuelController();
+        refuelController.fillRefuelInfoList(dataFile);
+        return refuelController;
+    }
+}
@@ -0,0 +1,50 @@
+package com.refuel.benchmark;
+
+import com.refuel.model.RefuelInfo;
+import com.refuel.view.RefuelController;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of parsing single data file lines into records.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RefuelParseBenchmark {
+
+    private static final int LINES = 1024;
+
+    private RefuelController refuelController;
+    private String[] lines;
+
+    @Setup
+    public void setUp() {
+        refuelController = new RefuelController();
+        lines = RefuelDataGenerator.lines(LINES);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LINES)
+    public void generateRefuelnfo(Blackhole blackhole) {
+        for (String line : lines) {
+            RefuelInfo refuelInfo = refuelController.generateRefuelnfo(line);
+            blackhole.consume(refuelInfo);
+        }
+    }
+}
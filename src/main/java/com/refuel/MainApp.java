@@ -1,5 +1,7 @@
 package com.refuel;
 
+import com.refuel.business.RefuelConstants;
+import com.refuel.business.metrics.RefuelMetrics;
 import com.refuel.view.RefuelController;
 import javafx.application.Application;
 import javafx.event.EventHandler;
@@ -34,11 +36,21 @@ public class MainApp extends Application {
         this.primaryStage.getIcons().add(new Image("images/icon.png"));
 
         initClose();
+        initMetrics();
         initRootLayout();
         initRefuel();
         setScene();
     }
 
+    /**
+     * Publishes the metrics over JMX and starts logging them.
+     */
+    private void initMetrics() {
+        RefuelMetrics.get().registerMBean();
+        RefuelMetrics.get().startReporting(Long.getLong(RefuelConstants.METRICS_LOG_INTERVAL_PROPERTY,
+                RefuelConstants.DEFAULT_METRICS_LOG_INTERVAL_SECONDS));
+    }
+
     /**
      * Initializes the root layout.
      */
@@ -95,6 +107,9 @@ public class MainApp extends Application {
         );
     }
 
-    private EventHandler<WindowEvent> stopThreadsEventHandler = event -> controller.stopDataFileWatcher();
+    private EventHandler<WindowEvent> stopThreadsEventHandler = event -> {
+        controller.stopDataFileWatcher();
+        controller.stopQueryServer();
+    };
 
 }
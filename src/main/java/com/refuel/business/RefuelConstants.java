@@ -5,4 +5,31 @@ package com.refuel.business;
  */
 public interface RefuelConstants {
     String FUEL_TYPE_ALL = "all";
+    String VEHICLE_ALL = "all";
+
+    // Time without modify events to wait for before a changed data file is reloaded.
+    String RELOAD_QUIET_PERIOD_PROPERTY = "refuel.reload.quietPeriodMillis";
+    long DEFAULT_RELOAD_QUIET_PERIOD_MILLIS = 300;
+
+    // Whether the parsed records are kept in a snapshot file next to each data file, off by default.
+    String SNAPSHOT_ENABLED_PROPERTY = "refuel.snapshot.enabled";
+
+    // Seconds between the log lines of the metrics, 0 turns the log lines off.
+    String METRICS_LOG_INTERVAL_PROPERTY = "refuel.metrics.logIntervalSeconds";
+    long DEFAULT_METRICS_LOG_INTERVAL_SECONDS = 60;
+
+    // Whether invalid lines of the data files are skipped and written to a rejects file instead of failing the load.
+    String LENIENT_LOAD_PROPERTY = "refuel.load.lenient";
+
+    // Whether the records that repeat an earlier record of their data file are dropped when it is loaded.
+    String DEDUPLICATE_LOAD_PROPERTY = "refuel.load.deduplicate";
+
+    // Whether the records of the data files are only streamed into the aggregates instead of being kept.
+    String AGGREGATE_ONLY_LOAD_PROPERTY = "refuel.load.aggregateOnly";
+
+    // Whether the bars of the chart grow or shrink to their new values when the chart is refreshed.
+    String CHART_ANIMATED_PROPERTY = "refuel.chart.animated";
+
+    // Port of the local HTTP server answering the spending, the server is not started without it.
+    String QUERY_SERVER_PORT_PROPERTY = "refuel.server.port";
 }
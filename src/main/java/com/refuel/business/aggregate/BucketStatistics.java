@@ -0,0 +1,57 @@
+package com.refuel.business.aggregate;
+
+import com.refuel.business.exception.RefuelDataException;
+
+/**
+ * Statistics of consecutive time buckets while the days are merged into them, the merged fill size sketches are
+ * created only for the buckets with refuelings.
+ */
+class BucketStatistics {
+
+    final long[] spent;
+    final int[] refuelCount;
+    final long[] liters;
+    final long[] minPrice;
+    final long[] maxPrice;
+    final QuantileSketch[] fillSizes;
+
+    BucketStatistics(int bucketCount) {
+        spent = new long[bucketCount];
+        refuelCount = new int[bucketCount];
+        liters = new long[bucketCount];
+        minPrice = new long[bucketCount];
+        maxPrice = new long[bucketCount];
+        fillSizes = new QuantileSketch[bucketCount];
+    }
+
+    int getBucketCount() {
+        return spent.length;
+    }
+
+    void add(int bucket, long daySpent, int dayRefuelCount, long dayLiters, long dayMinPrice, long dayMaxPrice,
+             QuantileSketch dayFillSizes) {
+        if (refuelCount[bucket] == 0) {
+            minPrice[bucket] = dayMinPrice;
+            maxPrice[bucket] = dayMaxPrice;
+            fillSizes[bucket] = new QuantileSketch();
+        } else {
+            minPrice[bucket] = Math.min(minPrice[bucket], dayMinPrice);
+            maxPrice[bucket] = Math.max(maxPrice[bucket], dayMaxPrice);
+        }
+        spent[bucket] = sum(spent[bucket], daySpent);
+        refuelCount[bucket] += dayRefuelCount;
+        liters[bucket] = sum(liters[bucket], dayLiters);
+        fillSizes[bucket].addAll(dayFillSizes);
+    }
+
+    /**
+     * returns the sum of two spendings or liters, throws RefuelDataException if it does not fit in a long
+     */
+    static long sum(long units, long otherUnits) {
+        try {
+            return Math.addExact(units, otherUnits);
+        } catch (ArithmeticException e) {
+            throw new RefuelDataException("Fuel Spending/Amount Is Too Large To Be Added Up");
+        }
+    }
+}
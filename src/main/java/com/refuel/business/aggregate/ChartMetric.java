@@ -0,0 +1,96 @@
+package com.refuel.business.aggregate;
+
+import com.refuel.model.FixedPoint;
+
+/**
+ * Statistics of a time bucket that the bars of the chart can show. Every metric is kept as a long in its own unit
+ * and divided by its scale to be shown, so the buckets with the highest and lowest values are found exactly.
+ */
+public enum ChartMetric {
+
+    SPENT("Spent Money", "Euro", FixedPoint.SPEND_SCALE, "0.000"),
+    REFUEL_COUNT("Refuelings", "Refuelings", 1, "0"),
+    LITERS("Liters", "Liters", FixedPoint.SCALE, "0.00"),
+    AVERAGE_PRICE("Average Price/Liter", "Euro/Liter", FixedPoint.SCALE, "0.000"),
+    MIN_PRICE("Lowest Price/Liter", "Euro/Liter", FixedPoint.SCALE, "0.000"),
+    MAX_PRICE("Highest Price/Liter", "Euro/Liter", FixedPoint.SCALE, "0.000"),
+    MEDIAN_FILL("Median Fill Size", "Liters", FixedPoint.SCALE, "0.0"),
+    P95_FILL("95th Percentile Fill Size", "Liters", FixedPoint.SCALE, "0.0");
+
+    private final String displayName;
+    private final String axisLabel;
+    private final long scale;
+    private final String labelPattern;
+
+    ChartMetric(String displayName, String axisLabel, long scale, String labelPattern) {
+        this.displayName = displayName;
+        this.axisLabel = axisLabel;
+        this.scale = scale;
+        this.labelPattern = labelPattern;
+    }
+
+    public String getDisplayName() {
+        return displayName;
+    }
+
+    public String getAxisLabel() {
+        return axisLabel;
+    }
+
+    /**
+     * returns the number of units of the metric in one shown unit, e.g. in one euro
+     */
+    public long getScale() {
+        return scale;
+    }
+
+    /**
+     * returns the DecimalFormat pattern of the labels on top of the bars
+     */
+    public String getLabelPattern() {
+        return labelPattern;
+    }
+
+    /**
+     * returns the value of the metric for the bucket of the statistics, in units of the metric
+     */
+    long valueOf(BucketStatistics statistics, int bucket) {
+        switch (this) {
+            case SPENT:
+                return statistics.spent[bucket];
+            case REFUEL_COUNT:
+                return statistics.refuelCount[bucket];
+            case LITERS:
+                return statistics.liters[bucket];
+            case AVERAGE_PRICE:
+                return averagePrice(statistics.spent[bucket], statistics.liters[bucket]);
+            case MIN_PRICE:
+                return statistics.minPrice[bucket];
+            case MAX_PRICE:
+                return statistics.maxPrice[bucket];
+            case MEDIAN_FILL:
+                return statistics.fillSizes[bucket] == null ? 0 : statistics.fillSizes[bucket].quantile(0.5);
+            case P95_FILL:
+                return statistics.fillSizes[bucket] == null ? 0 : statistics.fillSizes[bucket].quantile(0.95);
+            default:
+                throw new IllegalStateException("Unknown metric: " + this);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return displayName;
+    }
+
+    /**
+     * the spending units divided by the liter units are price units, rounded half up; the average is weighted by
+     * the liters, like the price of all the fuel of the bucket together
+     */
+    private static long averagePrice(long spent, long liters) {
+        if (liters == 0) {
+            return 0;
+        }
+        long price = spent / liters;
+        return spent % liters * 2 >= liters ? price + 1 : price;
+    }
+}
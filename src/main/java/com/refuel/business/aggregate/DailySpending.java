@@ -0,0 +1,362 @@
+package com.refuel.business.aggregate;
+
+import com.refuel.business.time.Granularity;
+import com.refuel.model.FixedPoint;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Statistics of the refuelings per day, stored in blocks of days indexed by epoch day: money spent, number of
+ * refuelings, liters, the lowest and highest price per liter and a sketch of the fill sizes. Money is kept in
+ * spending units of FixedPoint, so the sums are exact whatever order the refuelings are added or removed in; a sum
+ * that does not fit in a long is reported instead of wrapping around.
+ * <p>
+ * A block is only allocated for days with refuelings, so a mistyped date centuries away from the others costs one
+ * more block instead of arrays that span the years in between.
+ * <p>
+ * Every coarser time bucket (week, month, quarter, year) is made of days, so the statistics can be grouped by any
+ * granularity by merging at most a few thousand days instead of going over the records again.
+ */
+public class DailySpending {
+
+    private static final int BLOCK_SHIFT = 9;
+    private static final int BLOCK_DAYS = 1 << BLOCK_SHIFT;
+
+    // Key of the first block, the epoch day of its first day shifted right by BLOCK_SHIFT.
+    private int firstBlock;
+    // Null for the blocks without refuelings.
+    private Block[] blocks = new Block[0];
+    private long totalCount;
+
+    /**
+     * adds a refueling on the day
+     */
+    public void add(int epochDay, long priceUnits, long amountUnits) {
+        addTotals(epochDay, priceUnits, amountUnits);
+        blockOf(epochDay).fillSizes[epochDay & (BLOCK_DAYS - 1)].add(amountUnits, 1);
+    }
+
+    /**
+     * adds a refueling on the day except for its fill size, which must be added with addFillSizes
+     */
+    void addTotals(int epochDay, long priceUnits, long amountUnits) {
+        Block block = ensureBlock(epochDay);
+        int index = epochDay & (BLOCK_DAYS - 1);
+        // summed first, so a refueling that does not fit is not added at all
+        long spent = BucketStatistics.sum(block.spent[index], FixedPoint.spendOf(priceUnits, amountUnits));
+        long liters = BucketStatistics.sum(block.liters[index], amountUnits);
+        if (block.refuelCount[index] == 0) {
+            block.minPrice[index] = priceUnits;
+            block.maxPrice[index] = priceUnits;
+            block.fillSizes[index] = new QuantileSketch();
+            block.days++;
+        } else {
+            block.minPrice[index] = Math.min(block.minPrice[index], priceUnits);
+            block.maxPrice[index] = Math.max(block.maxPrice[index], priceUnits);
+        }
+        block.refuelCount[index]++;
+        block.spent[index] = spent;
+        block.liters[index] = liters;
+        totalCount++;
+    }
+
+    /**
+     * adds the fill sizes between from (inclusive) and to (exclusive) of refuelings on the day whose totals were
+     * added before
+     */
+    void addFillSizes(int epochDay, long[] amountUnits, int from, int to) {
+        QuantileSketch sketch = blockOf(epochDay).fillSizes[epochDay & (BLOCK_DAYS - 1)];
+        for (int i = from; i < to; i++) {
+            sketch.add(amountUnits[i], 1);
+        }
+    }
+
+    /**
+     * Removes a refueling added before. The lowest and highest price of a day cannot be taken back without the
+     * other refuelings of the day, so false is returned when the refueling had one of them and the day still has
+     * refuelings; the prices of the day are then no longer exact.
+     */
+    public boolean remove(int epochDay, long priceUnits, long amountUnits) {
+        Block block = blockOf(epochDay);
+        int index = epochDay & (BLOCK_DAYS - 1);
+        block.refuelCount[index]--;
+        block.spent[index] -= FixedPoint.spendOf(priceUnits, amountUnits);
+        block.liters[index] -= amountUnits;
+        block.fillSizes[index].add(amountUnits, -1);
+        totalCount--;
+        if (block.refuelCount[index] == 0) {
+            block.fillSizes[index] = null;
+            block.days--;
+            return true;
+        }
+        return priceUnits != block.minPrice[index] && priceUnits != block.maxPrice[index];
+    }
+
+    public void addAll(DailySpending other) {
+        for (int otherBlockIndex = 0; otherBlockIndex < other.blocks.length; otherBlockIndex++) {
+            Block otherBlock = other.blocks[otherBlockIndex];
+            if (otherBlock == null || otherBlock.days == 0) {
+                continue;
+            }
+            Block block = ensureBlock((other.firstBlock + otherBlockIndex) << BLOCK_SHIFT);
+            for (int index = 0; index < BLOCK_DAYS; index++) {
+                if (otherBlock.refuelCount[index] == 0) {
+                    continue;
+                }
+                long spent = BucketStatistics.sum(block.spent[index], otherBlock.spent[index]);
+                long liters = BucketStatistics.sum(block.liters[index], otherBlock.liters[index]);
+                if (block.refuelCount[index] == 0) {
+                    block.minPrice[index] = otherBlock.minPrice[index];
+                    block.maxPrice[index] = otherBlock.maxPrice[index];
+                    block.fillSizes[index] = new QuantileSketch();
+                    block.days++;
+                } else {
+                    block.minPrice[index] = Math.min(block.minPrice[index], otherBlock.minPrice[index]);
+                    block.maxPrice[index] = Math.max(block.maxPrice[index], otherBlock.maxPrice[index]);
+                }
+                block.refuelCount[index] += otherBlock.refuelCount[index];
+                block.spent[index] = spent;
+                block.liters[index] = liters;
+                block.fillSizes[index].addAll(otherBlock.fillSizes[index]);
+                totalCount += otherBlock.refuelCount[index];
+            }
+        }
+    }
+
+    public boolean isEmpty() {
+        return totalCount == 0;
+    }
+
+    /**
+     * returns the first day with refuelings, the spending must not be empty
+     */
+    public int getFirstDay() {
+        int blockIndex = 0;
+        while (blocks[blockIndex] == null || blocks[blockIndex].days == 0) {
+            blockIndex++;
+        }
+        int index = 0;
+        while (blocks[blockIndex].refuelCount[index] == 0) {
+            index++;
+        }
+        return firstDayOf(blockIndex) + index;
+    }
+
+    /**
+     * returns the last day with refuelings, the spending must not be empty
+     */
+    public int getLastDay() {
+        int blockIndex = blocks.length - 1;
+        while (blocks[blockIndex] == null || blocks[blockIndex].days == 0) {
+            blockIndex--;
+        }
+        int index = BLOCK_DAYS - 1;
+        while (blocks[blockIndex].refuelCount[index] == 0) {
+            index--;
+        }
+        return firstDayOf(blockIndex) + index;
+    }
+
+    /**
+     * merges the days between fromDay and toDay (both inclusive) into the buckets of the granularity, the bucket
+     * with key firstBucket goes to index 0 of the statistics
+     */
+    void sumInto(Granularity granularity, int fromDay, int toDay, int firstBucket, BucketStatistics statistics) {
+        int fromBlockIndex = Math.max(fromDay >> BLOCK_SHIFT, firstBlock) - firstBlock;
+        int toBlockIndex = Math.min(toDay >> BLOCK_SHIFT, firstBlock + blocks.length - 1) - firstBlock;
+        for (int blockIndex = fromBlockIndex; blockIndex <= toBlockIndex; blockIndex++) {
+            Block block = blocks[blockIndex];
+            if (block == null || block.days == 0) {
+                continue;
+            }
+            int blockStart = firstDayOf(blockIndex);
+            int from = Math.max(fromDay, blockStart) - blockStart;
+            int to = Math.min(toDay, blockStart + (BLOCK_DAYS - 1)) - blockStart;
+            for (int index = from; index <= to; index++) {
+                if (block.refuelCount[index] != 0) {
+                    statistics.add(granularity.bucketOf(blockStart + index) - firstBucket, block.spent[index],
+                            block.refuelCount[index], block.liters[index], block.minPrice[index],
+                            block.maxPrice[index], block.fillSizes[index]);
+                }
+            }
+        }
+    }
+
+    /**
+     * returns a copy that only covers the blocks between the first and last refueling
+     */
+    public DailySpending copy() {
+        return copy(Integer.MIN_VALUE, Integer.MAX_VALUE);
+    }
+
+    /**
+     * returns a copy of the refuelings between fromDay and toDay (both inclusive) that only covers the blocks
+     * between the first and last of them
+     */
+    public DailySpending copy(int fromDay, int toDay) {
+        DailySpending copy = new DailySpending();
+        if (isEmpty()) {
+            return copy;
+        }
+        int from = Math.max(fromDay, getFirstDay());
+        int to = Math.min(toDay, getLastDay());
+        if (from > to) {
+            return copy;
+        }
+
+        int fromBlockIndex = (from >> BLOCK_SHIFT) - firstBlock;
+        int toBlockIndex = (to >> BLOCK_SHIFT) - firstBlock;
+        Block[] copiedBlocks = new Block[toBlockIndex - fromBlockIndex + 1];
+        int firstCopied = -1;
+        int lastCopied = -1;
+        for (int blockIndex = fromBlockIndex; blockIndex <= toBlockIndex; blockIndex++) {
+            Block block = blocks[blockIndex];
+            if (block == null || block.days == 0) {
+                continue;
+            }
+            int blockStart = firstDayOf(blockIndex);
+            Block copiedBlock = block.copy(Math.max(from, blockStart) - blockStart,
+                    Math.min(to, blockStart + (BLOCK_DAYS - 1)) - blockStart);
+            if (copiedBlock.days == 0) {
+                continue;
+            }
+            copiedBlocks[blockIndex - fromBlockIndex] = copiedBlock;
+            copy.totalCount += copiedBlock.refuelings();
+            firstCopied = firstCopied < 0 ? blockIndex - fromBlockIndex : firstCopied;
+            lastCopied = blockIndex - fromBlockIndex;
+        }
+        if (firstCopied >= 0) {
+            copy.firstBlock = firstBlock + fromBlockIndex + firstCopied;
+            copy.blocks = Arrays.copyOfRange(copiedBlocks, firstCopied, lastCopied + 1);
+        }
+        return copy;
+    }
+
+    /**
+     * writes the days with refuelings, e.g. into a snapshot file
+     */
+    public void writeTo(DataOutput out) throws IOException {
+        int dayCount = 0;
+        for (Block block : blocks) {
+            dayCount += block == null ? 0 : block.days;
+        }
+        out.writeInt(dayCount);
+        for (int blockIndex = 0; blockIndex < blocks.length; blockIndex++) {
+            Block block = blocks[blockIndex];
+            if (block == null || block.days == 0) {
+                continue;
+            }
+            for (int index = 0; index < BLOCK_DAYS; index++) {
+                if (block.refuelCount[index] != 0) {
+                    out.writeInt(firstDayOf(blockIndex) + index);
+                    out.writeInt(block.refuelCount[index]);
+                    out.writeLong(block.spent[index]);
+                    out.writeLong(block.liters[index]);
+                    out.writeLong(block.minPrice[index]);
+                    out.writeLong(block.maxPrice[index]);
+                    block.fillSizes[index].writeTo(out);
+                }
+            }
+        }
+    }
+
+    public static DailySpending readFrom(DataInput in) throws IOException {
+        DailySpending spending = new DailySpending();
+        int dayCount = in.readInt();
+        for (int i = 0; i < dayCount; i++) {
+            int epochDay = in.readInt();
+            Block block = spending.ensureBlock(epochDay);
+            int index = epochDay & (BLOCK_DAYS - 1);
+            block.refuelCount[index] = in.readInt();
+            block.spent[index] = in.readLong();
+            block.liters[index] = in.readLong();
+            block.minPrice[index] = in.readLong();
+            block.maxPrice[index] = in.readLong();
+            block.fillSizes[index] = QuantileSketch.readFrom(in);
+            block.days++;
+            spending.totalCount += block.refuelCount[index];
+        }
+        return spending;
+    }
+
+    private int firstDayOf(int blockIndex) {
+        return (firstBlock + blockIndex) << BLOCK_SHIFT;
+    }
+
+    /**
+     * returns the block of a day that has refuelings
+     */
+    private Block blockOf(int epochDay) {
+        return blocks[(epochDay >> BLOCK_SHIFT) - firstBlock];
+    }
+
+    private Block ensureBlock(int epochDay) {
+        int key = epochDay >> BLOCK_SHIFT;
+        int length = blocks.length;
+        if (length == 0) {
+            firstBlock = key;
+            blocks = new Block[1];
+        } else if (key < firstBlock) {
+            // grow by at least the current length, so adding days in descending order stays linear
+            int grow = Math.max(firstBlock - key, length);
+            Block[] newBlocks = new Block[length + grow];
+            System.arraycopy(blocks, 0, newBlocks, grow, length);
+            blocks = newBlocks;
+            firstBlock -= grow;
+        } else if (key - firstBlock >= length) {
+            blocks = Arrays.copyOf(blocks, Math.max(key - firstBlock + 1, length * 2));
+        }
+        int blockIndex = key - firstBlock;
+        if (blocks[blockIndex] == null) {
+            blocks[blockIndex] = new Block();
+        }
+        return blocks[blockIndex];
+    }
+
+    /**
+     * The statistics of BLOCK_DAYS consecutive days, indexed by the day within the block.
+     */
+    private static final class Block {
+
+        private final long[] spent = new long[BLOCK_DAYS];
+        private final int[] refuelCount = new int[BLOCK_DAYS];
+        // Units of FixedPoint, like the fuel prices and amounts.
+        private final long[] liters = new long[BLOCK_DAYS];
+        private final long[] minPrice = new long[BLOCK_DAYS];
+        private final long[] maxPrice = new long[BLOCK_DAYS];
+        // Null for the days without refuelings.
+        private final QuantileSketch[] fillSizes = new QuantileSketch[BLOCK_DAYS];
+        // Days of the block with refuelings.
+        private int days;
+
+        /**
+         * returns a block with a copy of the days between from and to (both inclusive)
+         */
+        Block copy(int from, int to) {
+            Block copy = new Block();
+            for (int index = from; index <= to; index++) {
+                if (refuelCount[index] != 0) {
+                    copy.spent[index] = spent[index];
+                    copy.refuelCount[index] = refuelCount[index];
+                    copy.liters[index] = liters[index];
+                    copy.minPrice[index] = minPrice[index];
+                    copy.maxPrice[index] = maxPrice[index];
+                    copy.fillSizes[index] = fillSizes[index].copy();
+                    copy.days++;
+                }
+            }
+            return copy;
+        }
+
+        long refuelings() {
+            long refuelings = 0;
+            for (int count : refuelCount) {
+                refuelings += count;
+            }
+            return refuelings;
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package com.refuel.business.aggregate;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Histogram of non-negative long values in logarithmic buckets, from which quantiles are read with a relative error
+ * below 1%.
+ * <p>
+ * Values below 64 have a bucket of their own, every following power of two is split into 64 buckets. The buckets
+ * are the same for every sketch, so sketches are merged by adding their counts and a value added before can be
+ * removed again by subtracting it; the sketch of a month is the sum of the sketches of its days. Only the counts
+ * around the buckets in use are kept, and copies keep just the ones between the lowest and highest bucket in use.
+ */
+class QuantileSketch {
+
+    private static final int SUB_BUCKET_BITS = 6;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_INDEX = indexOf(Long.MAX_VALUE);
+
+    private int firstIndex;
+    private int[] counts = new int[0];
+    private long totalCount;
+
+    /**
+     * adds count values, a negative count removes values added before
+     */
+    void add(long value, int count) {
+        if (value < 0) {
+            throw new IllegalArgumentException("Value cannot be negative: " + value);
+        }
+        int index = indexOf(value);
+        ensureIndex(index);
+        counts[index - firstIndex] += count;
+        totalCount += count;
+    }
+
+    void addAll(QuantileSketch other) {
+        if (other.totalCount == 0) {
+            return;
+        }
+        ensureIndex(other.firstIndex);
+        ensureIndex(other.firstIndex + other.counts.length - 1);
+        for (int i = 0; i < other.counts.length; i++) {
+            counts[other.firstIndex + i - firstIndex] += other.counts[i];
+        }
+        totalCount += other.totalCount;
+    }
+
+    long getTotalCount() {
+        return totalCount;
+    }
+
+    /**
+     * returns the value at the quantile (e.g. 0.95), the middle of its bucket; 0 if the sketch is empty
+     */
+    long quantile(double quantile) {
+        if (totalCount <= 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(quantile * totalCount));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return middleOf(firstIndex + i);
+            }
+        }
+        return middleOf(firstIndex + counts.length - 1);
+    }
+
+    QuantileSketch copy() {
+        QuantileSketch copy = new QuantileSketch();
+        int from = 0;
+        int to = counts.length;
+        while (from < to && counts[from] == 0) {
+            from++;
+        }
+        while (to > from && counts[to - 1] == 0) {
+            to--;
+        }
+        copy.firstIndex = firstIndex + from;
+        copy.counts = Arrays.copyOfRange(counts, from, to);
+        copy.totalCount = totalCount;
+        return copy;
+    }
+
+    /**
+     * writes the counts between the lowest and highest bucket in use, e.g. into a snapshot file
+     */
+    void writeTo(DataOutput out) throws IOException {
+        QuantileSketch copy = copy();
+        out.writeInt(copy.firstIndex);
+        out.writeInt(copy.counts.length);
+        for (int count : copy.counts) {
+            out.writeInt(count);
+        }
+    }
+
+    static QuantileSketch readFrom(DataInput in) throws IOException {
+        QuantileSketch sketch = new QuantileSketch();
+        sketch.firstIndex = in.readInt();
+        int length = in.readInt();
+        if (length < 0 || sketch.firstIndex < 0 || sketch.firstIndex + length > MAX_INDEX + 1) {
+            throw new IOException("Invalid sketch buckets: " + sketch.firstIndex + ", " + length);
+        }
+        sketch.counts = new int[length];
+        for (int i = 0; i < length; i++) {
+            sketch.counts[i] = in.readInt();
+            sketch.totalCount += sketch.counts[i];
+        }
+        return sketch;
+    }
+
+    static int indexOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int shift = Long.SIZE - 1 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return ((shift + 1) << SUB_BUCKET_BITS) + (int) (value >>> shift) - SUB_BUCKETS;
+    }
+
+    static long lowestOf(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int shift = (index >>> SUB_BUCKET_BITS) - 1;
+        return (long) ((index & (SUB_BUCKETS - 1)) + SUB_BUCKETS) << shift;
+    }
+
+    static long middleOf(int index) {
+        long lowest = lowestOf(index);
+        long highest = index == MAX_INDEX ? Long.MAX_VALUE : lowestOf(index + 1) - 1;
+        return lowest + (highest - lowest) / 2;
+    }
+
+    /**
+     * grows by at least the current length, so that adding values in any order stays linear; the unused buckets
+     * at both ends count 0
+     */
+    private void ensureIndex(int index) {
+        int length = counts.length;
+        if (length == 0) {
+            firstIndex = index;
+            counts = new int[1];
+        } else if (index < firstIndex) {
+            int grow = Math.min(firstIndex, Math.max(firstIndex - index, length));
+            int[] newCounts = new int[length + grow];
+            System.arraycopy(counts, 0, newCounts, grow, length);
+            counts = newCounts;
+            firstIndex -= grow;
+        } else if (index - firstIndex >= length) {
+            counts = Arrays.copyOf(counts, Math.min(MAX_INDEX - firstIndex + 1,
+                    Math.max(index - firstIndex + 1, length * 2)));
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package com.refuel.business.aggregate;
+
+import com.refuel.business.RefuelConstants;
+import com.refuel.business.time.EpochDays;
+import com.refuel.business.time.Granularity;
+import com.refuel.model.FixedPoint;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Immutable copy of the daily statistics of every fuel type, handed from the loading thread to the chart, which
+ * groups them into the time buckets of the selected granularity.
+ */
+public class RefuelChartData {
+
+    public static final RefuelChartData EMPTY = new RefuelChartData(Collections.emptyList(), Collections.emptyMap());
+
+    private final List<String> fuelTypes;
+    private final Map<String, DailySpending> dailySpending;
+
+    /**
+     * fuelTypes are the fuel types with refuelings, dailySpending also has the rollup of all fuel types; the daily
+     * spending is owned by the chart data and must not be changed afterwards
+     */
+    public RefuelChartData(List<String> fuelTypes, Map<String, DailySpending> dailySpending) {
+        this.fuelTypes = Collections.unmodifiableList(fuelTypes);
+        this.dailySpending = dailySpending;
+    }
+
+    /**
+     * adds up the spending of several data sets, e.g. of all vehicles of the fleet
+     */
+    public static RefuelChartData merge(Collection<RefuelChartData> chartDataList) {
+        Set<String> fuelTypes = new LinkedHashSet<>();
+        Map<String, DailySpending> merged = new HashMap<>();
+        for (RefuelChartData chartData : chartDataList) {
+            fuelTypes.addAll(chartData.fuelTypes);
+            for (Map.Entry<String, DailySpending> entry : chartData.dailySpending.entrySet()) {
+                merged.computeIfAbsent(entry.getKey(), fuelType -> new DailySpending()).addAll(entry.getValue());
+            }
+        }
+        Map<String, DailySpending> dailySpending = new HashMap<>();
+        merged.forEach((fuelType, spending) -> dailySpending.put(fuelType, spending.copy()));
+        return new RefuelChartData(new ArrayList<>(fuelTypes), dailySpending);
+    }
+
+    public List<String> getFuelTypes() {
+        return fuelTypes;
+    }
+
+    /**
+     * returns the spending between fromDay and toDay (both inclusive, epoch days), e.g. to draw the chart of a date
+     * range; the fuel types are the ones with refuelings in the range
+     */
+    public RefuelChartData between(int fromDay, int toDay) {
+        Map<String, DailySpending> rangeSpending = new HashMap<>();
+        for (Map.Entry<String, DailySpending> entry : dailySpending.entrySet()) {
+            DailySpending spending = entry.getValue().copy(fromDay, toDay);
+            if (!spending.isEmpty()) {
+                rangeSpending.put(entry.getKey(), spending);
+            }
+        }
+        List<String> rangeFuelTypes = new ArrayList<>();
+        for (String fuelType : fuelTypes) {
+            if (rangeSpending.containsKey(fuelType)) {
+                rangeFuelTypes.add(fuelType);
+            }
+        }
+        return new RefuelChartData(rangeFuelTypes, rangeSpending);
+    }
+
+    /**
+     * returns money spent on refuelings of the fuel type (or all of them) in the months of the year, only months
+     * with refuelings are included
+     */
+    public Map<Integer, Double> getRefuelingByMonth(String fuelType, int year) {
+        Map<Integer, Double> refuelingByMonth = new HashMap<>();
+        DailySpending spending = dailySpending.get(fuelType);
+        if (spending == null || spending.isEmpty()) {
+            return refuelingByMonth;
+        }
+
+        BucketStatistics statistics = new BucketStatistics(12);
+        spending.sumInto(Granularity.MONTH, EpochDays.of(year, 1, 1), EpochDays.of(year, 12, 31),
+                Granularity.MONTH.firstBucketOfPage(year), statistics);
+        for (int month = 0; month < 12; month++) {
+            if (statistics.refuelCount[month] > 0) {
+                refuelingByMonth.put(month + 1, FixedPoint.spendToDouble(statistics.spent[month]));
+            }
+        }
+        return refuelingByMonth;
+    }
+
+    /**
+     * returns the year of the latest refueling, null if there are no refuelings
+     */
+    public Integer getLastYear() {
+        DailySpending spending = dailySpending.get(RefuelConstants.FUEL_TYPE_ALL);
+        return spending == null || spending.isEmpty() ? null : EpochDays.year(spending.getLastDay());
+    }
+
+    /**
+     * groups the spending of the fuel type (or all of them) into the buckets of the given page, or of the latest
+     * page if page is null; a page outside the refuelings is moved to the nearest one. Returns null if the fuel
+     * type has no refuelings
+     */
+    public RefuelChartPage page(String fuelType, Granularity granularity, Integer page) {
+        DailySpending spending = dailySpending.get(fuelType);
+        if (spending == null || spending.isEmpty()) {
+            return null;
+        }
+
+        int firstDay = spending.getFirstDay();
+        int lastDay = spending.getLastDay();
+        int shownPage;
+        int firstPage;
+        int lastPage;
+        int firstBucket;
+        int lastBucket;
+        if (granularity.isPaged()) {
+            firstPage = granularity.pageOf(granularity.bucketOf(firstDay));
+            lastPage = granularity.pageOf(granularity.bucketOf(lastDay));
+            shownPage = page == null ? lastPage : Math.max(firstPage, Math.min(lastPage, page));
+            firstBucket = granularity.firstBucketOfPage(shownPage);
+            lastBucket = granularity.lastBucketOfPage(shownPage);
+        } else {
+            firstPage = lastPage = shownPage = 0;
+            firstBucket = granularity.bucketOf(firstDay);
+            lastBucket = granularity.bucketOf(lastDay);
+        }
+
+        return sum(spending, granularity, shownPage, firstBucket, lastBucket, shownPage > firstPage,
+                shownPage < lastPage);
+    }
+
+    /**
+     * groups all spending of the fuel type (or all of them) into the buckets of the granularity, from the one of
+     * the first refueling to the one of the last. Returns null if the fuel type has no refuelings
+     */
+    public RefuelChartPage allBuckets(String fuelType, Granularity granularity) {
+        DailySpending spending = dailySpending.get(fuelType);
+        if (spending == null || spending.isEmpty()) {
+            return null;
+        }
+        return sum(spending, granularity, 0, granularity.bucketOf(spending.getFirstDay()),
+                granularity.bucketOf(spending.getLastDay()), false, false);
+    }
+
+    private static RefuelChartPage sum(DailySpending spending, Granularity granularity, int page, int firstBucket,
+                                       int lastBucket, boolean hasPreviousPage, boolean hasNextPage) {
+        BucketStatistics statistics = new BucketStatistics(lastBucket - firstBucket + 1);
+        spending.sumInto(granularity, granularity.firstDayOf(firstBucket), granularity.firstDayOf(lastBucket + 1) - 1,
+                firstBucket, statistics);
+        return new RefuelChartPage(granularity, page, firstBucket, statistics, hasPreviousPage, hasNextPage);
+    }
+
+    public boolean isEmpty() {
+        DailySpending spending = dailySpending.get(RefuelConstants.FUEL_TYPE_ALL);
+        return spending == null || spending.isEmpty();
+    }
+}
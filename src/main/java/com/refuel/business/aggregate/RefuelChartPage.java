@@ -0,0 +1,171 @@
+package com.refuel.business.aggregate;
+
+import com.refuel.business.time.Granularity;
+
+import java.util.Arrays;
+
+/**
+ * Statistics of one fuel type in the consecutive time buckets shown together in the chart, e.g. the months of a
+ * year. Every metric is computed when the page is created, so the chart switches between them without merging the
+ * days again.
+ */
+public class RefuelChartPage {
+
+    private final Granularity granularity;
+    private final int page;
+    private final int firstBucket;
+    private final int[] refuelCount;
+    // Values of every metric in its own units, indexed by the ordinal of the metric.
+    private final long[][] values;
+    private final boolean hasPreviousPage;
+    private final boolean hasNextPage;
+    private final boolean hasRefuelings;
+    private final long[] maxValue;
+    private final long[] minValue;
+
+    RefuelChartPage(Granularity granularity, int page, int firstBucket, BucketStatistics statistics,
+                    boolean hasPreviousPage, boolean hasNextPage) {
+        this.granularity = granularity;
+        this.page = page;
+        this.firstBucket = firstBucket;
+        this.refuelCount = statistics.refuelCount;
+        this.hasPreviousPage = hasPreviousPage;
+        this.hasNextPage = hasNextPage;
+
+        ChartMetric[] metrics = ChartMetric.values();
+        int bucketCount = statistics.getBucketCount();
+        values = new long[metrics.length][bucketCount];
+        maxValue = new long[metrics.length];
+        minValue = new long[metrics.length];
+        Arrays.fill(maxValue, Long.MIN_VALUE);
+        Arrays.fill(minValue, Long.MAX_VALUE);
+        boolean any = false;
+        for (int index = 0; index < bucketCount; index++) {
+            if (refuelCount[index] > 0) {
+                any = true;
+                for (ChartMetric metric : metrics) {
+                    long value = metric.valueOf(statistics, index);
+                    values[metric.ordinal()][index] = value;
+                    maxValue[metric.ordinal()] = Math.max(maxValue[metric.ordinal()], value);
+                    minValue[metric.ordinal()] = Math.min(minValue[metric.ordinal()], value);
+                }
+            }
+        }
+        this.hasRefuelings = any;
+    }
+
+    public Granularity getGranularity() {
+        return granularity;
+    }
+
+    public int getPage() {
+        return page;
+    }
+
+    public String getTitle() {
+        return granularity.pageTitleOf(page);
+    }
+
+    public int getBucketCount() {
+        return refuelCount.length;
+    }
+
+    public int getBucket(int index) {
+        return firstBucket + index;
+    }
+
+    public String getLabel(int index) {
+        return granularity.labelOf(firstBucket + index);
+    }
+
+    public double getSpent(int index) {
+        return getValue(ChartMetric.SPENT, index);
+    }
+
+    /**
+     * returns the spent money of the bucket in spending units of FixedPoint
+     */
+    public long getSpentUnits(int index) {
+        return values[ChartMetric.SPENT.ordinal()][index];
+    }
+
+    /**
+     * returns the value of the metric in the bucket, 0 for a bucket without refuelings
+     */
+    public double getValue(ChartMetric metric, int index) {
+        return values[metric.ordinal()][index] / (double) metric.getScale();
+    }
+
+    public int getRefuelCount(int index) {
+        return refuelCount[index];
+    }
+
+    public boolean hasRefuelings(int index) {
+        return refuelCount[index] > 0;
+    }
+
+    public boolean hasPreviousPage() {
+        return hasPreviousPage;
+    }
+
+    public boolean hasNextPage() {
+        return hasNextPage;
+    }
+
+    /**
+     * returns maximum spent money in a bucket of the page, null if the page has no refuelings
+     */
+    public Double getMaxSpent() {
+        return getMaxValue(ChartMetric.SPENT);
+    }
+
+    /**
+     * returns minimum spent money in a bucket with refuelings, null if the page has no refuelings
+     */
+    public Double getMinSpent() {
+        return getMinValue(ChartMetric.SPENT);
+    }
+
+    /**
+     * whether the bucket has refuelings and no other bucket of the page has more spending
+     */
+    public boolean isMaxSpent(int index) {
+        return isMax(ChartMetric.SPENT, index);
+    }
+
+    /**
+     * whether the bucket has refuelings and no other bucket of the page with refuelings has less spending
+     */
+    public boolean isMinSpent(int index) {
+        return isMin(ChartMetric.SPENT, index);
+    }
+
+    /**
+     * returns the highest value of the metric in a bucket with refuelings, null if the page has no refuelings
+     */
+    public Double getMaxValue(ChartMetric metric) {
+        return hasRefuelings ? maxValue[metric.ordinal()] / (double) metric.getScale() : null;
+    }
+
+    /**
+     * returns the lowest value of the metric in a bucket with refuelings, null if the page has no refuelings
+     */
+    public Double getMinValue(ChartMetric metric) {
+        return hasRefuelings ? minValue[metric.ordinal()] / (double) metric.getScale() : null;
+    }
+
+    /**
+     * whether the bucket has refuelings and no other bucket of the page has a higher value of the metric
+     */
+    public boolean isMax(ChartMetric metric, int index) {
+        return refuelCount[index] > 0 && values[metric.ordinal()][index] == maxValue[metric.ordinal()];
+    }
+
+    /**
+     * whether the bucket has refuelings and no other bucket of the page with refuelings has a lower value of the
+     * metric
+     */
+    public boolean isMin(ChartMetric metric, int index) {
+        return refuelCount[index] > 0 && values[metric.ordinal()][index] == minValue[metric.ordinal()];
+    }
+}
@@ -0,0 +1,223 @@
+package com.refuel.business.aggregate;
+
+import com.refuel.business.RefuelConstants;
+import com.refuel.model.FuelTypeDictionary;
+import com.refuel.model.RefuelColumns;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Statistics of the refuelings per fuel type and day, with a rollup over all fuel types.
+ * <p>
+ * The cube is built once from the loaded columns and then kept up to date with the rows that are added to or
+ * removed from them, so reading the statistics of a fuel type never scans the records. Days are the finest time
+ * bucket, the coarser ones are merged from them when the statistics are shown.
+ */
+public class RefuelingCube {
+
+    // Rows whose fill sizes are sorted together, and the most days times fuel types they are sorted by.
+    private static final int BLOCK_SIZE = 1024 * 1024;
+    private static final int MAX_SORT_KEYS = BLOCK_SIZE;
+
+    private final FuelTypeDictionary fuelTypes;
+
+    // Row 0 is the rollup over all fuel types, row id + 1 belongs to the fuel type with that id.
+    private DailySpending[] dailySpending = {new DailySpending()};
+
+    // Whether a removed row had the lowest or highest price of its day.
+    private boolean stale;
+
+    public RefuelingCube(FuelTypeDictionary fuelTypes) {
+        this.fuelTypes = fuelTypes;
+    }
+
+    public static RefuelingCube of(RefuelColumns columns) {
+        RefuelingCube cube = new RefuelingCube(columns.getFuelTypes());
+        cube.add(columns, 0, columns.size());
+        return cube;
+    }
+
+    /**
+     * adds the rows between fromRow (inclusive) and toRow (exclusive) of the columns the cube was built for
+     */
+    public void add(RefuelColumns columns, int fromRow, int toRow) {
+        ensureFuelTypeRows(fuelTypes.size() + 1);
+        for (int blockStart = fromRow; blockStart < toRow; blockStart += BLOCK_SIZE) {
+            addBlock(columns, blockStart, Math.min(toRow, blockStart + BLOCK_SIZE));
+        }
+    }
+
+    /**
+     * Adds the totals row by row and the fill sizes day by day. The rows are in no particular order, so adding
+     * each fill size right away would jump between the sketches of thousands of days and miss the cache almost
+     * every time; instead the fill sizes of the block are sorted by day and fuel type with a counting sort, and
+     * every sketch gets all its values of the block at once.
+     */
+    private void addBlock(RefuelColumns columns, int fromRow, int toRow) {
+        int minDay = Integer.MAX_VALUE;
+        int maxDay = Integer.MIN_VALUE;
+        for (int row = fromRow; row < toRow; row++) {
+            int cubeRow = columns.getFuelTypeId(row) + 1;
+            int day = columns.getRefuellingDay(row);
+            long price = columns.getFuelPriceUnits(row);
+            long amount = columns.getFuelAmountUnits(row);
+
+            dailySpending[cubeRow].addTotals(day, price, amount);
+            dailySpending[0].addTotals(day, price, amount);
+            minDay = Math.min(minDay, day);
+            maxDay = Math.max(maxDay, day);
+        }
+        if (fromRow == toRow) {
+            return;
+        }
+
+        // one key for each day and fuel type, the fuel types of a day are next to each other
+        int fuelTypeRows = dailySpending.length - 1;
+        long keyCount = ((long) maxDay - minDay + 1) * fuelTypeRows;
+        if (keyCount > MAX_SORT_KEYS) {
+            // e.g. a few refuelings centuries apart, adding them one by one is cheaper than the counts of the keys
+            for (int row = fromRow; row < toRow; row++) {
+                int day = columns.getRefuellingDay(row);
+                long[] amount = {columns.getFuelAmountUnits(row)};
+                dailySpending[columns.getFuelTypeId(row) + 1].addFillSizes(day, amount, 0, 1);
+                dailySpending[0].addFillSizes(day, amount, 0, 1);
+            }
+            return;
+        }
+
+        int[] keyStarts = new int[(int) keyCount + 1];
+        for (int row = fromRow; row < toRow; row++) {
+            keyStarts[keyOf(columns, row, minDay, fuelTypeRows) + 1]++;
+        }
+        for (int key = 0; key < keyCount; key++) {
+            keyStarts[key + 1] += keyStarts[key];
+        }
+        long[] sortedAmounts = new long[toRow - fromRow];
+        int[] positions = Arrays.copyOf(keyStarts, (int) keyCount);
+        for (int row = fromRow; row < toRow; row++) {
+            sortedAmounts[positions[keyOf(columns, row, minDay, fuelTypeRows)]++] = columns.getFuelAmountUnits(row);
+        }
+
+        for (int key = 0; key < keyCount; key++) {
+            int from = keyStarts[key];
+            int to = keyStarts[key + 1];
+            if (from < to) {
+                int day = minDay + key / fuelTypeRows;
+                dailySpending[key % fuelTypeRows + 1].addFillSizes(day, sortedAmounts, from, to);
+                dailySpending[0].addFillSizes(day, sortedAmounts, from, to);
+            }
+        }
+    }
+
+    private static int keyOf(RefuelColumns columns, int row, int minDay, int fuelTypeRows) {
+        return (columns.getRefuellingDay(row) - minDay) * fuelTypeRows + columns.getFuelTypeId(row);
+    }
+
+    /**
+     * Removes the rows between fromRow (inclusive) and toRow (exclusive), which must have been added before. When
+     * a removed row had the lowest or highest price of its day the cube becomes stale, since those prices can only
+     * be found again from the records; a stale cube must be built again with of().
+     */
+    public void remove(RefuelColumns columns, int fromRow, int toRow) {
+        for (int row = fromRow; row < toRow; row++) {
+            int cubeRow = columns.getFuelTypeId(row) + 1;
+            int day = columns.getRefuellingDay(row);
+            long price = columns.getFuelPriceUnits(row);
+            long amount = columns.getFuelAmountUnits(row);
+
+            // both are removed, even when the first one already made the cube stale
+            boolean exact = dailySpending[cubeRow].remove(day, price, amount);
+            stale |= !dailySpending[0].remove(day, price, amount) || !exact;
+        }
+    }
+
+    /**
+     * adds the statistics of another cube, e.g. of rows that were aggregated apart from the ones of this cube
+     */
+    public void addAll(RefuelingCube other) {
+        for (int otherRow = 1; otherRow < other.dailySpending.length; otherRow++) {
+            if (!other.dailySpending[otherRow].isEmpty()) {
+                int cubeRow = fuelTypes.intern(other.fuelTypes.nameOf(otherRow - 1)) + 1;
+                ensureFuelTypeRows(cubeRow + 1);
+                dailySpending[cubeRow].addAll(other.dailySpending[otherRow]);
+            }
+        }
+        dailySpending[0].addAll(other.dailySpending[0]);
+        stale |= other.stale;
+    }
+
+    public boolean isStale() {
+        return stale;
+    }
+
+    /**
+     * returns the fuel types that have at least one refueling
+     */
+    public List<String> getFuelTypes() {
+        List<String> names = new ArrayList<>();
+        for (int cubeRow = 1; cubeRow < dailySpending.length; cubeRow++) {
+            if (!dailySpending[cubeRow].isEmpty()) {
+                names.add(fuelTypes.nameOf(cubeRow - 1));
+            }
+        }
+        return names;
+    }
+
+    /**
+     * returns an immutable copy of the statistics that can be read on another thread
+     */
+    public RefuelChartData snapshot() {
+        List<String> names = getFuelTypes();
+        Map<String, DailySpending> spendingByFuelType = new HashMap<>();
+        spendingByFuelType.put(RefuelConstants.FUEL_TYPE_ALL, dailySpending[0].copy());
+        for (String name : names) {
+            spendingByFuelType.put(name, dailySpending[fuelTypes.idOf(name) + 1].copy());
+        }
+        return new RefuelChartData(names, spendingByFuelType);
+    }
+
+    /**
+     * writes the statistics of every fuel type, e.g. into a snapshot file, so the cube can be read back without the
+     * records
+     */
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeInt(dailySpending.length);
+        for (DailySpending spending : dailySpending) {
+            spending.writeTo(out);
+        }
+    }
+
+    /**
+     * reads a cube written by writeTo, fuelTypes must have the same ids as the fuel types of the written cube
+     */
+    public static RefuelingCube readFrom(DataInput in, FuelTypeDictionary fuelTypes) throws IOException {
+        RefuelingCube cube = new RefuelingCube(fuelTypes);
+        int rows = in.readInt();
+        if (rows < 1 || rows > fuelTypes.size() + 1) {
+            throw new IOException("Invalid number of fuel types: " + (rows - 1));
+        }
+        cube.dailySpending = new DailySpending[rows];
+        for (int cubeRow = 0; cubeRow < rows; cubeRow++) {
+            cube.dailySpending[cubeRow] = DailySpending.readFrom(in);
+        }
+        return cube;
+    }
+
+    private void ensureFuelTypeRows(int rows) {
+        int oldRows = dailySpending.length;
+        if (rows <= oldRows) {
+            return;
+        }
+        dailySpending = Arrays.copyOf(dailySpending, rows);
+        for (int cubeRow = oldRows; cubeRow < rows; cubeRow++) {
+            dailySpending[cubeRow] = new DailySpending();
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package com.refuel.business.dedup;
+
+/**
+ * Set of primitive longs with open addressing and linear probing, e.g. for the fingerprints of millions of
+ * records without boxing them.
+ * <p>
+ * The keys are kept in one array that is at most half full, so a lookup usually reads one or two neighbouring
+ * slots. Empty slots hold 0, so the key 0 is tracked apart from the array.
+ */
+public final class LongHashSet {
+
+    private static final int MIN_CAPACITY = 16;
+
+    private long[] keys;
+    private int mask;
+    private boolean hasZero;
+    private int size;
+
+    public LongHashSet() {
+        this(MIN_CAPACITY);
+    }
+
+    /**
+     * expectedSize keys are added without growing the set
+     */
+    public LongHashSet(int expectedSize) {
+        keys = new long[capacityOf(expectedSize)];
+        mask = keys.length - 1;
+    }
+
+    /**
+     * makes room for expectedSize keys in all, so adding up to that many grows the set at most once
+     */
+    public void ensureCapacity(int expectedSize) {
+        int capacity = capacityOf(expectedSize);
+        if (capacity > keys.length) {
+            rehash(capacity);
+        }
+    }
+
+    private static int capacityOf(int expectedSize) {
+        int capacity = MIN_CAPACITY;
+        while (capacity < 2L * expectedSize && capacity < 1 << 30) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean contains(long key) {
+        if (key == 0) {
+            return hasZero;
+        }
+        for (int slot = slotOf(key); ; slot = (slot + 1) & mask) {
+            long slotKey = keys[slot];
+            if (slotKey == key) {
+                return true;
+            }
+            if (slotKey == 0) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * returns false if the key was already in the set
+     */
+    public boolean add(long key) {
+        if (key == 0) {
+            if (hasZero) {
+                return false;
+            }
+            hasZero = true;
+            size++;
+            return true;
+        }
+        int slot = slotOf(key);
+        while (keys[slot] != 0) {
+            if (keys[slot] == key) {
+                return false;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        size++;
+        if (size > keys.length / 2) {
+            rehash(keys.length * 2);
+        }
+        return true;
+    }
+
+    private void rehash(int capacity) {
+        long[] oldKeys = keys;
+        keys = new long[capacity];
+        mask = keys.length - 1;
+        for (long key : oldKeys) {
+            if (key != 0) {
+                int slot = slotOf(key);
+                while (keys[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = key;
+            }
+        }
+    }
+
+    /**
+     * the keys may be fingerprints with good low bits or plain numbers, so the bits are mixed before they pick
+     * the slot
+     */
+    private int slotOf(long key) {
+        return (int) (RecordDeduplicator.mix(key) >>> 32) & mask;
+    }
+}
@@ -0,0 +1,33 @@
+package com.refuel.business.exception;
+
+/**
+ * Kinds of invalid data file lines.
+ */
+public enum RefuelDataError {
+
+    INVALID_NUMBER("There is an error in Fuel Price/Amount Values", "bad number"),
+    NEGATIVE_VALUE("Values Cannot Be Negative", "negative value"),
+    VALUE_TOO_LARGE("Fuel Price/Amount Values Cannot Be Above 100000", "too large value"),
+    INVALID_DATE("There is an error in Refuelling Date Value", "bad date"),
+    WRONG_COLUMN_COUNT("Refuel Data Must Have 4 Columns", "wrong column count"),
+    MALFORMED_LINE("Refuel Data Line Is Not Well-Formed", "malformed line");
+
+    private final String message;
+    private final String description;
+
+    RefuelDataError(String message, String description) {
+        this.message = message;
+        this.description = description;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    /**
+     * short name of the kind, e.g. for counts of skipped lines
+     */
+    public String getDescription() {
+        return description;
+    }
+}
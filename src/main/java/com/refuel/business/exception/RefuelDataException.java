@@ -4,7 +4,44 @@ package com.refuel.business.exception;
  * Created by egucer on 01-Feb-19.
  */
 public class RefuelDataException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    // Kind of the invalid data, null if it is not one of the known kinds.
+    private final RefuelDataError error;
+
+    // Line of the data file that caused the exception, 0 if it is not known.
+    private final long lineNumber;
+
     public RefuelDataException(String message) {
         super(message);
+        this.error = null;
+        this.lineNumber = 0;
+    }
+
+    public RefuelDataException(String message, long lineNumber) {
+        super("Line " + lineNumber + ": " + message);
+        this.error = null;
+        this.lineNumber = lineNumber;
+    }
+
+    public RefuelDataException(RefuelDataError error) {
+        super(error.getMessage());
+        this.error = error;
+        this.lineNumber = 0;
+    }
+
+    public RefuelDataException(RefuelDataError error, long lineNumber) {
+        super("Line " + lineNumber + ": " + error.getMessage());
+        this.error = error;
+        this.lineNumber = lineNumber;
+    }
+
+    public RefuelDataError getError() {
+        return error;
+    }
+
+    public long getLineNumber() {
+        return lineNumber;
     }
 }
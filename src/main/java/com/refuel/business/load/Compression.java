@@ -0,0 +1,75 @@
+package com.refuel.business.load;
+
+import io.airlift.compress.zstd.ZstdInputStream;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Compression of a data file, recognized by the magic bytes at its start rather than by its extension.
+ */
+enum Compression {
+
+    NONE(new byte[0]),
+    GZIP(new byte[]{(byte) 0x1F, (byte) 0x8B}),
+    ZSTD(new byte[]{(byte) 0x28, (byte) 0xB5, (byte) 0x2F, (byte) 0xFD});
+
+    // Size of the inflater buffer of gzip, large reads keep the number of native calls low.
+    private static final int GZIP_BUFFER_SIZE = 64 * 1024;
+
+    private final byte[] magic;
+
+    Compression(byte[] magic) {
+        this.magic = magic;
+    }
+
+    /**
+     * returns the compression of the file, the position of the channel is not changed
+     */
+    static Compression of(FileChannel channel) throws IOException {
+        ByteBuffer start = ByteBuffer.allocate(4);
+        long position = 0;
+        while (start.hasRemaining()) {
+            int read = channel.read(start, position);
+            if (read < 0) {
+                break;
+            }
+            position += read;
+        }
+        for (Compression compression : values()) {
+            if (compression != NONE && compression.matches(start.array(), start.position())) {
+                return compression;
+            }
+        }
+        return NONE;
+    }
+
+    private boolean matches(byte[] start, int length) {
+        if (length < magic.length) {
+            return false;
+        }
+        for (int i = 0; i < magic.length; i++) {
+            if (start[i] != magic[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * returns the decompressed content of the compressed bytes
+     */
+    InputStream decompress(InputStream in) throws IOException {
+        switch (this) {
+            case GZIP:
+                return new GZIPInputStream(in, GZIP_BUFFER_SIZE);
+            case ZSTD:
+                return new ZstdInputStream(in);
+            default:
+                return in;
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package com.refuel.business.load;
+
+import java.util.Objects;
+
+/**
+ * Identity of a loaded data file and the position up to which its lines were consumed.
+ * <p>
+ * The bytes after the last line feed form the tail of the file. Its records are loaded but, since a writer may
+ * still be appending to that line, they are parsed again on the next update. The invalid complete lines that a
+ * lenient load skipped are counted, including the ones of the previous loads that the state was updated from, and
+ * so are the duplicate records that a deduplicating data set dropped. An aggregate-only data set keeps only the
+ * records of the tail, the others are only in its aggregates.
+ */
+public class DataFileState {
+
+    private final long size;
+    private final long lastModified;
+    private final Object fileKey;
+    private final long completeLinesEnd;
+    private final long completeLineCount;
+    private final int tailRecordCount;
+    // Hash of the bytes of the complete lines, see PrefixHash.
+    private final long prefixHash;
+    private final RejectCounts rejects;
+    // Whether the duplicate records were dropped from the loaded records.
+    private final boolean deduplicated;
+    private final long duplicateCount;
+    // Whether only the records of the tail were kept.
+    private final boolean aggregateOnly;
+
+    DataFileState(long size, long lastModified, Object fileKey, long completeLinesEnd, long completeLineCount,
+                  int tailRecordCount, long prefixHash, RejectCounts rejects) {
+        this(size, lastModified, fileKey, completeLinesEnd, completeLineCount, tailRecordCount, prefixHash, rejects,
+                false, 0, false);
+    }
+
+    DataFileState(long size, long lastModified, Object fileKey, long completeLinesEnd, long completeLineCount,
+                  int tailRecordCount, long prefixHash, RejectCounts rejects, boolean deduplicated,
+                  long duplicateCount, boolean aggregateOnly) {
+        this.size = size;
+        this.lastModified = lastModified;
+        this.fileKey = fileKey;
+        this.completeLinesEnd = completeLinesEnd;
+        this.completeLineCount = completeLineCount;
+        this.tailRecordCount = tailRecordCount;
+        this.prefixHash = prefixHash;
+        this.rejects = rejects;
+        this.deduplicated = deduplicated;
+        this.duplicateCount = duplicateCount;
+        this.aggregateOnly = aggregateOnly;
+    }
+
+    /**
+     * returns the same state of the file for records from which duplicateCount duplicates were dropped
+     */
+    DataFileState withDuplicates(long duplicateCount) {
+        return new DataFileState(size, lastModified, fileKey, completeLinesEnd, completeLineCount, tailRecordCount,
+                prefixHash, rejects, true, duplicateCount, aggregateOnly);
+    }
+
+    /**
+     * returns the same state of the file for a load that kept only the records of the tail
+     */
+    DataFileState withoutRecords() {
+        return new DataFileState(size, lastModified, fileKey, completeLinesEnd, completeLineCount, tailRecordCount,
+                prefixHash, rejects, deduplicated, duplicateCount, true);
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    public Object getFileKey() {
+        return fileKey;
+    }
+
+    public long getCompleteLinesEnd() {
+        return completeLinesEnd;
+    }
+
+    public long getCompleteLineCount() {
+        return completeLineCount;
+    }
+
+    public int getTailRecordCount() {
+        return tailRecordCount;
+    }
+
+    public long getPrefixHash() {
+        return prefixHash;
+    }
+
+    public RejectCounts getRejects() {
+        return rejects;
+    }
+
+    public boolean isDeduplicated() {
+        return deduplicated;
+    }
+
+    public long getDuplicateCount() {
+        return duplicateCount;
+    }
+
+    public boolean isAggregateOnly() {
+        return aggregateOnly;
+    }
+
+    boolean isSameFile(Object otherFileKey) {
+        return fileKey == null || otherFileKey == null || Objects.equals(fileKey, otherFileKey);
+    }
+
+    boolean isUnchanged(long otherSize, long otherLastModified, Object otherFileKey) {
+        return size == otherSize && lastModified == otherLastModified && isSameFile(otherFileKey);
+    }
+}
@@ -0,0 +1,12 @@
+package com.refuel.business.load;
+
+/**
+ * Gets informed about the bytes of a data file that are parsed so far.
+ */
+public interface LoadProgressListener {
+
+    LoadProgressListener NONE = (loadedBytes, totalBytes) -> {
+    };
+
+    void bytesLoaded(long loadedBytes, long totalBytes);
+}
@@ -0,0 +1,126 @@
+package com.refuel.business.load;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Polynomial hash of the bytes of a file from its start, modulo 2^64.
+ * <p>
+ * The hash of two parts put together follows from the hashes of the parts and the length of the second one, so the
+ * hash of the complete lines is combined from the hashes of the chunks while they are parsed, and the hash of the
+ * lines that a previous load consumed is computed in parallel, whatever the chunks of that load were.
+ */
+final class PrefixHash {
+
+    private static final long P = 0x9E3779B97F4A7C15L;
+    private static final long P2 = P * P;
+    private static final long P3 = P2 * P;
+    private static final long P4 = P3 * P;
+
+    // Length of the parts of a file that are read and hashed in parallel.
+    private static final int RANGE_SIZE = 4 * 1024 * 1024;
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    private PrefixHash() {
+    }
+
+    /**
+     * returns the hash of the first bytes followed by the second ones
+     */
+    static long concat(long first, long second, long secondLength) {
+        return first * power(secondLength) + second;
+    }
+
+    /**
+     * returns the hash of the bytes from the position to the limit of the buffer, which is left unchanged
+     */
+    static long of(ByteBuffer bytes) {
+        long hash = 0;
+        int i = bytes.position();
+        int end = bytes.limit();
+        for (; i + 4 <= end; i += 4) {
+            hash = hash * P4 + (bytes.get(i) & 0xff) * P3 + (bytes.get(i + 1) & 0xff) * P2
+                    + (bytes.get(i + 2) & 0xff) * P + (bytes.get(i + 3) & 0xff);
+        }
+        for (; i < end; i++) {
+            hash = hash * P + (bytes.get(i) & 0xff);
+        }
+        return hash;
+    }
+
+    static long of(byte[] bytes, int from, int to) {
+        return of(ByteBuffer.wrap(bytes, from, to - from));
+    }
+
+    /**
+     * returns the hash of the first bytes of the file up to end, read in parallel on the pool
+     */
+    static long of(FileChannel channel, long end, ForkJoinPool pool) throws IOException {
+        List<ForkJoinTask<Long>> ranges = new ArrayList<>();
+        for (long from = 0; from < end; from += RANGE_SIZE) {
+            long rangeFrom = from;
+            long rangeTo = Math.min(end, from + RANGE_SIZE);
+            ranges.add(pool.submit(() -> of(channel, rangeFrom, rangeTo)));
+        }
+        long hash = 0;
+        for (int i = 0; i < ranges.size(); i++) {
+            long rangeLength = Math.min(RANGE_SIZE, end - (long) i * RANGE_SIZE);
+            hash = concat(hash, join(ranges.get(i)), rangeLength);
+        }
+        return hash;
+    }
+
+    private static long of(FileChannel channel, long from, long to) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        long hash = 0;
+        long position = from;
+        while (position < to) {
+            buffer.clear();
+            buffer.limit((int) Math.min(buffer.capacity(), to - position));
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new IOException("File was truncated while it was read");
+            }
+            buffer.flip();
+            hash = concat(hash, of(buffer), read);
+            position += read;
+        }
+        return hash;
+    }
+
+    private static long join(ForkJoinTask<Long> range) throws IOException {
+        try {
+            return range.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while hashing the file");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    /**
+     * returns P to the power of the exponent
+     */
+    private static long power(long exponent) {
+        long result = 1;
+        long base = P;
+        for (long e = exponent; e > 0; e >>>= 1) {
+            if ((e & 1) != 0) {
+                result *= base;
+            }
+            base *= base;
+        }
+        return result;
+    }
+}
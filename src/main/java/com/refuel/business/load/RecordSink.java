@@ -0,0 +1,20 @@
+package com.refuel.business.load;
+
+import com.refuel.model.RefuelColumns;
+
+/**
+ * Gets the records of the complete lines of a streaming load in the order of the lines, a chunk at a time.
+ */
+public interface RecordSink {
+
+    /**
+     * called before the first records; incremental tells whether they follow the records of the previous load or
+     * replace them
+     */
+    void start(boolean incremental);
+
+    /**
+     * the records have fuel type ids of their own and are not used by the loader afterwards
+     */
+    void accept(RefuelColumns records);
+}
@@ -0,0 +1,354 @@
+package com.refuel.business.load;
+
+import com.refuel.business.aggregate.RefuelChartData;
+import com.refuel.business.aggregate.RefuelingCube;
+import com.refuel.business.dedup.RecordDeduplicator;
+import com.refuel.business.exception.RefuelDataException;
+import com.refuel.business.metrics.RefuelMetrics;
+import com.refuel.model.RefuelColumns;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * The loaded records of one data file together with their aggregates and the state of the file.
+ * <p>
+ * A data set is not thread safe; it is changed by one loading thread at a time and other threads only read the
+ * chart data snapshots it creates.
+ * <p>
+ * When the data set has a snapshot file, a load starts from the snapshot and parses only the lines that were
+ * appended since it was taken; the snapshot is written again whenever lines had to be parsed.
+ * <p>
+ * A deduplicating data set drops the records that repeat an earlier record of the file right after they are
+ * parsed, e.g. when monthly exports that repeat the last days of the one before are appended to the file. The
+ * records of the tail are only checked once their line is complete.
+ * <p>
+ * An aggregate-only data set streams the parsed records into its aggregates chunk by chunk and keeps only the
+ * records of the tail, so files larger than the heap can be loaded; the chart is the same, but the records cannot
+ * be listed. Its snapshot holds the aggregates and the tail. A deduplicating one still remembers the fingerprints
+ * of all records, which are not in the snapshot, so it does not use snapshots.
+ */
+public class RefuelDataSet {
+
+    private final File file;
+    private final RefuelFileLoader loader;
+    private final RefuelSnapshotFile snapshotFile;
+    private final boolean deduplicating;
+    private final boolean aggregateOnly;
+
+    private RefuelColumns columns = new RefuelColumns();
+    private RefuelingCube cube = RefuelingCube.of(columns);
+    private DataFileState fileState;
+
+    // The fingerprints of the records of the complete lines, null until they are needed.
+    private RecordDeduplicator deduplicator;
+
+    public RefuelDataSet(File file, RefuelFileLoader loader) {
+        this(file, loader, null);
+    }
+
+    /**
+     * snapshotFile can be null to always parse the whole file
+     */
+    public RefuelDataSet(File file, RefuelFileLoader loader, RefuelSnapshotFile snapshotFile) {
+        this(file, loader, snapshotFile, false);
+    }
+
+    public RefuelDataSet(File file, RefuelFileLoader loader, RefuelSnapshotFile snapshotFile, boolean deduplicating) {
+        this(file, loader, snapshotFile, deduplicating, false);
+    }
+
+    public RefuelDataSet(File file, RefuelFileLoader loader, RefuelSnapshotFile snapshotFile, boolean deduplicating,
+                         boolean aggregateOnly) {
+        this.file = file;
+        this.loader = loader;
+        this.snapshotFile = snapshotFile;
+        this.deduplicating = deduplicating;
+        this.aggregateOnly = aggregateOnly;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * returns the loaded records, only the ones of the tail for an aggregate-only data set
+     */
+    public RefuelColumns getColumns() {
+        return columns;
+    }
+
+    public RefuelingCube getCube() {
+        return cube;
+    }
+
+    /**
+     * returns the invalid lines that the loads of the file skipped, none before the file is loaded
+     */
+    public RejectCounts getRejects() {
+        return fileState == null ? RejectCounts.NONE : fileState.getRejects();
+    }
+
+    public boolean isDeduplicating() {
+        return deduplicating;
+    }
+
+    public boolean isAggregateOnly() {
+        return aggregateOnly;
+    }
+
+    /**
+     * returns the number of duplicate records that the loads of the file dropped
+     */
+    public long getDuplicateCount() {
+        return fileState == null ? 0 : fileState.getDuplicateCount();
+    }
+
+    /**
+     * loads all lines of the file again, or the snapshot of the file and the lines appended after it
+     */
+    public void load(LoadProgressListener progressListener) throws IOException {
+        RefuelSnapshotFile.Contents snapshot = readSnapshot();
+        if (snapshot != null) {
+            RefuelMetrics.get().snapshotLoaded();
+            columns = snapshot.getColumns();
+            cube = snapshot.getCube();
+            fileState = snapshot.getState();
+            deduplicator = null;
+            update(progressListener);
+            if (fileState != snapshot.getState()) {
+                writeSnapshot();
+            }
+        } else if (aggregateOnly) {
+            stream(null, progressListener);
+            writeSnapshot();
+        } else {
+            replaceWithLoaded(loader.load(file, progressListener));
+            writeSnapshot();
+        }
+    }
+
+    /**
+     * a snapshot that cannot be read is ignored, the file is parsed instead; so is a snapshot of a lenient load with
+     * skipped lines, when the loader is strict and has to report them, and a snapshot that was deduplicated or
+     * aggregate-only or not when the data set is the other way round
+     */
+    private RefuelSnapshotFile.Contents readSnapshot() {
+        if (!usesSnapshot()) {
+            return null;
+        }
+        try {
+            RefuelSnapshotFile.Contents snapshot = snapshotFile.read(file);
+            if (snapshot != null && !loader.isLenient() && !snapshot.getState().getRejects().isEmpty()) {
+                return null;
+            }
+            if (snapshot != null && (snapshot.getState().isDeduplicated() != deduplicating
+                    || snapshot.getState().isAggregateOnly() != aggregateOnly)) {
+                return null;
+            }
+            return snapshot;
+        } catch (IOException | RuntimeException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * the records are already loaded, so a snapshot that cannot be written only costs the next load its speed
+     */
+    private void writeSnapshot() {
+        if (!usesSnapshot()) {
+            return;
+        }
+        try {
+            snapshotFile.write(file, columns, cube, fileState);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private boolean usesSnapshot() {
+        return snapshotFile != null && !(aggregateOnly && deduplicating);
+    }
+
+    /**
+     * parses only the lines appended since the last load, unless the file was replaced or rewritten
+     */
+    public void update(LoadProgressListener progressListener) throws IOException {
+        if (aggregateOnly) {
+            stream(fileState, progressListener);
+            return;
+        }
+        RefuelLoadResult loadResult = loader.update(file, fileState, progressListener);
+        if (loadResult.isIncremental()) {
+            int keptRows = columns.size() - loadResult.getRetractedRecordCount();
+            long startNanos = System.nanoTime();
+            cube.remove(columns, keptRows, columns.size());
+            loadResult.applyTo(columns);
+            DataFileState state = loadResult.getState();
+            if (deduplicating && state != fileState) {
+                if (deduplicator == null) {
+                    // the records of the complete lines, the retracted tail was not remembered
+                    deduplicator = new RecordDeduplicator(columns.size());
+                    deduplicator.addAll(columns, 0, keptRows);
+                }
+                int dropped = deduplicator.dropDuplicates(columns, keptRows,
+                        columns.size() - state.getTailRecordCount());
+                state = state.withDuplicates(fileState.getDuplicateCount() + dropped);
+            }
+            try {
+                if (cube.isStale()) {
+                    cube = RefuelingCube.of(columns);
+                } else {
+                    cube.add(columns, keptRows, columns.size());
+                }
+            } catch (RefuelDataException e) {
+                forgetAggregates();
+                throw e;
+            }
+            RefuelMetrics.get().aggregated(System.nanoTime() - startNanos);
+            fileState = state;
+        } else {
+            replaceWithLoaded(loadResult);
+        }
+    }
+
+    /**
+     * replaces the records with all records of the file, without the duplicates of a deduplicating data set
+     */
+    private void replaceWithLoaded(RefuelLoadResult loadResult) {
+        RefuelColumns records = loadResult.getRecords();
+        DataFileState state = loadResult.getState();
+        RecordDeduplicator loadDeduplicator = null;
+        if (deduplicating) {
+            loadDeduplicator = new RecordDeduplicator(records.size());
+            int dropped = loadDeduplicator.dropDuplicates(records, 0, records.size() - state.getTailRecordCount());
+            state = state.withDuplicates(dropped);
+        }
+        replace(records);
+        deduplicator = loadDeduplicator;
+        fileState = state;
+    }
+
+    /**
+     * Streams the lines appended since the previous state, or all lines without one, into a cube of their own that
+     * is only added to the aggregates once the load succeeded, so a failed load leaves them as they were. The tail
+     * of the previous load is then retracted and the new one kept.
+     */
+    private void stream(DataFileState previous, LoadProgressListener progressListener) throws IOException {
+        StreamedRecords streamed = new StreamedRecords();
+        RefuelLoadResult loadResult;
+        try {
+            loadResult = loader.stream(file, previous, streamed, progressListener);
+        } catch (IOException | RuntimeException e) {
+            if (streamed.deduplicator != null && streamed.deduplicator == deduplicator) {
+                // it remembers the records streamed before the failure, only a full load forgets them again
+                deduplicator = null;
+                fileState = null;
+            }
+            throw e;
+        }
+        DataFileState state = loadResult.getState();
+        if (state == fileState) {
+            return;
+        }
+
+        long startNanos = System.nanoTime();
+        long duplicateCount = streamed.dropped;
+        if (loadResult.isIncremental()) {
+            int keptRows = columns.size() - loadResult.getRetractedRecordCount();
+            cube.remove(columns, keptRows, columns.size());
+            if (cube.isStale()) {
+                // the lowest or highest price of a day went with the tail, only the whole file has it again
+                RefuelMetrics.get().aggregated(streamed.aggregateNanos + System.nanoTime() - startNanos);
+                deduplicator = null;
+                fileState = null;
+                stream(null, progressListener);
+                return;
+            }
+            loadResult.applyTo(columns);
+            try {
+                cube.addAll(streamed.cube);
+                cube.add(columns, keptRows, columns.size());
+            } catch (RefuelDataException e) {
+                forgetAggregates();
+                throw e;
+            }
+            duplicateCount += fileState.getDuplicateCount();
+        } else {
+            streamed.columns.addAll(loadResult.getRecords());
+            streamed.cube.add(streamed.columns, 0, streamed.columns.size());
+            columns = streamed.columns;
+            cube = streamed.cube;
+            deduplicator = streamed.deduplicator;
+        }
+        RefuelMetrics.get().aggregated(streamed.aggregateNanos + System.nanoTime() - startNanos);
+
+        state = state.withoutRecords();
+        fileState = deduplicating ? state.withDuplicates(duplicateCount) : state;
+    }
+
+    /**
+     * replaces the records with ones that do not come from the file, the next update loads the file completely
+     */
+    public void replace(RefuelColumns records) {
+        long startNanos = System.nanoTime();
+        // built first, so records whose sums do not fit leave the data set as it was
+        RefuelingCube recordsCube = RefuelingCube.of(records);
+        RefuelMetrics.get().aggregated(System.nanoTime() - startNanos);
+        columns = records;
+        cube = recordsCube;
+        deduplicator = null;
+        fileState = null;
+    }
+
+    /**
+     * the cube has only a part of the appended records after their sums did not fit, so the next update loads the
+     * whole file again
+     */
+    private void forgetAggregates() {
+        deduplicator = null;
+        fileState = null;
+    }
+
+    public RefuelChartData snapshot() {
+        return cube.snapshot();
+    }
+
+    /**
+     * Aggregates the records of a streaming load into a cube of their own, one chunk at a time. A chunk is added to
+     * columns that share the fuel types of the cube and removed from them again once it is aggregated; appended
+     * lines use the columns of the data set after its tail.
+     */
+    private class StreamedRecords implements RecordSink {
+
+        private RefuelColumns columns;
+        private RefuelingCube cube;
+        private RecordDeduplicator deduplicator;
+        private long dropped;
+        private long aggregateNanos;
+
+        @Override
+        public void start(boolean incremental) {
+            columns = incremental ? RefuelDataSet.this.columns : new RefuelColumns();
+            cube = new RefuelingCube(columns.getFuelTypes());
+            if (deduplicating) {
+                // every load of a deduplicating aggregate-only data set keeps its fingerprints, as no snapshot is used
+                deduplicator = incremental ? RefuelDataSet.this.deduplicator : new RecordDeduplicator();
+            }
+        }
+
+        @Override
+        public void accept(RefuelColumns records) {
+            int start = columns.size();
+            columns.addAll(records);
+            if (deduplicator != null) {
+                dropped += deduplicator.dropDuplicates(columns, start, columns.size());
+            }
+            long startNanos = System.nanoTime();
+            cube.add(columns, start, columns.size());
+            aggregateNanos += System.nanoTime() - startNanos;
+            columns.truncate(start);
+        }
+    }
+}
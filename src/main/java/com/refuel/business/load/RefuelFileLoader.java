@@ -0,0 +1,781 @@
+package com.refuel.business.load;
+
+import com.refuel.business.exception.RefuelDataError;
+import com.refuel.business.exception.RefuelDataException;
+import com.refuel.business.metrics.RefuelMetrics;
+import com.refuel.business.parse.RecordSource;
+import com.refuel.business.parse.RecordSources;
+import com.refuel.model.RefuelColumns;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Supplier;
+
+/**
+ * Loads refuel data files by memory mapping them and parsing newline aligned chunks in parallel.
+ * <p>
+ * The records are returned in the order of the lines and, when the file has invalid lines, the exception of the
+ * first one is thrown with its line number, no matter which chunk finishes first. Files that only grew since the
+ * previous load can be updated by parsing just the appended bytes.
+ * <p>
+ * Gzip and zstd compressed files are decompressed as a stream instead, and parsed in blocks while the rest of the
+ * file is still being decompressed.
+ * <p>
+ * The lines are read by a RecordSource, the one of the loader or else the one that recognizes the first line of the
+ * file. The header of a source with one is line 1 of the file and has no record; until it is complete, the file has
+ * no records at all.
+ * <p>
+ * A lenient loader skips invalid lines instead of failing, counts them by kind in the state of the file and writes
+ * them with their line numbers to a rejects file next to it, e.g. fuel.txt.rejects.
+ * <p>
+ * Only a few chunks are parsed ahead of the one whose records are taken next. A streaming load hands the records of
+ * each chunk to a sink and forgets them, so it keeps no more records than those few chunks whatever the size of the
+ * file.
+ */
+public class RefuelFileLoader {
+
+    public static final int DEFAULT_CHUNK_SIZE = 16 * 1024 * 1024;
+
+    public static final String REJECTS_SUFFIX = ".rejects";
+
+    private static final int BOUNDARY_SCAN_SIZE = 4096;
+
+    // Longest first line that the format is recognized by and that a header may have, the bytes after it are not
+    // read into memory for that; the lines themselves are parsed from the mapped chunks whatever their length.
+    static final int MAX_FIRST_LINE_LENGTH = 64 * 1024;
+
+    private final ForkJoinPool pool;
+    private final int chunkSize;
+    private final boolean lenient;
+    // Null when the source is taken from the first line of every file.
+    private final RecordSource source;
+
+    public RefuelFileLoader() {
+        this(false);
+    }
+
+    public RefuelFileLoader(boolean lenient) {
+        this(ForkJoinPool.commonPool(), DEFAULT_CHUNK_SIZE, lenient);
+    }
+
+    public RefuelFileLoader(ForkJoinPool pool, int chunkSize) {
+        this(pool, chunkSize, false);
+    }
+
+    public RefuelFileLoader(ForkJoinPool pool, int chunkSize, boolean lenient) {
+        this(pool, chunkSize, lenient, null);
+    }
+
+    public RefuelFileLoader(ForkJoinPool pool, int chunkSize, boolean lenient, RecordSource source) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("Chunk size must be positive");
+        }
+        this.pool = pool;
+        this.chunkSize = chunkSize;
+        this.lenient = lenient;
+        this.source = source;
+    }
+
+    public boolean isLenient() {
+        return lenient;
+    }
+
+    /**
+     * returns the file next to the data file that a lenient load writes the skipped lines to
+     */
+    public static File rejectsFileOf(File dataFile) {
+        return new File(dataFile.getPath() + REJECTS_SUFFIX);
+    }
+
+    /**
+     * returns the records of all lines of the file
+     */
+    public RefuelLoadResult load(File file) throws IOException {
+        return load(file, LoadProgressListener.NONE);
+    }
+
+    public RefuelLoadResult load(File file, LoadProgressListener progressListener) throws IOException {
+        return load(file, null, false, null, progressListener);
+    }
+
+    /**
+     * Reads only the bytes appended to the file since the previous load. The whole file is loaded again when there
+     * is no previous load or when the file was truncated, replaced or rewritten before its previous end.
+     * <p>
+     * An invalid tail is not reported, since it is most likely a line that is still being written. A lenient loader
+     * does not count an invalid tail as rejected either, until a line feed is appended to it.
+     */
+    public RefuelLoadResult update(File file, DataFileState previous) throws IOException {
+        return update(file, previous, LoadProgressListener.NONE);
+    }
+
+    public RefuelLoadResult update(File file, DataFileState previous, LoadProgressListener progressListener)
+            throws IOException {
+        return load(file, previous, true, null, progressListener);
+    }
+
+    /**
+     * Loads like update, or like load when there is no previous load, but hands the records of the complete lines
+     * to the sink as soon as they are parsed instead of keeping them; the result only holds the records of the tail.
+     * The sink is not started when the file did not change.
+     */
+    public RefuelLoadResult stream(File file, DataFileState previous, RecordSink sink,
+                                   LoadProgressListener progressListener) throws IOException {
+        return load(file, previous, previous != null, sink, progressListener);
+    }
+
+    /**
+     * without a sink the records of all chunks are kept and returned together
+     */
+    private RefuelLoadResult load(File file, DataFileState previous, boolean skipInvalidTail, RecordSink sink,
+                                  LoadProgressListener progressListener) throws IOException {
+        Path path = file.toPath();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            long size = channel.size();
+            long lastModified = attributes.lastModifiedTime().toMillis();
+            Object fileKey = attributes.fileKey();
+
+            if (previous != null && previous.isUnchanged(size, lastModified, fileKey)) {
+                return RefuelLoadResult.unchanged(previous);
+            }
+
+            Compression compression = Compression.of(channel);
+            if (compression != Compression.NONE) {
+                return loadCompressed(file, channel, compression, size, lastModified, fileKey, skipInvalidTail,
+                        sink, progressListener);
+            }
+
+            boolean append = previous != null && isAppended(channel, size, fileKey, previous);
+            long start = append ? previous.getCompleteLinesEnd() : 0;
+            long linesBefore = append ? previous.getCompleteLineCount() : 0;
+
+            long startNanos = System.nanoTime();
+            ByteBuffer firstLine = ByteBuffer.allocate((int) Math.min(size, MAX_FIRST_LINE_LENGTH));
+            readFully(channel, firstLine, 0);
+            int completeFirstLineLength = firstLineLength(firstLine.array(), firstLine.capacity());
+            boolean firstLineComplete = completeFirstLineLength > 0;
+            int firstLineEnd = firstLineComplete ? completeFirstLineLength : firstLine.capacity();
+            RecordSource recordSource = sourceOf(firstLine.array(), firstLineEnd);
+            boolean waitingForHeader = recordSource.hasHeader() && !firstLineComplete;
+            if (waitingForHeader && size > MAX_FIRST_LINE_LENGTH) {
+                throw new RefuelDataException("Header is longer than " + MAX_FIRST_LINE_LENGTH + " bytes", 1);
+            }
+            Supplier<RecordSource.LineReader> readers = readersOf(recordSource, firstLine.array(), firstLineEnd,
+                    waitingForHeader);
+            long prefixHash = append ? previous.getPrefixHash() : 0;
+            if (recordSource.hasHeader() && firstLineComplete && start < firstLineEnd) {
+                prefixHash = PrefixHash.concat(prefixHash, PrefixHash.of(firstLine.array(), (int) start,
+                        firstLineEnd), firstLineEnd - start);
+                start = firstLineEnd;
+                linesBefore = 1;
+            }
+
+            long completeLinesEnd = findCompleteLinesEnd(channel, start, size);
+            List<ChunkTask> chunks = splitIntoChunks(channel, start, completeLinesEnd, readers);
+            ChunkTask tail = completeLinesEnd < size && !waitingForHeader
+                    ? mapChunk(channel, completeLinesEnd, size, readers) : null;
+            if (tail != null) {
+                chunks.add(tail);
+            }
+
+            CollectedRecords collected = sink == null ? new CollectedRecords() : null;
+            RecordSink recordSink = sink == null ? collected : sink;
+            recordSink.start(append);
+            ChunkStream stream = new ChunkStream(file, recordSink, linesBefore, prefixHash, append);
+            parseInOrder(chunks, tail, stream, progressListener);
+            RefuelColumns tailRecords = stream.finish(tail, skipInvalidTail);
+            RefuelColumns records = collected == null ? tailRecords : collected.merge(tailRecords);
+
+            long completeLineCount = stream.lineCount;
+            int tailRecordCount = tailRecords.size();
+            RefuelMetrics.get().parsed(completeLineCount - linesBefore + tailRecordCount, size - start,
+                    System.nanoTime() - startNanos);
+
+            DataFileState state = new DataFileState(size, lastModified, fileKey, completeLinesEnd, completeLineCount,
+                    tailRecordCount, stream.prefixHash, append ? previous.getRejects().plus(stream.rejects) : stream.rejects);
+            return new RefuelLoadResult(records, state, append, append ? previous.getTailRecordCount() : 0);
+        }
+    }
+
+    /**
+     * Decompresses the file as a stream on the calling thread and hands each block of complete lines to the pool as
+     * soon as it is read, so decompressing the next blocks overlaps with parsing the previous ones. The compressed
+     * bytes cannot be appended to, so a compressed file is always loaded completely.
+     */
+    private RefuelLoadResult loadCompressed(File file, FileChannel channel, Compression compression, long size,
+                                            long lastModified, Object fileKey, boolean skipInvalidTail,
+                                            RecordSink sink, LoadProgressListener progressListener)
+            throws IOException {
+        long startNanos = System.nanoTime();
+        // taken before decompressing, closing the decompressed stream closes the channel too
+        long prefixHash = PrefixHash.of(channel, size, pool);
+
+        List<ChunkTask> chunks = new ArrayList<>();
+        List<ForkJoinTask<?>> submitted = new ArrayList<>();
+        List<Long> compressedPositions = new ArrayList<>();
+        int maxParsingChunks = pool.getParallelism() * 2;
+        int parsedChunks = 0;
+        ChunkTask tail = null;
+        CollectedRecords collected = sink == null ? new CollectedRecords() : null;
+        RecordSink recordSink = sink == null ? collected : sink;
+        recordSink.start(false);
+        ChunkStream stream = new ChunkStream(file, recordSink, 0, 0, false);
+        Supplier<RecordSource.LineReader> readers = null;
+        boolean waitingForHeader = false;
+
+        channel.position(0);
+        try (InputStream in = compression.decompress(Channels.newInputStream(channel))) {
+            byte[] block = new byte[chunkSize];
+            int filled = 0;
+            boolean endOfFile = false;
+            while (!endOfFile) {
+                int read = in.read(block, filled, block.length - filled);
+                if (read < 0) {
+                    endOfFile = true;
+                } else {
+                    filled += read;
+                    if (filled < block.length) {
+                        continue;
+                    }
+                }
+
+                int completeLinesLength = completeLinesLength(block, filled);
+                if (completeLinesLength == 0 && !endOfFile) {
+                    // a line longer than the block
+                    block = Arrays.copyOf(block, block.length * 2);
+                    continue;
+                }
+
+                int chunkStart = 0;
+                if (readers == null) {
+                    // the first block, it has the first line unless the whole file is one unterminated line
+                    int firstLineEnd = completeLinesLength > 0 ? firstLineEnd(block) : filled;
+                    RecordSource recordSource = sourceOf(block, firstLineEnd);
+                    waitingForHeader = recordSource.hasHeader() && completeLinesLength == 0;
+                    readers = readersOf(recordSource, block, firstLineEnd, waitingForHeader);
+                    if (recordSource.hasHeader() && !waitingForHeader) {
+                        chunkStart = firstLineEnd;
+                        stream.lineCount = 1;
+                    }
+                }
+
+                List<ChunkTask> blockChunks = new ArrayList<>(2);
+                if (completeLinesLength > chunkStart) {
+                    blockChunks.add(new ChunkTask(ByteBuffer.wrap(block, chunkStart, completeLinesLength - chunkStart)
+                            .slice(), lenient, readers));
+                }
+                if (endOfFile && completeLinesLength < filled && !waitingForHeader) {
+                    tail = new ChunkTask(ByteBuffer.wrap(block, completeLinesLength, filled - completeLinesLength)
+                            .slice(), lenient, readers);
+                    blockChunks.add(tail);
+                }
+                for (ChunkTask chunk : blockChunks) {
+                    chunks.add(chunk);
+                    submitted.add(pool.submit(chunk));
+                    compressedPositions.add(channel.position());
+                }
+
+                byte[] nextBlock = new byte[Math.max(chunkSize, filled - completeLinesLength)];
+                System.arraycopy(block, completeLinesLength, nextBlock, 0, filled - completeLinesLength);
+                filled -= completeLinesLength;
+                block = nextBlock;
+
+                // the decompressed blocks wait in memory until they are parsed, so only a few may wait at a time
+                while (submitted.size() - parsedChunks > maxParsingChunks) {
+                    handOver(chunks, submitted, parsedChunks, tail, stream);
+                    progressListener.bytesLoaded(compressedPositions.get(parsedChunks), size);
+                    parsedChunks++;
+                }
+            }
+        }
+        for (; parsedChunks < submitted.size(); parsedChunks++) {
+            handOver(chunks, submitted, parsedChunks, tail, stream);
+            progressListener.bytesLoaded(compressedPositions.get(parsedChunks), size);
+        }
+
+        RefuelColumns tailRecords = stream.finish(tail, skipInvalidTail);
+        RefuelColumns records = collected == null ? tailRecords : collected.merge(tailRecords);
+
+        long completeLineCount = stream.lineCount;
+        int tailRecordCount = tailRecords.size();
+        RefuelMetrics.get().parsed(completeLineCount + tailRecordCount, size, System.nanoTime() - startNanos);
+
+        DataFileState state = new DataFileState(size, lastModified, fileKey, size, completeLineCount,
+                tailRecordCount, prefixHash, stream.rejects);
+        return new RefuelLoadResult(records, state, false, 0);
+    }
+
+    /**
+     * Writes the lines skipped by a lenient load in line order to the rejects file of the data file, one
+     * "lineNumber TAB kind TAB line" per line, and returns their counts. The chunks must not include the tail, since
+     * the tail is parsed again by the next update. Appending adds to the file, otherwise it is replaced and removed
+     * when no line was skipped.
+     */
+    private RejectCounts writeRejects(File file, List<ChunkTask> chunks, long linesBefore, boolean append)
+            throws IOException {
+        if (!lenient) {
+            return RejectCounts.NONE;
+        }
+        long[] counts = new long[RefuelDataError.values().length];
+        File rejectsFile = rejectsFileOf(file);
+        Writer writer = null;
+        try {
+            for (ChunkTask chunk : chunks) {
+                for (RejectedLine rejectedLine : chunk.rejectedLines) {
+                    if (writer == null) {
+                        writer = new BufferedWriter(new OutputStreamWriter(
+                                Files.newOutputStream(rejectsFile.toPath(), StandardOpenOption.CREATE,
+                                        StandardOpenOption.WRITE, append ? StandardOpenOption.APPEND
+                                                : StandardOpenOption.TRUNCATE_EXISTING),
+                                StandardCharsets.UTF_8));
+                    }
+                    writer.write(Long.toString(linesBefore + rejectedLine.lineNumber));
+                    writer.write('\t');
+                    writer.write(rejectedLine.error.name());
+                    writer.write('\t');
+                    writer.write(rejectedLine.line);
+                    writer.write('\n');
+                    counts[rejectedLine.error.ordinal()]++;
+                    RefuelMetrics.get().parseFailed(rejectedLine.error);
+                }
+                linesBefore += chunk.lineCount;
+            }
+        } finally {
+            if (writer != null) {
+                writer.close();
+            }
+        }
+        if (writer == null && !append) {
+            Files.deleteIfExists(rejectsFile.toPath());
+        }
+        return RejectCounts.of(counts);
+    }
+
+    /**
+     * returns the source of the loader, or else the one that recognizes the first line of the file, which is the
+     * given number of bytes including its line break
+     */
+    private RecordSource sourceOf(byte[] bytes, int firstLineEnd) {
+        if (source != null) {
+            return source;
+        }
+        return RecordSources.forFirstLine(lineOf(bytes, Math.min(firstLineEnd, MAX_FIRST_LINE_LENGTH)));
+    }
+
+    /**
+     * returns the readers of the lines of a file in the format of the source, the first line is the header of a
+     * source with one; null while the header is not complete, since no line is read until it is. Throws
+     * RefuelDataException for an invalid header.
+     */
+    private static Supplier<RecordSource.LineReader> readersOf(RecordSource recordSource, byte[] bytes,
+                                                               int firstLineEnd, boolean waitingForHeader) {
+        if (!recordSource.hasHeader()) {
+            return () -> recordSource.newReader(null);
+        }
+        if (waitingForHeader) {
+            return null;
+        }
+        String header = lineOf(bytes, firstLineEnd);
+        try {
+            recordSource.newReader(header);
+        } catch (RefuelDataException e) {
+            RefuelMetrics.get().parseFailed(e.getError());
+            throw e.getError() != null ? new RefuelDataException(e.getError(), 1)
+                    : new RefuelDataException(e.getMessage(), 1);
+        }
+        return () -> recordSource.newReader(header);
+    }
+
+    /**
+     * decodes the bytes of a line without its line break
+     */
+    private static String lineOf(byte[] bytes, int end) {
+        int length = end;
+        while (length > 0 && (bytes[length - 1] == '\n' || bytes[length - 1] == '\r')) {
+            length--;
+        }
+        return new String(bytes, 0, length, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * returns the position right after the first line feed of the bytes, which must have one
+     */
+    private static int firstLineEnd(byte[] bytes) {
+        int i = 0;
+        while (bytes[i] != '\n') {
+            i++;
+        }
+        return i + 1;
+    }
+
+    /**
+     * returns the length of the first line of the bytes including its line feed, 0 if there is none
+     */
+    private static int firstLineLength(byte[] bytes, int length) {
+        for (int i = 0; i < length; i++) {
+            if (bytes[i] == '\n') {
+                return i + 1;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * returns the length of the bytes up to and including the last line feed, 0 if there is none
+     */
+    private static int completeLinesLength(byte[] bytes, int length) {
+        for (int i = length - 1; i >= 0; i--) {
+            if (bytes[i] == '\n') {
+                return i + 1;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Parses the chunks on the pool and hands them to the stream in order, with only a few of them submitted ahead
+     * of the one the stream takes next. Progress is reported in chunk order, so the loaded bytes are always the ones
+     * at the start of the range.
+     */
+    private void parseInOrder(List<ChunkTask> chunks, ChunkTask tail, ChunkStream stream,
+                              LoadProgressListener progressListener) throws IOException {
+        long totalBytes = 0;
+        for (ChunkTask chunk : chunks) {
+            totalBytes += chunk.bytes.capacity();
+        }
+
+        int maxParsingChunks = pool.getParallelism() * 2;
+        List<ForkJoinTask<?>> submitted = new ArrayList<>(chunks.size());
+        long loadedBytes = 0;
+        for (int i = 0; i < chunks.size(); i++) {
+            while (submitted.size() < chunks.size() && submitted.size() - i < maxParsingChunks) {
+                submitted.add(pool.submit(chunks.get(submitted.size())));
+            }
+            loadedBytes += chunks.get(i).bytes.capacity();
+            handOver(chunks, submitted, i, tail, stream);
+            progressListener.bytesLoaded(loadedBytes, totalBytes);
+        }
+    }
+
+    /**
+     * waits for the chunk at the index to be parsed and hands it to the stream unless it is the tail; the lists
+     * forget it afterwards, so its bytes and records can be collected once the stream is done with them
+     */
+    private static void handOver(List<ChunkTask> chunks, List<ForkJoinTask<?>> submitted, int index, ChunkTask tail,
+                                 ChunkStream stream) throws IOException {
+        submitted.get(index).join();
+        ChunkTask chunk = chunks.get(index);
+        if (chunk != tail) {
+            stream.accept(chunk);
+        }
+        chunks.set(index, null);
+        submitted.set(index, null);
+    }
+
+    /**
+     * The file was only appended if it is the same file, it grew and the complete lines of the previous load hash
+     * the same, so all of their bytes are read again but not parsed. A file of the same size was changed in place,
+     * since it would be unchanged otherwise.
+     */
+    private boolean isAppended(FileChannel channel, long size, Object fileKey, DataFileState previous)
+            throws IOException {
+        return previous.isSameFile(fileKey)
+                && size > previous.getSize()
+                && PrefixHash.of(channel, previous.getCompleteLinesEnd(), pool) == previous.getPrefixHash();
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new IOException("File was truncated while it was read");
+            }
+            position += read;
+        }
+    }
+
+    /**
+     * returns the position right after the last line feed of the file, or start if there is none after it
+     */
+    private long findCompleteLinesEnd(FileChannel channel, long start, long size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(BOUNDARY_SCAN_SIZE);
+        long end = size;
+        while (end > start) {
+            long from = Math.max(start, end - buffer.capacity());
+            buffer.clear();
+            buffer.limit((int) (end - from));
+            int read = channel.read(buffer, from);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = read - 1; i >= 0; i--) {
+                if (buffer.get(i) == '\n') {
+                    return from + i + 1;
+                }
+            }
+            end = from;
+        }
+        return start;
+    }
+
+    /**
+     * every chunk ends right after a line feed, so no line is split between two chunks
+     */
+    private List<ChunkTask> splitIntoChunks(FileChannel channel, long start, long end,
+                                            Supplier<RecordSource.LineReader> readers) throws IOException {
+        List<ChunkTask> chunks = new ArrayList<>();
+        ByteBuffer scanBuffer = ByteBuffer.allocate(BOUNDARY_SCAN_SIZE);
+        long chunkStart = start;
+        while (chunkStart < end) {
+            long chunkEnd = chunkStart + chunkSize >= end ? end : findLineEnd(channel, chunkStart + chunkSize, end, scanBuffer);
+            chunks.add(mapChunk(channel, chunkStart, chunkEnd, readers));
+            chunkStart = chunkEnd;
+        }
+        return chunks;
+    }
+
+    private ChunkTask mapChunk(FileChannel channel, long start, long end, Supplier<RecordSource.LineReader> readers)
+            throws IOException {
+        return new ChunkTask(channel.map(FileChannel.MapMode.READ_ONLY, start, end - start), lenient, readers);
+    }
+
+    private long findLineEnd(FileChannel channel, long from, long size, ByteBuffer scanBuffer) throws IOException {
+        long position = from;
+        while (position < size) {
+            scanBuffer.clear();
+            int read = channel.read(scanBuffer, position);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                if (scanBuffer.get(i) == '\n') {
+                    return position + i + 1;
+                }
+            }
+            position += read;
+        }
+        return size;
+    }
+
+    /**
+     * throws the exception of a chunk that failed, with the number of the invalid line counted from the start of
+     * the file
+     */
+    private static void checkParsed(ChunkTask chunk, long linesBefore) throws IOException {
+        if (chunk.ioException != null) {
+            throw chunk.ioException;
+        }
+        if (chunk.dataException != null) {
+            RefuelDataException dataException = chunk.dataException;
+            RefuelMetrics.get().parseFailed(dataException.getError());
+            throw dataException.getError() != null
+                    ? new RefuelDataException(dataException.getError(), linesBefore + chunk.lineCount)
+                    : new RefuelDataException(dataException.getMessage(), linesBefore + chunk.lineCount);
+        }
+    }
+
+    /**
+     * Takes the parsed chunks of the complete lines in line order: reports the first invalid line of a strict load,
+     * writes the lines skipped by a lenient one and hands the records to the sink.
+     */
+    private class ChunkStream {
+
+        private final File file;
+        private final RecordSink sink;
+        private boolean appendRejects;
+
+        // Complete lines of the file before the next chunk, and the hash of their bytes.
+        private long lineCount;
+        private long prefixHash;
+        private RejectCounts rejects = RejectCounts.NONE;
+
+        ChunkStream(File file, RecordSink sink, long linesBefore, long prefixHash, boolean appendRejects) {
+            this.file = file;
+            this.sink = sink;
+            this.lineCount = linesBefore;
+            this.prefixHash = prefixHash;
+            this.appendRejects = appendRejects;
+        }
+
+        void accept(ChunkTask chunk) throws IOException {
+            checkParsed(chunk, lineCount);
+            rejects = rejects.plus(writeRejects(file, Collections.singletonList(chunk), lineCount, appendRejects));
+            appendRejects = true;
+            lineCount += chunk.lineCount;
+            prefixHash = PrefixHash.concat(prefixHash, chunk.hash, chunk.bytes.capacity());
+            sink.accept(chunk.records);
+        }
+
+        /**
+         * returns the records of the tail, none when there is no tail or an invalid one is skipped
+         */
+        RefuelColumns finish(ChunkTask tail, boolean skipInvalidTail) throws IOException {
+            if (!appendRejects) {
+                // no complete line, a full load still replaces the rejects of the previous one
+                writeRejects(file, Collections.emptyList(), lineCount, false);
+            }
+            if (tail == null || (tail.failed() && skipInvalidTail)) {
+                return new RefuelColumns();
+            }
+            checkParsed(tail, lineCount);
+            return tail.records;
+        }
+    }
+
+    /**
+     * Keeps the records of all chunks of a load that is not streamed and puts them together at the end.
+     */
+    private static class CollectedRecords implements RecordSink {
+
+        private final List<RefuelColumns> parts = new ArrayList<>();
+
+        @Override
+        public void start(boolean incremental) {
+        }
+
+        @Override
+        public void accept(RefuelColumns records) {
+            parts.add(records);
+        }
+
+        RefuelColumns merge(RefuelColumns tailRecords) {
+            int totalSize = tailRecords.size();
+            for (RefuelColumns part : parts) {
+                totalSize += part.size();
+            }
+            RefuelColumns records = new RefuelColumns(Math.max(totalSize, 1));
+            for (RefuelColumns part : parts) {
+                records.addAll(part);
+            }
+            records.addAll(tailRecords);
+            return records;
+        }
+    }
+
+    /**
+     * An invalid line skipped by a lenient load, the line number is counted within its chunk.
+     */
+    private static class RejectedLine {
+
+        private final long lineNumber;
+        private final RefuelDataError error;
+        private final String line;
+
+        RejectedLine(long lineNumber, RefuelDataError error, String line) {
+            this.lineNumber = lineNumber;
+            this.error = error;
+            this.line = line;
+        }
+    }
+
+    /**
+     * Reads the lines of one mapped chunk with a reader of its own. Lines end with \n, \r or \r\n like in
+     * BufferedReader.readLine.
+     */
+    private static class ChunkTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final ByteBuffer bytes;
+        private final boolean lenient;
+        private final Supplier<RecordSource.LineReader> readers;
+        private final RefuelColumns records = new RefuelColumns();
+        private final List<RejectedLine> rejectedLines = new ArrayList<>(0);
+
+        // Lines read so far; on error it is the number of the invalid line within the chunk.
+        private long lineCount;
+        private long hash;
+        private RefuelDataException dataException;
+        private IOException ioException;
+
+        ChunkTask(ByteBuffer bytes, boolean lenient, Supplier<RecordSource.LineReader> readers) {
+            this.bytes = bytes;
+            this.lenient = lenient;
+            this.readers = readers;
+        }
+
+        boolean failed() {
+            return dataException != null || ioException != null;
+        }
+
+        @Override
+        protected void compute() {
+            hash = PrefixHash.of(bytes);
+            CharBuffer chars;
+            try {
+                CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+                        .onMalformedInput(CodingErrorAction.REPORT)
+                        .onUnmappableCharacter(CodingErrorAction.REPORT);
+                chars = decoder.decode(bytes);
+            } catch (IOException e) {
+                ioException = e;
+                return;
+            }
+
+            RecordSource.LineReader reader = readers.get();
+            int length = chars.length();
+            int lineStart = 0;
+            while (lineStart < length) {
+                int lineEnd = lineEndOf(chars, lineStart, length);
+
+                lineCount++;
+                try {
+                    reader.read(chars, lineStart, lineEnd, records);
+                } catch (RefuelDataException e) {
+                    if (!lenient) {
+                        dataException = e;
+                        return;
+                    }
+                    // the lines that a reader rejects without a kind are counted as malformed
+                    rejectedLines.add(new RejectedLine(lineCount,
+                            e.getError() != null ? e.getError() : RefuelDataError.MALFORMED_LINE,
+                            chars.subSequence(lineStart, lineEnd).toString()));
+                }
+
+                lineStart = lineEnd + 1;
+                if (lineEnd < length && chars.charAt(lineEnd) == '\r' && lineStart < length
+                        && chars.charAt(lineStart) == '\n') {
+                    lineStart++;
+                }
+            }
+        }
+
+        /**
+         * returns the position of the line break after from, or length if the line is not terminated
+         */
+        private static int lineEndOf(CharBuffer chars, int from, int length) {
+            int lineEnd = from;
+            while (lineEnd < length) {
+                char c = chars.charAt(lineEnd);
+                if (c == '\n' || c == '\r') {
+                    break;
+                }
+                lineEnd++;
+            }
+            return lineEnd;
+        }
+    }
+}
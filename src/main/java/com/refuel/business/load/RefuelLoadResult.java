@@ -0,0 +1,56 @@
+package com.refuel.business.load;
+
+import com.refuel.model.RefuelColumns;
+
+/**
+ * Records read by a load together with the new state of the data file.
+ * <p>
+ * An incremental result only holds the records of the appended bytes; the last retracted records of the previous
+ * load (its tail) must be dropped before they are added. Otherwise the records replace everything loaded before.
+ */
+public class RefuelLoadResult {
+
+    private final RefuelColumns records;
+    private final DataFileState state;
+    private final boolean incremental;
+    private final int retractedRecordCount;
+
+    RefuelLoadResult(RefuelColumns records, DataFileState state, boolean incremental, int retractedRecordCount) {
+        this.records = records;
+        this.state = state;
+        this.incremental = incremental;
+        this.retractedRecordCount = retractedRecordCount;
+    }
+
+    static RefuelLoadResult unchanged(DataFileState state) {
+        return new RefuelLoadResult(new RefuelColumns(), state, true, 0);
+    }
+
+    public RefuelColumns getRecords() {
+        return records;
+    }
+
+    public DataFileState getState() {
+        return state;
+    }
+
+    public boolean isIncremental() {
+        return incremental;
+    }
+
+    public int getRetractedRecordCount() {
+        return retractedRecordCount;
+    }
+
+    /**
+     * applies the result to the previously loaded records and returns the up to date records
+     */
+    public RefuelColumns applyTo(RefuelColumns previousRecords) {
+        if (!incremental) {
+            return records;
+        }
+        previousRecords.truncate(previousRecords.size() - retractedRecordCount);
+        previousRecords.addAll(records);
+        return previousRecords;
+    }
+}
@@ -0,0 +1,322 @@
+package com.refuel.business.load;
+
+import com.refuel.business.aggregate.RefuelingCube;
+import com.refuel.business.exception.RefuelDataError;
+import com.refuel.model.RefuelColumns;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Binary copy of the loaded records and aggregates of a data file, kept next to it so that an unchanged file can
+ * be opened again without parsing it.
+ * <p>
+ * The file starts with a header that holds the state of the data file at the time of the snapshot, including the
+ * hash of its complete lines, the fuel types and the aggregates. The records follow column by column in the
+ * native byte order and are memory mapped when they are read; the snapshot of an aggregate-only data set holds only
+ * the records of the tail. A snapshot is used as long as the lines it was taken from did not change, so lines
+ * appended after it are parsed by a following update. A data file of the same size with another modification time,
+ * or a shorter one, was rewritten, so its snapshot is not used; the complete lines of a data file of the same size
+ * and modification time are hashed again, and those of a grown one by the update.
+ */
+public class RefuelSnapshotFile {
+
+    public static final String SUFFIX = ".refuel-snapshot";
+
+    // Changed whenever the layout of the file changes, older snapshots are then ignored.
+    static final int VERSION = 11;
+
+    private static final int MAGIC = 0x52465353;
+    private static final int PREFIX_LENGTH = 12;
+    private static final int BYTES_PER_ROW = 2 * Long.BYTES + 2 * Integer.BYTES;
+    private static final int WRITE_BUFFER_SIZE = 1024 * 1024;
+    private static final int MAX_MAPPED_BYTES = 256 * 1024 * 1024;
+
+    private final File file;
+
+    public RefuelSnapshotFile(File file) {
+        this.file = file;
+    }
+
+    /**
+     * returns the snapshot file next to the data file
+     */
+    public static RefuelSnapshotFile sidecarOf(File dataFile) {
+        return new RefuelSnapshotFile(new File(dataFile.getPath() + SUFFIX));
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Contents of a snapshot.
+     */
+    public static class Contents {
+
+        private final RefuelColumns columns;
+        private final RefuelingCube cube;
+        private final DataFileState state;
+
+        Contents(RefuelColumns columns, RefuelingCube cube, DataFileState state) {
+            this.columns = columns;
+            this.cube = cube;
+            this.state = state;
+        }
+
+        public RefuelColumns getColumns() {
+            return columns;
+        }
+
+        public RefuelingCube getCube() {
+            return cube;
+        }
+
+        public DataFileState getState() {
+            return state;
+        }
+    }
+
+    /**
+     * writes the snapshot of the records loaded from dataFile, replacing the previous one only when it is complete
+     */
+    public void write(File dataFile, RefuelColumns columns, RefuelingCube cube, DataFileState state)
+            throws IOException {
+        ByteArrayOutputStream headerBytes = new ByteArrayOutputStream();
+        DataOutputStream header = new DataOutputStream(headerBytes);
+        header.writeBoolean(ByteOrder.nativeOrder() == ByteOrder.BIG_ENDIAN);
+        header.writeLong(state.getSize());
+        header.writeLong(state.getLastModified());
+        header.writeLong(state.getCompleteLinesEnd());
+        header.writeLong(state.getCompleteLineCount());
+        header.writeInt(state.getTailRecordCount());
+        header.writeLong(state.getPrefixHash());
+        for (RefuelDataError error : RefuelDataError.values()) {
+            header.writeLong(state.getRejects().get(error));
+        }
+        header.writeBoolean(state.isDeduplicated());
+        header.writeLong(state.getDuplicateCount());
+        header.writeBoolean(state.isAggregateOnly());
+        List<String> fuelNames = columns.getFuelTypes().getNames();
+        header.writeInt(fuelNames.size());
+        for (String fuelName : fuelNames) {
+            header.writeUTF(fuelName);
+        }
+        header.writeInt(columns.size());
+        cube.writeTo(header);
+        header.flush();
+
+        Path path = file.toPath();
+        Path partPath = path.resolveSibling(path.getFileName() + ".part");
+        try (FileChannel channel = FileChannel.open(partPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer prefix = ByteBuffer.allocate(PREFIX_LENGTH);
+            prefix.putInt(MAGIC).putInt(VERSION).putInt(headerBytes.size()).flip();
+            writeFully(channel, prefix);
+            writeFully(channel, ByteBuffer.wrap(headerBytes.toByteArray()));
+            writeFully(channel, ByteBuffer.allocate(padding(PREFIX_LENGTH + headerBytes.size())));
+            writeColumns(channel, columns);
+        }
+        try {
+            Files.move(partPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(partPath, path, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * returns the snapshot if it was taken from the current lines of dataFile, possibly followed by appended lines;
+     * null if there is no snapshot, it has another version or the data file was changed in another way. Whether the
+     * lines of a grown data file were only appended to is checked again by the update that parses them.
+     */
+    public Contents read(File dataFile) throws IOException {
+        if (!file.isFile()) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer prefix = ByteBuffer.allocate(PREFIX_LENGTH);
+            if (!readFully(channel, prefix, 0)) {
+                return null;
+            }
+            prefix.flip();
+            if (prefix.getInt() != MAGIC || prefix.getInt() != VERSION) {
+                return null;
+            }
+            int headerLength = prefix.getInt();
+            if (headerLength <= 0 || headerLength > channel.size() - PREFIX_LENGTH) {
+                return null;
+            }
+            ByteBuffer headerBytes = ByteBuffer.allocate(headerLength);
+            if (!readFully(channel, headerBytes, PREFIX_LENGTH)) {
+                return null;
+            }
+            DataInputStream header = new DataInputStream(new ByteArrayInputStream(headerBytes.array()));
+
+            ByteOrder byteOrder = header.readBoolean() ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN;
+            long size = header.readLong();
+            long lastModified = header.readLong();
+            long completeLinesEnd = header.readLong();
+            long completeLineCount = header.readLong();
+            int tailRecordCount = header.readInt();
+            long prefixHash = header.readLong();
+            if (!hasSameLines(dataFile, size, lastModified, completeLinesEnd, prefixHash)) {
+                return null;
+            }
+            long[] rejectCounts = new long[RefuelDataError.values().length];
+            for (int i = 0; i < rejectCounts.length; i++) {
+                rejectCounts[i] = header.readLong();
+            }
+            boolean deduplicated = header.readBoolean();
+            long duplicateCount = header.readLong();
+            boolean aggregateOnly = header.readBoolean();
+
+            int fuelTypeCount = header.readInt();
+            List<String> fuelNames = new ArrayList<>(fuelTypeCount);
+            for (int id = 0; id < fuelTypeCount; id++) {
+                fuelNames.add(header.readUTF());
+            }
+            int rowCount = header.readInt();
+
+            long columnsStart = PREFIX_LENGTH + headerLength + padding(PREFIX_LENGTH + headerLength);
+            if (rowCount < 0 || channel.size() != columnsStart + (long) rowCount * BYTES_PER_ROW) {
+                return null;
+            }
+            int[] fuelTypeIds = new int[rowCount];
+            long[] fuelPrices = new long[rowCount];
+            long[] fuelAmounts = new long[rowCount];
+            int[] refuellingDays = new int[rowCount];
+            long position = columnsStart;
+            position = readLongs(channel, position, byteOrder, fuelPrices);
+            position = readLongs(channel, position, byteOrder, fuelAmounts);
+            position = readInts(channel, position, byteOrder, fuelTypeIds);
+            readInts(channel, position, byteOrder, refuellingDays);
+            for (int fuelTypeId : fuelTypeIds) {
+                if (fuelTypeId < 0 || fuelTypeId >= fuelTypeCount) {
+                    throw new IOException("Invalid fuel type id in snapshot " + file + ": " + fuelTypeId);
+                }
+            }
+
+            RefuelColumns columns = RefuelColumns.of(fuelNames, fuelTypeIds, fuelPrices, fuelAmounts,
+                    refuellingDays, rowCount);
+            // the cube is read after the columns are created, since it shares their fuel types
+            RefuelingCube cube = RefuelingCube.readFrom(header, columns.getFuelTypes());
+            DataFileState state = new DataFileState(size, lastModified, null, completeLinesEnd, completeLineCount,
+                    tailRecordCount, prefixHash, RejectCounts.of(rejectCounts), deduplicated, duplicateCount,
+                    aggregateOnly);
+            return new Contents(columns, cube, state);
+        }
+    }
+
+    /**
+     * a grown data file is only checked for its size here, the update that parses its appended lines hashes the
+     * lines of the snapshot again
+     */
+    private boolean hasSameLines(File dataFile, long size, long lastModified, long completeLinesEnd,
+                                 long prefixHash) throws IOException {
+        try (FileChannel dataChannel = FileChannel.open(dataFile.toPath(), StandardOpenOption.READ)) {
+            long dataSize = dataChannel.size();
+            long dataLastModified = Files.getLastModifiedTime(dataFile.toPath()).toMillis();
+            if (dataSize < size || dataSize == size && dataLastModified != lastModified) {
+                return false;
+            }
+            return dataSize > size
+                    || PrefixHash.of(dataChannel, completeLinesEnd, ForkJoinPool.commonPool()) == prefixHash;
+        }
+    }
+
+    private static void writeColumns(FileChannel channel, RefuelColumns columns) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE).order(ByteOrder.nativeOrder());
+        int rowCount = columns.size();
+        for (int row = 0; row < rowCount; row++) {
+            flushIfFull(channel, buffer, Long.BYTES);
+            buffer.putLong(columns.getFuelPriceUnits(row));
+        }
+        for (int row = 0; row < rowCount; row++) {
+            flushIfFull(channel, buffer, Long.BYTES);
+            buffer.putLong(columns.getFuelAmountUnits(row));
+        }
+        for (int row = 0; row < rowCount; row++) {
+            flushIfFull(channel, buffer, Integer.BYTES);
+            buffer.putInt(columns.getFuelTypeId(row));
+        }
+        for (int row = 0; row < rowCount; row++) {
+            flushIfFull(channel, buffer, Integer.BYTES);
+            buffer.putInt(columns.getRefuellingDay(row));
+        }
+        buffer.flip();
+        writeFully(channel, buffer);
+    }
+
+    private static void flushIfFull(FileChannel channel, ByteBuffer buffer, int needed) throws IOException {
+        if (buffer.remaining() < needed) {
+            buffer.flip();
+            writeFully(channel, buffer);
+            buffer.clear();
+        }
+    }
+
+    private static long readLongs(FileChannel channel, long position, ByteOrder byteOrder, long[] values)
+            throws IOException {
+        int done = 0;
+        while (done < values.length) {
+            int count = Math.min(values.length - done, MAX_MAPPED_BYTES / Long.BYTES);
+            channel.map(FileChannel.MapMode.READ_ONLY, position, (long) count * Long.BYTES).order(byteOrder)
+                    .asLongBuffer().get(values, done, count);
+            position += (long) count * Long.BYTES;
+            done += count;
+        }
+        return position;
+    }
+
+    private static long readInts(FileChannel channel, long position, ByteOrder byteOrder, int[] values)
+            throws IOException {
+        int done = 0;
+        while (done < values.length) {
+            int count = Math.min(values.length - done, MAX_MAPPED_BYTES / Integer.BYTES);
+            channel.map(FileChannel.MapMode.READ_ONLY, position, (long) count * Integer.BYTES).order(byteOrder)
+                    .asIntBuffer().get(values, done, count);
+            position += (long) count * Integer.BYTES;
+            done += count;
+        }
+        return position;
+    }
+
+    /**
+     * the columns start at a multiple of 8 bytes, so the mapped values are aligned
+     */
+    private static int padding(long length) {
+        return (int) (-length & 7);
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static boolean readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                return false;
+            }
+            position += read;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,71 @@
+package com.refuel.business.load;
+
+import com.refuel.business.exception.RefuelDataError;
+
+import java.util.Arrays;
+
+/**
+ * Number of invalid lines that a lenient load skipped, by kind of error.
+ */
+public final class RejectCounts {
+
+    public static final RejectCounts NONE = new RejectCounts(new long[RefuelDataError.values().length]);
+
+    // Indexed by the ordinal of the error.
+    private final long[] counts;
+
+    private RejectCounts(long[] counts) {
+        this.counts = counts;
+    }
+
+    /**
+     * counts are indexed by the ordinal of the error, the array is owned by the result afterwards
+     */
+    static RejectCounts of(long[] counts) {
+        if (counts.length != RefuelDataError.values().length) {
+            throw new IllegalArgumentException("Expected " + RefuelDataError.values().length + " counts");
+        }
+        return new RejectCounts(counts);
+    }
+
+    public long get(RefuelDataError error) {
+        return counts[error.ordinal()];
+    }
+
+    public long getTotal() {
+        long total = 0;
+        for (long count : counts) {
+            total += count;
+        }
+        return total;
+    }
+
+    public boolean isEmpty() {
+        return getTotal() == 0;
+    }
+
+    public RejectCounts plus(RejectCounts other) {
+        long[] sum = Arrays.copyOf(counts, counts.length);
+        for (int i = 0; i < sum.length; i++) {
+            sum[i] += other.counts[i];
+        }
+        return new RejectCounts(sum);
+    }
+
+    /**
+     * lists the kinds with skipped lines, e.g. "bad number: 10, bad date: 2"
+     */
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder();
+        for (RefuelDataError error : RefuelDataError.values()) {
+            if (counts[error.ordinal()] > 0) {
+                if (text.length() > 0) {
+                    text.append(", ");
+                }
+                text.append(error.getDescription()).append(": ").append(counts[error.ordinal()]);
+            }
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,295 @@
+package com.refuel.business.metrics;
+
+import com.refuel.business.exception.RefuelDataError;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Metrics of loading data files and drawing the chart, shared by the whole application.
+ * <p>
+ * Counters are striped adders, so recording costs no lock and the metrics can always stay on. They are published
+ * as the MXBean com.refuel:type=Metrics and, when reporting is started, logged periodically for the interval.
+ */
+public final class RefuelMetrics implements RefuelMetricsMXBean {
+
+    public static final String OBJECT_NAME = "com.refuel:type=Metrics";
+
+    private static final Logger LOGGER = Logger.getLogger(RefuelMetrics.class.getName());
+    private static final RefuelMetrics INSTANCE = new RefuelMetrics();
+
+    private final LongAdder loadCount = new LongAdder();
+    private final LongAdder snapshotLoadCount = new LongAdder();
+    private final LongAdder linesParsed = new LongAdder();
+    private final LongAdder bytesRead = new LongAdder();
+    private final LongAdder[] parseErrors = new LongAdder[RefuelDataError.values().length];
+    private final LongAdder unknownParseErrors = new LongAdder();
+    private final TimerMetric parseTimer = new TimerMetric();
+    private final TimerMetric aggregationTimer = new TimerMetric();
+    private final TimerMetric reloadLatency = new TimerMetric();
+    private final TimerMetric renderTimer = new TimerMetric();
+
+    // Time of the first change event of each data file that was not shown in the chart yet.
+    private final Map<File, Long> pendingChanges = new ConcurrentHashMap<>();
+
+    private ScheduledExecutorService reporter;
+
+    private RefuelMetrics() {
+        for (int i = 0; i < parseErrors.length; i++) {
+            parseErrors[i] = new LongAdder();
+        }
+    }
+
+    public static RefuelMetrics get() {
+        return INSTANCE;
+    }
+
+    /**
+     * records the lines parsed by a load and the bytes they were read from
+     */
+    public void parsed(long lines, long bytes, long nanos) {
+        loadCount.increment();
+        linesParsed.add(lines);
+        bytesRead.add(bytes);
+        parseTimer.record(nanos);
+    }
+
+    /**
+     * error can be null if the kind of the invalid line is not known
+     */
+    public void parseFailed(RefuelDataError error) {
+        if (error == null) {
+            unknownParseErrors.increment();
+        } else {
+            parseErrors[error.ordinal()].increment();
+        }
+    }
+
+    public void snapshotLoaded() {
+        snapshotLoadCount.increment();
+    }
+
+    public void aggregated(long nanos) {
+        aggregationTimer.record(nanos);
+    }
+
+    /**
+     * starts the reload latency of the file, unless an earlier change of it is still not shown
+     */
+    public void fileChanged(File file) {
+        pendingChanges.putIfAbsent(file.getAbsoluteFile(), System.nanoTime());
+    }
+
+    /**
+     * ends the reload latency of the file, if a change of it was recorded
+     */
+    public void chartRefreshed(File file) {
+        Long changeNanos = pendingChanges.remove(file.getAbsoluteFile());
+        if (changeNanos != null) {
+            reloadLatency.record(System.nanoTime() - changeNanos);
+        }
+    }
+
+    public void rendered(long nanos) {
+        renderTimer.record(nanos);
+    }
+
+    /**
+     * publishes the metrics as an MXBean, doing nothing if they are already published
+     */
+    public void registerMBean() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName(OBJECT_NAME));
+        } catch (InstanceAlreadyExistsException e) {
+            // already registered
+        } catch (JMException e) {
+            LOGGER.log(Level.WARNING, "Metrics cannot be registered", e);
+        }
+    }
+
+    /**
+     * logs the activity of each interval, intervals without loads or chart refreshes are not logged
+     */
+    public synchronized void startReporting(long intervalSeconds) {
+        if (reporter != null || intervalSeconds <= 0) {
+            return;
+        }
+        reporter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "refuel-metrics-reporter");
+            thread.setDaemon(true);
+            return thread;
+        });
+        Report[] previous = {new Report(this)};
+        reporter.scheduleAtFixedRate(() -> {
+            Report current = new Report(this);
+            String line = current.describeSince(previous[0]);
+            if (line != null) {
+                LOGGER.info(line);
+            }
+            previous[0] = current;
+        }, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    public synchronized void stopReporting() {
+        if (reporter != null) {
+            reporter.shutdownNow();
+            reporter = null;
+        }
+    }
+
+    @Override
+    public long getLoadCount() {
+        return loadCount.sum();
+    }
+
+    @Override
+    public long getSnapshotLoadCount() {
+        return snapshotLoadCount.sum();
+    }
+
+    @Override
+    public long getLinesParsed() {
+        return linesParsed.sum();
+    }
+
+    @Override
+    public long getBytesRead() {
+        return bytesRead.sum();
+    }
+
+    @Override
+    public double getLinesParsedPerSecond() {
+        long nanos = parseTimer.getTotalNanos();
+        return nanos == 0 ? 0 : linesParsed.sum() * 1e9 / nanos;
+    }
+
+    @Override
+    public Map<String, Long> getParseErrors() {
+        Map<String, Long> errors = new LinkedHashMap<>();
+        for (RefuelDataError error : RefuelDataError.values()) {
+            errors.put(error.name(), parseErrors[error.ordinal()].sum());
+        }
+        errors.put("UNKNOWN", unknownParseErrors.sum());
+        return errors;
+    }
+
+    @Override
+    public double getAverageParseMillis() {
+        return parseTimer.getAverageMillis();
+    }
+
+    @Override
+    public double getMaxParseMillis() {
+        return parseTimer.getMaxMillis();
+    }
+
+    @Override
+    public double getAverageAggregationMillis() {
+        return aggregationTimer.getAverageMillis();
+    }
+
+    @Override
+    public double getMaxAggregationMillis() {
+        return aggregationTimer.getMaxMillis();
+    }
+
+    @Override
+    public long getReloadCount() {
+        return reloadLatency.getCount();
+    }
+
+    @Override
+    public double getAverageReloadLatencyMillis() {
+        return reloadLatency.getAverageMillis();
+    }
+
+    @Override
+    public double getMaxReloadLatencyMillis() {
+        return reloadLatency.getMaxMillis();
+    }
+
+    @Override
+    public double getAverageRenderMillis() {
+        return renderTimer.getAverageMillis();
+    }
+
+    @Override
+    public double getMaxRenderMillis() {
+        return renderTimer.getMaxMillis();
+    }
+
+    /**
+     * Totals of the metrics at one point in time, the log line shows the difference of two of them.
+     */
+    private static class Report {
+
+        private final long loads;
+        private final long snapshotLoads;
+        private final long lines;
+        private final long bytes;
+        private final long parseNanos;
+        private final long errors;
+        private final long aggregations;
+        private final long aggregationNanos;
+        private final long reloads;
+        private final long reloadNanos;
+        private final long renders;
+        private final long renderNanos;
+
+        Report(RefuelMetrics metrics) {
+            loads = metrics.loadCount.sum();
+            snapshotLoads = metrics.snapshotLoadCount.sum();
+            lines = metrics.linesParsed.sum();
+            bytes = metrics.bytesRead.sum();
+            parseNanos = metrics.parseTimer.getTotalNanos();
+            long errorSum = metrics.unknownParseErrors.sum();
+            for (LongAdder parseError : metrics.parseErrors) {
+                errorSum += parseError.sum();
+            }
+            errors = errorSum;
+            aggregations = metrics.aggregationTimer.getCount();
+            aggregationNanos = metrics.aggregationTimer.getTotalNanos();
+            reloads = metrics.reloadLatency.getCount();
+            reloadNanos = metrics.reloadLatency.getTotalNanos();
+            renders = metrics.renderTimer.getCount();
+            renderNanos = metrics.renderTimer.getTotalNanos();
+        }
+
+        /**
+         * returns null if nothing happened since the previous report
+         */
+        String describeSince(Report previous) {
+            if (loads == previous.loads && snapshotLoads == previous.snapshotLoads && errors == previous.errors
+                    && aggregations == previous.aggregations && renders == previous.renders) {
+                return null;
+            }
+            long intervalLines = lines - previous.lines;
+            long intervalParseNanos = parseNanos - previous.parseNanos;
+            return String.format("loads=%d snapshotLoads=%d lines=%d bytes=%d linesPerSecond=%.0f parseErrors=%d"
+                            + " avgAggregationMs=%.3f avgReloadLatencyMs=%.1f avgRenderMs=%.3f",
+                    loads - previous.loads, snapshotLoads - previous.snapshotLoads, intervalLines,
+                    bytes - previous.bytes,
+                    intervalParseNanos == 0 ? 0.0 : intervalLines * 1e9 / intervalParseNanos,
+                    errors - previous.errors,
+                    average(aggregationNanos - previous.aggregationNanos, aggregations - previous.aggregations),
+                    average(reloadNanos - previous.reloadNanos, reloads - previous.reloads),
+                    average(renderNanos - previous.renderNanos, renders - previous.renders));
+        }
+
+        private static double average(long nanos, long count) {
+            return count == 0 ? 0 : nanos / 1e6 / count;
+        }
+    }
+}
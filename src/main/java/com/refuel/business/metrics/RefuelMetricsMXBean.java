@@ -0,0 +1,51 @@
+package com.refuel.business.metrics;
+
+import java.util.Map;
+
+/**
+ * Counters and timings of loading data files and drawing the chart since the application started.
+ */
+public interface RefuelMetricsMXBean {
+
+    long getLoadCount();
+
+    long getSnapshotLoadCount();
+
+    long getLinesParsed();
+
+    long getBytesRead();
+
+    /**
+     * lines parsed per second of parsing
+     */
+    double getLinesParsedPerSecond();
+
+    /**
+     * number of invalid lines by kind of error
+     */
+    Map<String, Long> getParseErrors();
+
+    double getAverageParseMillis();
+
+    double getMaxParseMillis();
+
+    double getAverageAggregationMillis();
+
+    double getMaxAggregationMillis();
+
+    /**
+     * number of data file changes that were shown in the chart
+     */
+    long getReloadCount();
+
+    /**
+     * time from the first change event of a data file to the refreshed chart
+     */
+    double getAverageReloadLatencyMillis();
+
+    double getMaxReloadLatencyMillis();
+
+    double getAverageRenderMillis();
+
+    double getMaxRenderMillis();
+}
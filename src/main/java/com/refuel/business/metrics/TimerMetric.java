@@ -0,0 +1,37 @@
+package com.refuel.business.metrics;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Number, total and maximum duration of a timed operation, recorded without locking.
+ */
+public class TimerMetric {
+
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+    public void record(long nanos) {
+        count.increment();
+        totalNanos.add(nanos);
+        maxNanos.accumulate(nanos);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public long getTotalNanos() {
+        return totalNanos.sum();
+    }
+
+    public double getAverageMillis() {
+        long countSum = count.sum();
+        return countSum == 0 ? 0 : totalNanos.sum() / 1e6 / countSum;
+    }
+
+    public double getMaxMillis() {
+        return maxNanos.get() / 1e6;
+    }
+}
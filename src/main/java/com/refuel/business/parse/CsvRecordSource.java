@@ -0,0 +1,193 @@
+package com.refuel.business.parse;
+
+import com.refuel.business.exception.RefuelDataError;
+import com.refuel.business.exception.RefuelDataException;
+import com.refuel.model.RefuelColumns;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Comma separated values with a header that names the fuelName, fuelPrice, fuelAmount and refuellingDate columns
+ * in any order and case; other columns are ignored. A field may be enclosed in double quotes, with a quote inside
+ * it written twice, so that it can hold commas (e.g. "1,319"). The numbers are read like in the pipe format and
+ * the dates may also be ISO dates (yyyy-mm-dd).
+ */
+class CsvRecordSource implements RecordSource {
+
+    static final String NAME = "csv";
+
+    private static final char SEPARATOR = ',';
+    private static final char QUOTE = '"';
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public boolean hasHeader() {
+        return true;
+    }
+
+    @Override
+    public boolean recognizes(CharSequence firstLine) {
+        String line = firstLine.toString();
+        return line.indexOf(SEPARATOR) >= 0 && line.toLowerCase(Locale.ROOT)
+                .contains(RecordFields.NAMES[RecordFields.FUEL_NAME].toLowerCase(Locale.ROOT));
+    }
+
+    @Override
+    public LineReader newReader(String header) {
+        return new CsvLineReader(fieldsOfColumns(header));
+    }
+
+    /**
+     * returns the index of the field of every column of the header, -1 for the ignored ones
+     */
+    private static int[] fieldsOfColumns(String header) {
+        FieldScanner scanner = new FieldScanner();
+        int[] fields = new int[0];
+        boolean[] seen = new boolean[RecordFields.NAMES.length];
+        int fieldStart = 0;
+        int end = header.length();
+        while (true) {
+            int fieldEnd = scanner.scan(header, fieldStart, end);
+            String name = scanner.value(header).trim();
+            int field = -1;
+            for (int index = 0; index < RecordFields.NAMES.length; index++) {
+                if (RecordFields.NAMES[index].equalsIgnoreCase(name)) {
+                    field = index;
+                }
+            }
+            if (field >= 0 && seen[field]) {
+                throw new RefuelDataException("CSV header has the column " + name + " twice");
+            }
+            if (field >= 0) {
+                seen[field] = true;
+            }
+            fields = Arrays.copyOf(fields, fields.length + 1);
+            fields[fields.length - 1] = field;
+            if (fieldEnd >= end) {
+                break;
+            }
+            fieldStart = fieldEnd + 1;
+        }
+        for (int index = 0; index < seen.length; index++) {
+            if (!seen[index]) {
+                throw new RefuelDataException("CSV header must have a " + RecordFields.NAMES[index] + " column");
+            }
+        }
+        return fields;
+    }
+
+    /**
+     * Finds the value of one field of a line.
+     */
+    private static class FieldScanner {
+
+        int valueStart;
+        int valueEnd;
+        // Whether the quoted value has quotes written twice, which have to be removed from the value.
+        boolean escapedQuotes;
+
+        /**
+         * scans the field starting at fieldStart and returns the position of the separator after it, or end
+         */
+        int scan(CharSequence chars, int fieldStart, int end) {
+            escapedQuotes = false;
+            if (fieldStart >= end || chars.charAt(fieldStart) != QUOTE) {
+                valueStart = fieldStart;
+                int i = fieldStart;
+                while (i < end && chars.charAt(i) != SEPARATOR) {
+                    i++;
+                }
+                valueEnd = i;
+                return i;
+            }
+
+            valueStart = fieldStart + 1;
+            int i = valueStart;
+            while (true) {
+                if (i >= end) {
+                    throw new RefuelDataException(RefuelDataError.MALFORMED_LINE);
+                }
+                if (chars.charAt(i) == QUOTE) {
+                    if (i + 1 < end && chars.charAt(i + 1) == QUOTE) {
+                        escapedQuotes = true;
+                        i += 2;
+                        continue;
+                    }
+                    break;
+                }
+                i++;
+            }
+            valueEnd = i;
+            if (i + 1 < end && chars.charAt(i + 1) != SEPARATOR) {
+                // text between the closing quote and the separator
+                throw new RefuelDataException(RefuelDataError.MALFORMED_LINE);
+            }
+            return i + 1;
+        }
+
+        String value(CharSequence chars) {
+            String value = chars.subSequence(valueStart, valueEnd).toString();
+            return escapedQuotes ? value.replace("\"\"", "\"") : value;
+        }
+    }
+
+    private static class CsvLineReader implements LineReader {
+
+        private final FieldScanner scanner = new FieldScanner();
+        private final int[] fieldsOfColumns;
+        private final int[] starts = new int[RecordFields.NAMES.length];
+        private final int[] ends = new int[RecordFields.NAMES.length];
+        private String escapedFuelName;
+
+        CsvLineReader(int[] fieldsOfColumns) {
+            this.fieldsOfColumns = fieldsOfColumns;
+        }
+
+        @Override
+        public void read(CharSequence chars, int start, int end, RefuelColumns records) {
+            escapedFuelName = null;
+            int column = 0;
+            int fieldStart = start;
+            while (true) {
+                int fieldEnd = scanner.scan(chars, fieldStart, end);
+                int field = column < fieldsOfColumns.length ? fieldsOfColumns[column] : -1;
+                if (field >= 0) {
+                    starts[field] = scanner.valueStart;
+                    ends[field] = scanner.valueEnd;
+                    if (field == RecordFields.FUEL_NAME && scanner.escapedQuotes) {
+                        escapedFuelName = scanner.value(chars);
+                    }
+                }
+                column++;
+                if (fieldEnd >= end) {
+                    break;
+                }
+                fieldStart = fieldEnd + 1;
+            }
+            if (column != fieldsOfColumns.length) {
+                throw new RefuelDataException(RefuelDataError.WRONG_COLUMN_COUNT);
+            }
+
+            long fuelPrice = RecordFields.parseNumber(chars, starts[RecordFields.FUEL_PRICE],
+                    ends[RecordFields.FUEL_PRICE]);
+            long fuelAmount = RecordFields.parseNumber(chars, starts[RecordFields.FUEL_AMOUNT],
+                    ends[RecordFields.FUEL_AMOUNT]);
+            int epochDay = RecordFields.parseAnyDate(chars, starts[RecordFields.REFUELLING_DATE],
+                    ends[RecordFields.REFUELLING_DATE]);
+            if (fuelPrice < 0 || fuelAmount < 0) {
+                throw new RefuelDataException(RefuelDataError.NEGATIVE_VALUE);
+            }
+
+            int fuelTypeId = escapedFuelName != null
+                    ? records.getFuelTypes().intern(escapedFuelName)
+                    : records.getFuelTypes().intern(chars, starts[RecordFields.FUEL_NAME],
+                    ends[RecordFields.FUEL_NAME]);
+            records.add(fuelTypeId, fuelPrice, fuelAmount, epochDay);
+        }
+    }
+}
@@ -0,0 +1,338 @@
+package com.refuel.business.parse;
+
+import com.refuel.business.exception.RefuelDataError;
+import com.refuel.business.exception.RefuelDataException;
+import com.refuel.model.RefuelColumns;
+
+/**
+ * One JSON object per line, e.g.
+ * <p>
+ * {"fuelName": "98", "fuelPrice": 1.319, "fuelAmount": 50.56, "refuellingDate": "2016-01-01"}
+ * <p>
+ * The four keys may come in any order and other keys are ignored. The price and amount are JSON numbers without an
+ * exponent or strings that are read like the numbers of the pipe format, the date is a string with an ISO or a
+ * dd.mm.yyyy date. The line is read in place, only a fuel name with escapes is copied.
+ */
+class JsonLinesRecordSource implements RecordSource {
+
+    static final String NAME = "jsonl";
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public boolean hasHeader() {
+        return false;
+    }
+
+    @Override
+    public boolean recognizes(CharSequence firstLine) {
+        for (int i = 0; i < firstLine.length(); i++) {
+            if (!Character.isWhitespace(firstLine.charAt(i))) {
+                return firstLine.charAt(i) == '{';
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public LineReader newReader(String header) {
+        return new JsonLineReader();
+    }
+
+    private static class JsonLineReader implements LineReader {
+
+        private static final int ALL_FIELDS = (1 << RecordFields.NAMES.length) - 1;
+
+        private final StringBuilder unescaped = new StringBuilder();
+
+        private CharSequence chars;
+        private int position;
+        private int end;
+        // Set by stringEnd when the string has escapes.
+        private boolean escaped;
+
+        private int fuelNameStart;
+        private int fuelNameEnd;
+        private String escapedFuelName;
+        private long fuelPrice;
+        private long fuelAmount;
+        private int epochDay;
+
+        @Override
+        public void read(CharSequence chars, int start, int end, RefuelColumns records) {
+            this.chars = chars;
+            this.position = start;
+            this.end = end;
+            escapedFuelName = null;
+
+            int fields = 0;
+            skipWhitespace();
+            expect('{');
+            skipWhitespace();
+            if (position < end && chars.charAt(position) == '}') {
+                position++;
+            } else {
+                while (true) {
+                    skipWhitespace();
+                    expect('"');
+                    int keyStart = position;
+                    int keyEnd = stringEnd();
+                    position = keyEnd + 1;
+                    int field = fieldOf(keyStart, keyEnd);
+                    skipWhitespace();
+                    expect(':');
+                    skipWhitespace();
+                    readValue(field);
+                    if (field >= 0) {
+                        fields |= 1 << field;
+                    }
+                    skipWhitespace();
+                    if (position < end && chars.charAt(position) == ',') {
+                        position++;
+                    } else {
+                        expect('}');
+                        break;
+                    }
+                }
+            }
+            skipWhitespace();
+            if (position < end) {
+                throw malformed();
+            }
+            if (fields != ALL_FIELDS) {
+                throw new RefuelDataException(RefuelDataError.WRONG_COLUMN_COUNT);
+            }
+            if (fuelPrice < 0 || fuelAmount < 0) {
+                throw new RefuelDataException(RefuelDataError.NEGATIVE_VALUE);
+            }
+
+            int fuelTypeId = escapedFuelName != null
+                    ? records.getFuelTypes().intern(escapedFuelName)
+                    : records.getFuelTypes().intern(chars, fuelNameStart, fuelNameEnd);
+            records.add(fuelTypeId, fuelPrice, fuelAmount, epochDay);
+        }
+
+        /**
+         * reads the value at the position into the field, or skips it for other keys
+         */
+        private void readValue(int field) {
+            boolean string = position < end && chars.charAt(position) == '"';
+            if (field == RecordFields.FUEL_NAME) {
+                if (!string) {
+                    throw malformed();
+                }
+                position++;
+                fuelNameStart = position;
+                fuelNameEnd = stringEnd();
+                escapedFuelName = escaped ? unescape(fuelNameStart, fuelNameEnd) : null;
+                position = fuelNameEnd + 1;
+            } else if (field == RecordFields.FUEL_PRICE || field == RecordFields.FUEL_AMOUNT) {
+                long units;
+                if (string) {
+                    position++;
+                    int valueEnd = stringEnd();
+                    units = RecordFields.parseNumber(chars, position, valueEnd);
+                    position = valueEnd + 1;
+                } else {
+                    int valueEnd = numberEnd();
+                    units = RecordFields.parseNumber(chars, position, valueEnd);
+                    position = valueEnd;
+                }
+                if (field == RecordFields.FUEL_PRICE) {
+                    fuelPrice = units;
+                } else {
+                    fuelAmount = units;
+                }
+            } else if (field == RecordFields.REFUELLING_DATE) {
+                if (!string) {
+                    throw new RefuelDataException(RefuelDataError.INVALID_DATE);
+                }
+                position++;
+                int valueEnd = stringEnd();
+                epochDay = RecordFields.parseAnyDate(chars, position, valueEnd);
+                position = valueEnd + 1;
+            } else {
+                skipValue();
+            }
+        }
+
+        /**
+         * returns the end of the JSON number at the position, which may only have a sign, digits and a fraction
+         */
+        private int numberEnd() {
+            int i = position;
+            if (i < end && chars.charAt(i) == '-') {
+                i++;
+            }
+            int digits = skipDigits(i);
+            if (digits == i) {
+                throw new RefuelDataException(RefuelDataError.INVALID_NUMBER);
+            }
+            i = digits;
+            if (i < end && chars.charAt(i) == '.') {
+                digits = skipDigits(i + 1);
+                if (digits == i + 1) {
+                    throw new RefuelDataException(RefuelDataError.INVALID_NUMBER);
+                }
+                i = digits;
+            }
+            if (i < end && (chars.charAt(i) == 'e' || chars.charAt(i) == 'E')) {
+                throw new RefuelDataException(RefuelDataError.INVALID_NUMBER);
+            }
+            return i;
+        }
+
+        private int skipDigits(int from) {
+            int i = from;
+            while (i < end && chars.charAt(i) >= '0' && chars.charAt(i) <= '9') {
+                i++;
+            }
+            return i;
+        }
+
+        /**
+         * skips a value of any type: a string, an object or array with everything in it, or a number or literal
+         */
+        private void skipValue() {
+            if (position >= end) {
+                throw malformed();
+            }
+            char c = chars.charAt(position);
+            if (c == '"') {
+                position++;
+                position = stringEnd() + 1;
+            } else if (c == '{' || c == '[') {
+                int depth = 0;
+                do {
+                    if (position >= end) {
+                        throw malformed();
+                    }
+                    c = chars.charAt(position);
+                    if (c == '"') {
+                        position++;
+                        position = stringEnd();
+                    } else if (c == '{' || c == '[') {
+                        depth++;
+                    } else if (c == '}' || c == ']') {
+                        depth--;
+                    }
+                    position++;
+                } while (depth > 0);
+            } else {
+                int start = position;
+                while (position < end && "-+.0123456789eEtrufalsn".indexOf(chars.charAt(position)) >= 0) {
+                    position++;
+                }
+                if (position == start) {
+                    throw malformed();
+                }
+            }
+        }
+
+        /**
+         * returns the position of the quote that closes the string starting at the position
+         */
+        private int stringEnd() {
+            escaped = false;
+            int i = position;
+            while (i < end) {
+                char c = chars.charAt(i);
+                if (c == '"') {
+                    return i;
+                }
+                if (c == '\\') {
+                    escaped = true;
+                    i++;
+                }
+                i++;
+            }
+            throw malformed();
+        }
+
+        /**
+         * returns the index of the field of the key between keyStart and keyEnd, -1 for other keys
+         */
+        private int fieldOf(int keyStart, int keyEnd) {
+            CharSequence key = escaped ? unescape(keyStart, keyEnd) : chars.subSequence(keyStart, keyEnd);
+            for (int field = 0; field < RecordFields.NAMES.length; field++) {
+                String name = RecordFields.NAMES[field];
+                if (name.length() == key.length() && name.contentEquals(key)) {
+                    return field;
+                }
+            }
+            return -1;
+        }
+
+        private String unescape(int start, int end) {
+            unescaped.setLength(0);
+            for (int i = start; i < end; i++) {
+                char c = chars.charAt(i);
+                if (c != '\\') {
+                    unescaped.append(c);
+                    continue;
+                }
+                char escape = chars.charAt(++i);
+                switch (escape) {
+                    case '"':
+                    case '\\':
+                    case '/':
+                        unescaped.append(escape);
+                        break;
+                    case 'b':
+                        unescaped.append('\b');
+                        break;
+                    case 'f':
+                        unescaped.append('\f');
+                        break;
+                    case 'n':
+                        unescaped.append('\n');
+                        break;
+                    case 'r':
+                        unescaped.append('\r');
+                        break;
+                    case 't':
+                        unescaped.append('\t');
+                        break;
+                    case 'u':
+                        if (i + 4 >= end) {
+                            throw malformed();
+                        }
+                        int code = 0;
+                        for (int digit = 1; digit <= 4; digit++) {
+                            int value = Character.digit(chars.charAt(i + digit), 16);
+                            if (value < 0) {
+                                throw malformed();
+                            }
+                            code = code * 16 + value;
+                        }
+                        unescaped.append((char) code);
+                        i += 4;
+                        break;
+                    default:
+                        throw malformed();
+                }
+            }
+            return unescaped.toString();
+        }
+
+        private void skipWhitespace() {
+            while (position < end && Character.isWhitespace(chars.charAt(position))) {
+                position++;
+            }
+        }
+
+        private void expect(char c) {
+            if (position >= end || chars.charAt(position) != c) {
+                throw malformed();
+            }
+            position++;
+        }
+
+        private static RefuelDataException malformed() {
+            return new RefuelDataException(RefuelDataError.MALFORMED_LINE);
+        }
+    }
+}
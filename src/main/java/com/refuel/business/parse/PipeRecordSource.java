@@ -0,0 +1,39 @@
+package com.refuel.business.parse;
+
+/**
+ * The fuelName|fuelPrice|fuelAmount|refuellingDate format without a header, read by RefuelLineParser.
+ */
+class PipeRecordSource implements RecordSource {
+
+    static final String NAME = "pipe";
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public boolean hasHeader() {
+        return false;
+    }
+
+    @Override
+    public boolean recognizes(CharSequence firstLine) {
+        for (int i = 0; i < firstLine.length(); i++) {
+            if (firstLine.charAt(i) == '|') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public LineReader newReader(String header) {
+        RefuelLineParser parser = new RefuelLineParser();
+        return (chars, start, end, records) -> {
+            parser.parse(chars, start, end);
+            records.add(records.getFuelTypes().intern(chars, parser.getFuelNameStart(), parser.getFuelNameEnd()),
+                    parser.getFuelPriceUnits(), parser.getFuelAmountUnits(), parser.getEpochDay());
+        };
+    }
+}
@@ -0,0 +1,141 @@
+package com.refuel.business.parse;
+
+import com.refuel.business.exception.RefuelDataError;
+import com.refuel.business.exception.RefuelDataException;
+import com.refuel.business.time.EpochDays;
+import com.refuel.model.FixedPoint;
+
+/**
+ * The fields of a refuel record and how their values are read from chars, the same way for every record source.
+ */
+final class RecordFields {
+
+    static final int FUEL_NAME = 0;
+    static final int FUEL_PRICE = 1;
+    static final int FUEL_AMOUNT = 2;
+    static final int REFUELLING_DATE = 3;
+
+    // Names of the fields by index, e.g. in a CSV header or as JSON keys.
+    static final String[] NAMES = {"fuelName", "fuelPrice", "fuelAmount", "refuellingDate"};
+
+    private static final char DATE_SEPARATOR = '.';
+    private static final char ISO_DATE_SEPARATOR = '-';
+
+    // Largest price or amount, so that their product, the spending of a refueling, fits in a long.
+    private static final long MAX_UNITS = 100_000 * FixedPoint.SCALE;
+
+    private RecordFields() {
+    }
+
+    /**
+     * reads a number with either '.' or ',' as decimal separator and returns it in fixed point units, rounded half
+     * up to the 4th decimal. Like NumberFormat.parse, the number ends at the first char that cannot belong to it and
+     * the rest of the field is ignored. A number above 100000 is too large; a negative number is returned negative
+     * whatever its size, so that it is rejected as a negative value, but its units are only exact down to -100000.
+     */
+    static long parseNumber(CharSequence chars, int start, int end) {
+        int i = start;
+        boolean negative = i < end && chars.charAt(i) == '-';
+        if (negative) {
+            i++;
+        }
+
+        long units = 0;
+        int fractionDigits = 0;
+        boolean roundUp = false;
+        boolean sawDigit = false;
+        boolean sawSeparator = false;
+        boolean tooLarge = false;
+        for (; i < end; i++) {
+            char c = chars.charAt(i);
+            if (c >= '0' && c <= '9') {
+                sawDigit = true;
+                if (!sawSeparator || fractionDigits < FixedPoint.DECIMALS) {
+                    // the units only grow from here on, so they stop growing far from overflowing
+                    if (units > MAX_UNITS) {
+                        tooLarge = true;
+                    } else {
+                        units = units * 10 + (c - '0');
+                    }
+                    if (sawSeparator) {
+                        fractionDigits++;
+                    }
+                } else if (fractionDigits == FixedPoint.DECIMALS) {
+                    // only the first dropped digit decides the rounding
+                    roundUp = c >= '5';
+                    fractionDigits++;
+                }
+            } else if ((c == '.' || c == ',') && !sawSeparator) {
+                sawSeparator = true;
+            } else {
+                break;
+            }
+        }
+
+        if (!sawDigit) {
+            throw new RefuelDataException(RefuelDataError.INVALID_NUMBER);
+        }
+
+        for (int digit = fractionDigits; digit < FixedPoint.DECIMALS; digit++) {
+            units *= 10;
+        }
+        if (roundUp) {
+            units++;
+        }
+        if ((tooLarge || units > MAX_UNITS) && !negative) {
+            throw new RefuelDataException(RefuelDataError.VALUE_TOO_LARGE);
+        }
+        return negative ? -units : units;
+    }
+
+    /**
+     * reads a dd.MM.yyyy date and returns its epoch day. Like LocalDate.parse, a day that does not exist in
+     * the month (e.g. 31.04) is moved to the last day of the month.
+     */
+    static int parseDate(CharSequence chars, int start, int end) {
+        if (end - start != 10
+                || chars.charAt(start + 2) != DATE_SEPARATOR
+                || chars.charAt(start + 5) != DATE_SEPARATOR) {
+            throw invalidDate();
+        }
+        return epochDayOf(parseDigits(chars, start + 6, 4), parseDigits(chars, start + 3, 2),
+                parseDigits(chars, start, 2));
+    }
+
+    /**
+     * reads a date in either the dd.MM.yyyy or the ISO yyyy-MM-dd format
+     */
+    static int parseAnyDate(CharSequence chars, int start, int end) {
+        if (end - start != 10 || chars.charAt(start + 4) != ISO_DATE_SEPARATOR) {
+            return parseDate(chars, start, end);
+        }
+        if (chars.charAt(start + 7) != ISO_DATE_SEPARATOR) {
+            throw invalidDate();
+        }
+        return epochDayOf(parseDigits(chars, start, 4), parseDigits(chars, start + 5, 2),
+                parseDigits(chars, start + 8, 2));
+    }
+
+    private static int epochDayOf(int year, int month, int day) {
+        if (day < 1 || day > 31 || month < 1 || month > 12 || year < 1) {
+            throw invalidDate();
+        }
+        return EpochDays.of(year, month, Math.min(day, EpochDays.lengthOfMonth(year, month)));
+    }
+
+    private static int parseDigits(CharSequence chars, int from, int count) {
+        int value = 0;
+        for (int i = from; i < from + count; i++) {
+            char c = chars.charAt(i);
+            if (c < '0' || c > '9') {
+                throw invalidDate();
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    private static RefuelDataException invalidDate() {
+        return new RefuelDataException(RefuelDataError.INVALID_DATE);
+    }
+}
@@ -0,0 +1,47 @@
+package com.refuel.business.parse;
+
+import com.refuel.model.RefuelColumns;
+
+/**
+ * A format of refuel data files. Its readers add the records of the lines straight to columnar batches
+ * (RefuelColumns: the fuel type ids, prices, amounts and days in primitive arrays), so loading and aggregating
+ * works the same whatever the format is.
+ * <p>
+ * Besides the built-in sources, sources can be added as service providers of this interface, i.e. listed in a
+ * META-INF/services/com.refuel.business.parse.RecordSource file on the class path; see RecordSources.
+ */
+public interface RecordSource {
+
+    /**
+     * short name of the format, e.g. "csv"
+     */
+    String getName();
+
+    /**
+     * whether the first line of a file describes the other lines instead of being a record
+     */
+    boolean hasHeader();
+
+    /**
+     * whether a file starting with the line is in this format, the line has no line break
+     */
+    boolean recognizes(CharSequence firstLine);
+
+    /**
+     * returns a reader of the lines after the header, which is null when the source has no header; throws
+     * RefuelDataException when the header does not fit the format
+     */
+    LineReader newReader(String header);
+
+    /**
+     * Reads the lines of one file. A reader may keep state between lines, so it must not be shared between threads.
+     */
+    interface LineReader {
+
+        /**
+         * adds the record of the chars between start (inclusive) and end (exclusive) to the records, or throws
+         * RefuelDataException without adding anything when the line is invalid
+         */
+        void read(CharSequence chars, int start, int end, RefuelColumns records);
+    }
+}
@@ -0,0 +1,75 @@
+package com.refuel.business.parse;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The record sources that data files can be read with: the RecordSource service providers on the class path,
+ * followed by the built-in JSON-lines, CSV and pipe sources. A data file is read by the first source that
+ * recognizes its first line, so a provider can also take over files of a built-in format.
+ */
+public final class RecordSources {
+
+    private static final Logger LOGGER = Logger.getLogger(RecordSources.class.getName());
+
+    private static final RecordSource PIPE = new PipeRecordSource();
+
+    private static final List<RecordSource> SOURCES = discover();
+
+    private RecordSources() {
+    }
+
+    public static List<RecordSource> all() {
+        return SOURCES;
+    }
+
+    /**
+     * returns the source that reads files starting with the line, the pipe source when no source recognizes it
+     */
+    public static RecordSource forFirstLine(CharSequence firstLine) {
+        for (RecordSource source : SOURCES) {
+            if (source.recognizes(firstLine)) {
+                return source;
+            }
+        }
+        return PIPE;
+    }
+
+    /**
+     * throws IllegalArgumentException when there is no source with the name
+     */
+    public static RecordSource named(String name) {
+        for (RecordSource source : SOURCES) {
+            if (source.getName().equals(name)) {
+                return source;
+            }
+        }
+        throw new IllegalArgumentException("Unknown input format: " + name);
+    }
+
+    private static List<RecordSource> discover() {
+        List<RecordSource> sources = new ArrayList<>();
+        Iterator<RecordSource> providers = ServiceLoader.load(RecordSource.class).iterator();
+        while (true) {
+            try {
+                if (!providers.hasNext()) {
+                    break;
+                }
+                sources.add(providers.next());
+            } catch (ServiceConfigurationError e) {
+                // a broken provider does not keep the other formats from being read
+                LOGGER.log(Level.WARNING, "Record source could not be loaded", e);
+            }
+        }
+        sources.add(new JsonLinesRecordSource());
+        sources.add(new CsvRecordSource());
+        sources.add(PIPE);
+        return Collections.unmodifiableList(sources);
+    }
+}
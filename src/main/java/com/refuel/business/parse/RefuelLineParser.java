@@ -0,0 +1,135 @@
+package com.refuel.business.parse;
+
+import com.refuel.business.exception.RefuelDataError;
+import com.refuel.business.exception.RefuelDataException;
+import com.refuel.model.FixedPoint;
+import com.refuel.model.RefuelInfo;
+
+import java.time.LocalDate;
+
+/**
+ * Parses lines of the fuelName|fuelPrice|fuelAmount|refuellingDate format in a single pass over their chars.
+ * <p>
+ * The fields of the last parsed line are kept in the parser, so an instance must not be shared between threads.
+ */
+public class RefuelLineParser {
+
+    private static final char COLUMN_SEPARATOR = '|';
+
+    private CharSequence line;
+    private int fuelNameStart;
+    private int fuelNameEnd;
+    private long fuelPrice;
+    private long fuelAmount;
+    private int epochDay;
+
+    // Position right after the column that was read last.
+    private int position;
+
+    /**
+     * creates RefuelInfo object from the line of string
+     */
+    public RefuelInfo parse(CharSequence line) {
+        parse(line, 0, line.length());
+        return toRefuelInfo();
+    }
+
+    /**
+     * parses the chars of the line between start (inclusive) and end (exclusive) without creating any object
+     */
+    public void parse(CharSequence line, int start, int end) {
+        this.line = line;
+
+        fuelNameStart = start;
+        fuelNameEnd = findColumnEnd(start, end);
+        position = nextColumnStart(fuelNameEnd, end);
+
+        fuelPrice = parseNumber(end);
+        fuelAmount = parseNumber(end);
+        epochDay = parseDate(end);
+
+        if (fuelPrice < 0 || fuelAmount < 0) {
+            throw new RefuelDataException(RefuelDataError.NEGATIVE_VALUE);
+        }
+    }
+
+    /**
+     * creates RefuelInfo object from the last parsed line
+     */
+    public RefuelInfo toRefuelInfo() {
+        return new RefuelInfo(getFuelName(), getFuelPrice(), getFuelAmount(), LocalDate.ofEpochDay(epochDay));
+    }
+
+    public String getFuelName() {
+        return line.subSequence(fuelNameStart, fuelNameEnd).toString();
+    }
+
+    public CharSequence getLine() {
+        return line;
+    }
+
+    public int getFuelNameStart() {
+        return fuelNameStart;
+    }
+
+    public int getFuelNameEnd() {
+        return fuelNameEnd;
+    }
+
+    public double getFuelPrice() {
+        return FixedPoint.toDouble(fuelPrice);
+    }
+
+    public double getFuelAmount() {
+        return FixedPoint.toDouble(fuelAmount);
+    }
+
+    /**
+     * returns the fuel price in fixed point units of FixedPoint.SCALE
+     */
+    public long getFuelPriceUnits() {
+        return fuelPrice;
+    }
+
+    /**
+     * returns the fuel amount in fixed point units of FixedPoint.SCALE
+     */
+    public long getFuelAmountUnits() {
+        return fuelAmount;
+    }
+
+    public int getEpochDay() {
+        return epochDay;
+    }
+
+    private int findColumnEnd(int from, int end) {
+        int i = from;
+        while (i < end && line.charAt(i) != COLUMN_SEPARATOR) {
+            i++;
+        }
+        return i;
+    }
+
+    private int nextColumnStart(int columnEnd, int end) {
+        if (columnEnd >= end) {
+            throw new RefuelDataException(RefuelDataError.WRONG_COLUMN_COUNT);
+        }
+        return columnEnd + 1;
+    }
+
+    private long parseNumber(int end) {
+        int columnStart = position;
+        int columnEnd = findColumnEnd(columnStart, end);
+        long units = RecordFields.parseNumber(line, columnStart, columnEnd);
+        position = nextColumnStart(columnEnd, end);
+        return units;
+    }
+
+    private int parseDate(int end) {
+        int columnStart = position;
+        int columnEnd = findColumnEnd(columnStart, end);
+        int day = RecordFields.parseDate(line, columnStart, columnEnd);
+        position = columnEnd;
+        return day;
+    }
+}
@@ -0,0 +1,298 @@
+package com.refuel.business.store;
+
+import com.refuel.business.RefuelConstants;
+import com.refuel.business.aggregate.RefuelChartData;
+import com.refuel.business.aggregate.RefuelingCube;
+import com.refuel.business.exception.RefuelDataException;
+import com.refuel.model.RefuelColumns;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Append-only store of refuel records in a directory, for a history longer than one data file.
+ * <p>
+ * Every append sorts the records by refuelling day and writes them into new segment files of at most
+ * MAX_SEGMENT_ROWS records; segments are never changed afterwards. Only the headers of the segments are kept in
+ * memory, ordered by their first day. A query for a date range finds the segments that overlap it with two binary
+ * searches and reads from each of them only the index intervals that hold the range, so a few months of a decade
+ * of history are read without going over the rest.
+ * <p>
+ * The records of a data file are appended with appendFrom, which remembers in SOURCES_FILE how many records were
+ * taken from the file and a hash of them. A data file given again only adds the records after those, and the
+ * records of different data files are never compared, so two vehicles with the same refuelings are both stored.
+ */
+public class RefuelStore {
+
+    public static final String SEGMENT_SUFFIX = ".refuel-segment";
+
+    // Data files appended with appendFrom, one "recordCount TAB recordsHash TAB path" per line.
+    public static final String SOURCES_FILE = "sources.tsv";
+
+    private static final long HASH_MULTIPLIER = 0x9E3779B97F4A7C15L;
+
+    static final int MAX_SEGMENT_ROWS = 1024 * 1024;
+
+    private final File directory;
+    private final int maxSegmentRows;
+
+    // Ordered by their first day.
+    private final List<StoreSegment> segments = new ArrayList<>();
+    // The latest last day of the segments up to each index, which grows with the index unlike the last days.
+    private int[] latestLastDays = new int[0];
+    private int nextSegmentNumber;
+    // The records taken from each data file by its canonical path, in the order the files were first appended.
+    private final Map<String, StoredSource> sources = new LinkedHashMap<>();
+
+    private RefuelStore(File directory, int maxSegmentRows) {
+        this.directory = directory;
+        this.maxSegmentRows = maxSegmentRows;
+    }
+
+    /**
+     * opens the store in the directory, which is created if it does not exist
+     */
+    public static RefuelStore open(File directory) throws IOException {
+        return open(directory, MAX_SEGMENT_ROWS);
+    }
+
+    static RefuelStore open(File directory, int maxSegmentRows) throws IOException {
+        Files.createDirectories(directory.toPath());
+        RefuelStore store = new RefuelStore(directory, maxSegmentRows);
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(SEGMENT_SUFFIX));
+        if (files == null) {
+            throw new IOException("Store directory cannot be listed: " + directory);
+        }
+        for (File file : files) {
+            store.segments.add(StoreSegment.open(file));
+            store.nextSegmentNumber = Math.max(store.nextSegmentNumber, segmentNumberOf(file) + 1);
+        }
+        store.sortSegments();
+        store.readSources();
+        return store;
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    public synchronized int getSegmentCount() {
+        return segments.size();
+    }
+
+    public synchronized long size() {
+        long size = 0;
+        for (StoreSegment segment : segments) {
+            size += segment.getRowCount();
+        }
+        return size;
+    }
+
+    /**
+     * writes the records into new segments sorted by refuelling day; records appended before are kept, so
+     * appending the same records again stores them twice
+     */
+    public synchronized void append(RefuelColumns columns) throws IOException {
+        append(columns, 0, columns.size());
+    }
+
+    /**
+     * Appends the records of the data file that were not taken from it before, and returns the number of those that
+     * were. All records of a data file are stored, also the ones that repeat each other; dropping them is up to the
+     * loading of the file. Throws RefuelDataException when the records taken before are no longer the first
+     * records of the file, since the store cannot take them back.
+     */
+    public synchronized int appendFrom(File dataFile, RefuelColumns columns) throws IOException {
+        String path = dataFile.getCanonicalPath();
+        StoredSource stored = sources.getOrDefault(path, StoredSource.NONE);
+        if (stored.recordCount > columns.size()
+                || recordsHash(0, columns, 0, stored.recordCount) != stored.recordsHash) {
+            throw new RefuelDataException("Data file was changed since it was stored, only appended lines can be"
+                    + " stored");
+        }
+        if (stored.recordCount == columns.size()) {
+            return stored.recordCount;
+        }
+        append(columns, stored.recordCount, columns.size());
+        sources.put(path, new StoredSource(columns.size(),
+                recordsHash(stored.recordsHash, columns, stored.recordCount, columns.size())));
+        writeSources();
+        return stored.recordCount;
+    }
+
+    private void append(RefuelColumns columns, int fromRow, int toRow) throws IOException {
+        if (fromRow == toRow) {
+            return;
+        }
+        // day and row in one key, so the rows of a day keep their order
+        long[] keys = new long[toRow - fromRow];
+        for (int i = 0; i < keys.length; i++) {
+            int row = fromRow + i;
+            keys[i] = (long) columns.getRefuellingDay(row) << 32 | row;
+        }
+        Arrays.sort(keys);
+        int[] sortedRows = new int[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            sortedRows[i] = (int) keys[i];
+        }
+
+        for (int from = 0; from < sortedRows.length; from += maxSegmentRows) {
+            File file = new File(directory, String.format("%08d", nextSegmentNumber) + SEGMENT_SUFFIX);
+            segments.add(StoreSegment.write(file, columns, sortedRows, from,
+                    Math.min(sortedRows.length, from + maxSegmentRows)));
+            nextSegmentNumber++;
+        }
+        sortSegments();
+    }
+
+    /**
+     * returns the records between fromDay and toDay (both inclusive, epoch days) of the fuel type, or of all of
+     * them when fuelType is null or "all", ordered by day within each segment
+     */
+    public synchronized RefuelColumns read(int fromDay, int toDay, String fuelType) throws IOException {
+        String onlyFuelType = RefuelConstants.FUEL_TYPE_ALL.equals(fuelType) ? null : fuelType;
+        RefuelColumns columns = new RefuelColumns();
+        for (StoreSegment segment : segmentsBetween(fromDay, toDay)) {
+            segment.readInto(columns, fromDay, toDay, onlyFuelType);
+        }
+        return columns;
+    }
+
+    /**
+     * returns the statistics of the records between fromDay and toDay (both inclusive), e.g. to draw the chart or
+     * to report the spending of a date range
+     */
+    public RefuelChartData chartData(int fromDay, int toDay) throws IOException {
+        return RefuelingCube.of(read(fromDay, toDay, null)).snapshot();
+    }
+
+    /**
+     * returns the segments that have records between fromDay and toDay
+     */
+    List<StoreSegment> segmentsBetween(int fromDay, int toDay) {
+        // the segments from the first one whose records reach up to fromDay
+        int low = 0;
+        int high = segments.size();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (latestLastDays[middle] < fromDay) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        int first = low;
+        // up to the last one that starts on or before toDay
+        high = segments.size();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (segments.get(middle).getFirstDay() <= toDay) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+
+        List<StoreSegment> overlapping = new ArrayList<>();
+        for (StoreSegment segment : segments.subList(first, low)) {
+            // segments appended out of order may end before fromDay although a segment before them does not
+            if (segment.getLastDay() >= fromDay) {
+                overlapping.add(segment);
+            }
+        }
+        return overlapping;
+    }
+
+    private void sortSegments() {
+        segments.sort(Comparator.comparingInt(StoreSegment::getFirstDay));
+        latestLastDays = new int[segments.size()];
+        for (int i = 0; i < latestLastDays.length; i++) {
+            latestLastDays[i] = i == 0 ? segments.get(i).getLastDay()
+                    : Math.max(latestLastDays[i - 1], segments.get(i).getLastDay());
+        }
+    }
+
+    /**
+     * returns the hash of the records between fromRow (inclusive) and toRow (exclusive) following the records of
+     * the given hash
+     */
+    private static long recordsHash(long hash, RefuelColumns columns, int fromRow, int toRow) {
+        for (int row = fromRow; row < toRow; row++) {
+            hash = hash * HASH_MULTIPLIER + columns.getFuelName(row).hashCode();
+            hash = hash * HASH_MULTIPLIER + columns.getFuelPriceUnits(row);
+            hash = hash * HASH_MULTIPLIER + columns.getFuelAmountUnits(row);
+            hash = hash * HASH_MULTIPLIER + columns.getRefuellingDay(row);
+        }
+        return hash;
+    }
+
+    private void readSources() throws IOException {
+        Path path = new File(directory, SOURCES_FILE).toPath();
+        if (!Files.isRegularFile(path)) {
+            return;
+        }
+        for (String line : Files.readAllLines(path, StandardCharsets.UTF_8)) {
+            String[] fields = line.split("\t", 3);
+            try {
+                sources.put(fields[2], new StoredSource(Integer.parseInt(fields[0]), Long.parseLong(fields[1])));
+            } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+                throw new IOException("Invalid line in " + path + ": " + line);
+            }
+        }
+    }
+
+    /**
+     * replaces the sources file only when it is complete; the segments are written before, so a failure in
+     * between stores the new records of a data file again on its next append
+     */
+    private void writeSources() throws IOException {
+        List<String> lines = new ArrayList<>(sources.size());
+        for (Map.Entry<String, StoredSource> entry : sources.entrySet()) {
+            lines.add(entry.getValue().recordCount + "\t" + entry.getValue().recordsHash + "\t" + entry.getKey());
+        }
+        Path path = new File(directory, SOURCES_FILE).toPath();
+        Path partPath = path.resolveSibling(path.getFileName() + ".part");
+        Files.write(partPath, lines, StandardCharsets.UTF_8);
+        try {
+            Files.move(partPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(partPath, path, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static int segmentNumberOf(File file) throws IOException {
+        String name = file.getName();
+        try {
+            return Integer.parseInt(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            throw new IOException("Invalid segment file name: " + file);
+        }
+    }
+
+    /**
+     * The records taken from a data file: how many, and the hash of them in their order.
+     */
+    private static class StoredSource {
+
+        private static final StoredSource NONE = new StoredSource(0, 0);
+
+        private final int recordCount;
+        private final long recordsHash;
+
+        StoredSource(int recordCount, long recordsHash) {
+            this.recordCount = recordCount;
+            this.recordsHash = recordsHash;
+        }
+    }
+}
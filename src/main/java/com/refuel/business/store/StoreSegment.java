@@ -0,0 +1,296 @@
+package com.refuel.business.store;
+
+import com.refuel.model.RefuelColumns;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A segment file of the store: records sorted by refuelling day, written once and never changed.
+ * <p>
+ * The header holds the fuel names, the first and last day and a sparse index with the day of every
+ * INDEX_INTERVAL-th record. The records follow one after the other with a fixed length, so the records of a date
+ * range are found by a binary search in the index and read with one sequential scan, without reading the records
+ * before or after the range. Only the header is kept in memory.
+ */
+class StoreSegment {
+
+    // Records between two entries of the sparse index.
+    static final int INDEX_INTERVAL = 1024;
+
+    // Changed whenever the layout of the file changes.
+    static final int VERSION = 1;
+
+    private static final int MAGIC = 0x52465347;
+    private static final int PREFIX_LENGTH = 12;
+    private static final int BYTES_PER_ROW = 2 * Long.BYTES + 2 * Integer.BYTES;
+    private static final int ROWS_PER_BUFFER = 8192;
+
+    private final File file;
+    private final List<String> fuelNames;
+    private final int rowCount;
+    private final int lastDay;
+    // The day of every INDEX_INTERVAL-th record, starting with the first one.
+    private final int[] indexDays;
+    private final long rowsStart;
+
+    private StoreSegment(File file, List<String> fuelNames, int rowCount, int lastDay, int[] indexDays,
+                         long rowsStart) {
+        this.file = file;
+        this.fuelNames = Collections.unmodifiableList(fuelNames);
+        this.rowCount = rowCount;
+        this.lastDay = lastDay;
+        this.indexDays = indexDays;
+        this.rowsStart = rowsStart;
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    int getRowCount() {
+        return rowCount;
+    }
+
+    int getFirstDay() {
+        return indexDays[0];
+    }
+
+    int getLastDay() {
+        return lastDay;
+    }
+
+    /**
+     * writes the rows of the columns in the given order, which must be sorted by refuelling day, between from
+     * (inclusive) and to (exclusive); the file is only there once it is complete
+     */
+    static StoreSegment write(File file, RefuelColumns columns, int[] sortedRows, int from, int to)
+            throws IOException {
+        if (from >= to) {
+            throw new IllegalArgumentException("A segment cannot be empty");
+        }
+        int rowCount = to - from;
+
+        // segment ids in the order the fuel types first appear in the segment
+        int[] segmentIds = new int[columns.getFuelTypes().size()];
+        List<String> fuelNames = new ArrayList<>();
+        for (int i = from; i < to; i++) {
+            int fuelTypeId = columns.getFuelTypeId(sortedRows[i]);
+            if (segmentIds[fuelTypeId] == 0) {
+                fuelNames.add(columns.getFuelTypes().nameOf(fuelTypeId));
+                segmentIds[fuelTypeId] = fuelNames.size();
+            }
+        }
+        int[] indexDays = new int[(rowCount + INDEX_INTERVAL - 1) / INDEX_INTERVAL];
+        for (int entry = 0; entry < indexDays.length; entry++) {
+            indexDays[entry] = columns.getRefuellingDay(sortedRows[from + entry * INDEX_INTERVAL]);
+        }
+        int lastDay = columns.getRefuellingDay(sortedRows[to - 1]);
+
+        ByteArrayOutputStream headerBytes = new ByteArrayOutputStream();
+        DataOutputStream header = new DataOutputStream(headerBytes);
+        header.writeInt(fuelNames.size());
+        for (String fuelName : fuelNames) {
+            header.writeUTF(fuelName);
+        }
+        header.writeInt(rowCount);
+        header.writeInt(lastDay);
+        for (int indexDay : indexDays) {
+            header.writeInt(indexDay);
+        }
+        header.flush();
+        long rowsStart = PREFIX_LENGTH + headerBytes.size();
+
+        Path path = file.toPath();
+        Path partPath = path.resolveSibling(path.getFileName() + ".part");
+        try (FileChannel channel = FileChannel.open(partPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer prefix = ByteBuffer.allocate(PREFIX_LENGTH);
+            prefix.putInt(MAGIC).putInt(VERSION).putInt(headerBytes.size()).flip();
+            writeFully(channel, prefix);
+            writeFully(channel, ByteBuffer.wrap(headerBytes.toByteArray()));
+
+            ByteBuffer buffer = ByteBuffer.allocate(ROWS_PER_BUFFER * BYTES_PER_ROW);
+            for (int i = from; i < to; i++) {
+                if (!buffer.hasRemaining()) {
+                    buffer.flip();
+                    writeFully(channel, buffer);
+                    buffer.clear();
+                }
+                int row = sortedRows[i];
+                buffer.putLong(columns.getFuelPriceUnits(row));
+                buffer.putLong(columns.getFuelAmountUnits(row));
+                buffer.putInt(segmentIds[columns.getFuelTypeId(row)] - 1);
+                buffer.putInt(columns.getRefuellingDay(row));
+            }
+            buffer.flip();
+            writeFully(channel, buffer);
+            channel.force(true);
+        }
+        try {
+            Files.move(partPath, path, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(partPath, path);
+        }
+
+        return new StoreSegment(file, fuelNames, rowCount, lastDay, indexDays, rowsStart);
+    }
+
+    /**
+     * reads the header of a segment file
+     */
+    static StoreSegment open(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer prefix = ByteBuffer.allocate(PREFIX_LENGTH);
+            if (!readFully(channel, prefix, 0)) {
+                throw new IOException("Segment file is truncated: " + file);
+            }
+            prefix.flip();
+            if (prefix.getInt() != MAGIC || prefix.getInt() != VERSION) {
+                throw new IOException("Not a segment file of version " + VERSION + ": " + file);
+            }
+            int headerLength = prefix.getInt();
+            if (headerLength <= 0 || headerLength > channel.size() - PREFIX_LENGTH) {
+                throw new IOException("Segment file is truncated: " + file);
+            }
+            ByteBuffer headerBytes = ByteBuffer.allocate(headerLength);
+            if (!readFully(channel, headerBytes, PREFIX_LENGTH)) {
+                throw new IOException("Segment file is truncated: " + file);
+            }
+            DataInputStream header = new DataInputStream(new ByteArrayInputStream(headerBytes.array()));
+
+            int fuelTypeCount = header.readInt();
+            List<String> fuelNames = new ArrayList<>(fuelTypeCount);
+            for (int id = 0; id < fuelTypeCount; id++) {
+                fuelNames.add(header.readUTF());
+            }
+            int rowCount = header.readInt();
+            int lastDay = header.readInt();
+            long rowsStart = PREFIX_LENGTH + headerLength;
+            if (rowCount <= 0 || channel.size() != rowsStart + (long) rowCount * BYTES_PER_ROW) {
+                throw new IOException("Segment file is truncated: " + file);
+            }
+            int[] indexDays = new int[(rowCount + INDEX_INTERVAL - 1) / INDEX_INTERVAL];
+            for (int entry = 0; entry < indexDays.length; entry++) {
+                indexDays[entry] = header.readInt();
+            }
+
+            return new StoreSegment(file, fuelNames, rowCount, lastDay, indexDays, rowsStart);
+        }
+    }
+
+    /**
+     * adds the records between fromDay and toDay (both inclusive) to the columns, only the ones of the fuel type
+     * unless it is null; returns the number of records read from the file
+     */
+    int readInto(RefuelColumns columns, int fromDay, int toDay, String fuelType) throws IOException {
+        int onlyFuelTypeId = fuelType == null ? -1 : fuelNames.indexOf(fuelType);
+        if (fromDay > getLastDay() || toDay < getFirstDay() || (fuelType != null && onlyFuelTypeId < 0)) {
+            return 0;
+        }
+        int[] columnIds = new int[fuelNames.size()];
+        for (int id = 0; id < columnIds.length; id++) {
+            columnIds[id] = columns.getFuelTypes().intern(fuelNames.get(id));
+        }
+
+        int fromRow = firstRowFrom(fromDay);
+        int toRow = endRowTo(toDay);
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(Math.min(ROWS_PER_BUFFER, toRow - fromRow) * BYTES_PER_ROW);
+            for (int row = fromRow; row < toRow; ) {
+                int rows = Math.min(ROWS_PER_BUFFER, toRow - row);
+                buffer.clear();
+                buffer.limit(rows * BYTES_PER_ROW);
+                if (!readFully(channel, buffer, rowsStart + (long) row * BYTES_PER_ROW)) {
+                    throw new IOException("Segment file is truncated: " + file);
+                }
+                buffer.flip();
+                for (int i = 0; i < rows; i++) {
+                    long price = buffer.getLong();
+                    long amount = buffer.getLong();
+                    int fuelTypeId = buffer.getInt();
+                    int day = buffer.getInt();
+                    if (fuelTypeId < 0 || fuelTypeId >= columnIds.length) {
+                        throw new IOException("Invalid fuel type id in segment " + file + ": " + fuelTypeId);
+                    }
+                    if (day >= fromDay && day <= toDay && (onlyFuelTypeId < 0 || fuelTypeId == onlyFuelTypeId)) {
+                        columns.add(columnIds[fuelTypeId], price, amount, day);
+                    }
+                }
+                row += rows;
+            }
+        }
+        return toRow - fromRow;
+    }
+
+    /**
+     * returns the first row of the index interval that holds the first record on or after the day
+     */
+    int firstRowFrom(int fromDay) {
+        // the last index entry before the day, the records of the day start in its interval at the earliest
+        int low = 0;
+        int high = indexDays.length - 1;
+        int entry = -1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (indexDays[middle] < fromDay) {
+                entry = middle;
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return entry < 0 ? 0 : entry * INDEX_INTERVAL;
+    }
+
+    /**
+     * returns the end of the index interval that holds the last record on or before the day
+     */
+    int endRowTo(int toDay) {
+        // the first index entry after the day, its interval and the following ones have later records only
+        int low = 0;
+        int high = indexDays.length - 1;
+        int entry = indexDays.length;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (indexDays[middle] > toDay) {
+                entry = middle;
+                high = middle - 1;
+            } else {
+                low = middle + 1;
+            }
+        }
+        return Math.min(rowCount, entry * INDEX_INTERVAL);
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static boolean readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                return false;
+            }
+            position += read;
+        }
+        return true;
+    }
+}
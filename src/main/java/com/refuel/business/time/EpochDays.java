@@ -0,0 +1,96 @@
+package com.refuel.business.time;
+
+/**
+ * Calendar calculations on epoch days (days since 01.01.1970) that give the same results as LocalDate, without
+ * creating LocalDate objects in loops over millions of records.
+ */
+public final class EpochDays {
+
+    private static final int DAYS_PER_CYCLE = 146097;
+    private static final long DAYS_0000_TO_1970 = (DAYS_PER_CYCLE * 5L) - (30L * 365L + 7L);
+
+    private EpochDays() {
+    }
+
+    public static boolean isLeapYear(long year) {
+        return (year & 3) == 0 && (year % 100 != 0 || year % 400 == 0);
+    }
+
+    public static int lengthOfMonth(int year, int month) {
+        switch (month) {
+            case 2:
+                return isLeapYear(year) ? 29 : 28;
+            case 4:
+            case 6:
+            case 9:
+            case 11:
+                return 30;
+            default:
+                return 31;
+        }
+    }
+
+    /**
+     * same calculation as LocalDate.of(year, month, day).toEpochDay() for a valid date
+     */
+    public static int of(int year, int month, int day) {
+        long y = year;
+        long total = 365 * y;
+        if (y >= 0) {
+            total += (y + 3) / 4 - (y + 99) / 100 + (y + 399) / 400;
+        } else {
+            total -= y / -4 - y / -100 + y / -400;
+        }
+        total += (367 * month - 362) / 12;
+        total += day - 1;
+        if (month > 2) {
+            total--;
+            if (!isLeapYear(y)) {
+                total--;
+            }
+        }
+        return (int) (total - DAYS_0000_TO_1970);
+    }
+
+    public static int year(int epochDay) {
+        return (int) (civil(epochDay) >> 9);
+    }
+
+    public static int monthOfYear(int epochDay) {
+        return (int) (civil(epochDay) >> 5) & 0xF;
+    }
+
+    public static int dayOfMonth(int epochDay) {
+        return (int) civil(epochDay) & 0x1F;
+    }
+
+    /**
+     * same calculation as LocalDate.ofEpochDay, packing the year, month and day into one long
+     */
+    private static long civil(int epochDay) {
+        long zeroDay = epochDay + DAYS_0000_TO_1970;
+        // adjust to 0000-03-01 so that the leap day is at the end of the four year cycle
+        zeroDay -= 60;
+        long adjust = 0;
+        if (zeroDay < 0) {
+            long adjustCycles = (zeroDay + 1) / DAYS_PER_CYCLE - 1;
+            adjust = adjustCycles * 400;
+            zeroDay += -adjustCycles * DAYS_PER_CYCLE;
+        }
+        long yearEst = (400 * zeroDay + 591) / DAYS_PER_CYCLE;
+        long doyEst = zeroDay - (365 * yearEst + yearEst / 4 - yearEst / 100 + yearEst / 400);
+        if (doyEst < 0) {
+            yearEst--;
+            doyEst = zeroDay - (365 * yearEst + yearEst / 4 - yearEst / 100 + yearEst / 400);
+        }
+        yearEst += adjust;
+        int marchDoy0 = (int) doyEst;
+
+        int marchMonth0 = (marchDoy0 * 5 + 2) / 153;
+        int month = (marchMonth0 + 2) % 12 + 1;
+        int dayOfMonth = marchDoy0 - (marchMonth0 * 306 + 5) / 10 + 1;
+        yearEst += marchMonth0 / 10;
+
+        return (yearEst << 9) | (month << 5) | dayOfMonth;
+    }
+}
@@ -0,0 +1,277 @@
+package com.refuel.business.time;
+
+import java.time.Month;
+
+/**
+ * Sizes of the time buckets that refuelings are grouped into.
+ * <p>
+ * A bucket is identified by an int key that increases with time, so consecutive buckets have consecutive keys. The
+ * buckets are shown in pages: the days of a month, the ISO weeks, months or quarters of a year, or all years.
+ */
+public enum Granularity {
+
+    DAY("Days") {
+        @Override
+        public int bucketOf(int epochDay) {
+            return epochDay;
+        }
+
+        @Override
+        public int pageOf(int bucket) {
+            return EpochDays.year(bucket) * 12 + EpochDays.monthOfYear(bucket) - 1;
+        }
+
+        @Override
+        public int firstBucketOfPage(int page) {
+            return EpochDays.of(page / 12, page % 12 + 1, 1);
+        }
+
+        @Override
+        public int lastBucketOfPage(int page) {
+            return firstBucketOfPage(page) + EpochDays.lengthOfMonth(page / 12, page % 12 + 1) - 1;
+        }
+
+        @Override
+        public String labelOf(int bucket) {
+            return String.valueOf(EpochDays.dayOfMonth(bucket));
+        }
+
+        @Override
+        public String pageTitleOf(int page) {
+            return Month.of(page % 12 + 1) + " " + page / 12;
+        }
+
+        @Override
+        public String periodOf(int bucket) {
+            return EpochDays.year(bucket) + "-" + twoDigits(EpochDays.monthOfYear(bucket)) + "-"
+                    + twoDigits(EpochDays.dayOfMonth(bucket));
+        }
+    },
+
+    WEEK("Weeks") {
+        // 01.01.1970 is a Thursday, so the week with key 0 starts on Monday 29.12.1969
+        private static final int DAYS_FROM_MONDAY_TO_EPOCH = 3;
+
+        @Override
+        public int bucketOf(int epochDay) {
+            return Math.floorDiv(epochDay + DAYS_FROM_MONDAY_TO_EPOCH, 7);
+        }
+
+        @Override
+        public int firstDayOf(int bucket) {
+            return bucket * 7 - DAYS_FROM_MONDAY_TO_EPOCH;
+        }
+
+        /**
+         * the page is the ISO week based year, which is the year of the Thursday of the week
+         */
+        @Override
+        public int pageOf(int bucket) {
+            return EpochDays.year(firstDayOf(bucket) + 3);
+        }
+
+        @Override
+        public int firstBucketOfPage(int page) {
+            return bucketOf(EpochDays.of(page, 1, 4));
+        }
+
+        @Override
+        public int lastBucketOfPage(int page) {
+            return bucketOf(EpochDays.of(page, 12, 28));
+        }
+
+        @Override
+        public String labelOf(int bucket) {
+            int week = bucket - firstBucketOfPage(pageOf(bucket)) + 1;
+            return "W" + twoDigits(week);
+        }
+
+        @Override
+        public String periodOf(int bucket) {
+            return pageOf(bucket) + "-" + labelOf(bucket);
+        }
+    },
+
+    MONTH("Months") {
+        @Override
+        public int bucketOf(int epochDay) {
+            return EpochDays.year(epochDay) * 12 + EpochDays.monthOfYear(epochDay) - 1;
+        }
+
+        @Override
+        public int firstDayOf(int bucket) {
+            return EpochDays.of(bucket / 12, bucket % 12 + 1, 1);
+        }
+
+        @Override
+        public int pageOf(int bucket) {
+            return bucket / 12;
+        }
+
+        @Override
+        public int firstBucketOfPage(int page) {
+            return page * 12;
+        }
+
+        @Override
+        public int lastBucketOfPage(int page) {
+            return page * 12 + 11;
+        }
+
+        @Override
+        public String labelOf(int bucket) {
+            return Month.of(bucket % 12 + 1).toString();
+        }
+
+        @Override
+        public String periodOf(int bucket) {
+            return bucket / 12 + "-" + twoDigits(bucket % 12 + 1);
+        }
+    },
+
+    QUARTER("Quarters") {
+        @Override
+        public int bucketOf(int epochDay) {
+            return EpochDays.year(epochDay) * 4 + (EpochDays.monthOfYear(epochDay) - 1) / 3;
+        }
+
+        @Override
+        public int firstDayOf(int bucket) {
+            return EpochDays.of(bucket / 4, bucket % 4 * 3 + 1, 1);
+        }
+
+        @Override
+        public int pageOf(int bucket) {
+            return bucket / 4;
+        }
+
+        @Override
+        public int firstBucketOfPage(int page) {
+            return page * 4;
+        }
+
+        @Override
+        public int lastBucketOfPage(int page) {
+            return page * 4 + 3;
+        }
+
+        @Override
+        public String labelOf(int bucket) {
+            return "Q" + (bucket % 4 + 1);
+        }
+
+        @Override
+        public String periodOf(int bucket) {
+            return bucket / 4 + "-" + labelOf(bucket);
+        }
+    },
+
+    /**
+     * all years are in one page; the chart shows only its buckets from the first to the last year with refuelings
+     */
+    YEAR("Years") {
+        // the years of the four digit dates of the data files
+        private static final int FIRST_YEAR = 1;
+        private static final int LAST_YEAR = 9999;
+
+        @Override
+        public int bucketOf(int epochDay) {
+            return EpochDays.year(epochDay);
+        }
+
+        @Override
+        public int firstDayOf(int bucket) {
+            return EpochDays.of(bucket, 1, 1);
+        }
+
+        @Override
+        public int pageOf(int bucket) {
+            return 0;
+        }
+
+        @Override
+        public int firstBucketOfPage(int page) {
+            return FIRST_YEAR;
+        }
+
+        @Override
+        public int lastBucketOfPage(int page) {
+            return LAST_YEAR;
+        }
+
+        @Override
+        public String labelOf(int bucket) {
+            return String.valueOf(bucket);
+        }
+
+        @Override
+        public String pageTitleOf(int page) {
+            return "All Years";
+        }
+
+        @Override
+        public String periodOf(int bucket) {
+            return String.valueOf(bucket);
+        }
+
+        @Override
+        public boolean isPaged() {
+            return false;
+        }
+    };
+
+    private final String displayName;
+
+    Granularity(String displayName) {
+        this.displayName = displayName;
+    }
+
+    public String getDisplayName() {
+        return displayName;
+    }
+
+    public abstract int bucketOf(int epochDay);
+
+    /**
+     * returns the epoch day the bucket starts with
+     */
+    public int firstDayOf(int bucket) {
+        return bucket;
+    }
+
+    public abstract int pageOf(int bucket);
+
+    public abstract int firstBucketOfPage(int page);
+
+    public abstract int lastBucketOfPage(int page);
+
+    /**
+     * returns the name of the bucket within its page, e.g. the month name or the week number
+     */
+    public abstract String labelOf(int bucket);
+
+    /**
+     * returns the name of the bucket on its own, e.g. 2016-01 for a month or 2016-W05 for a week
+     */
+    public abstract String periodOf(int bucket);
+
+    public String pageTitleOf(int page) {
+        return String.valueOf(page);
+    }
+
+    /**
+     * returns whether the buckets are split into more than one page, which the page buttons move between
+     */
+    public boolean isPaged() {
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return displayName;
+    }
+
+    private static String twoDigits(int value) {
+        return value < 10 ? "0" + value : String.valueOf(value);
+    }
+}
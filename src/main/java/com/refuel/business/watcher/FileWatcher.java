@@ -1,82 +1,169 @@
 package com.refuel.business.watcher;
 
-import com.refuel.view.RefuelController;
-import javafx.application.Platform;
+import com.refuel.business.metrics.RefuelMetrics;
 
 import java.io.File;
+import java.io.IOException;
 import java.nio.file.*;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.function.Consumer;
 
 /**
  * Created by egucer on 03-Feb-19.
+ * <p>
+ * Watches any number of files with one watch service and one thread: every directory is registered once and its
+ * events are routed to the handlers of the files in it. The thread blocks until a change is reported, so an idle
+ * watcher uses no CPU, and ends when the watch service is closed by stopThread or when it is interrupted.
+ * <p>
+ * Changes of a file are handled once it stayed unchanged for the quiet period, so a burst of modify events
+ * causes a single reload.
  */
 public class FileWatcher extends Thread {
-    private final File file;
-    private AtomicBoolean stop = new AtomicBoolean(false);
-    private RefuelController refuelController;
+    private final WatchService watcher;
+    private final long quietPeriodMillis;
 
-    public FileWatcher(File file, RefuelController refuelController) {
-        this.file = file;
-        this.refuelController = refuelController;
+    // Runs the change handlers, e.g. on the JavaFX application thread.
+    private final Executor handlerExecutor;
+
+    // Shared by the reload schedulers of all watched files.
+    private final ScheduledExecutorService reloadExecutor;
+
+    // Registered directories and the reload schedulers of their watched files by file name.
+    private final Map<Path, WatchKey> directoryKeys = new HashMap<>();
+    private final Map<Path, Map<Path, ReloadScheduler>> watchedFiles = new HashMap<>();
+
+    public FileWatcher(long quietPeriodMillis, Executor handlerExecutor) throws IOException {
+        super("refuel-file-watcher");
+        this.quietPeriodMillis = quietPeriodMillis;
+        this.handlerExecutor = handlerExecutor;
+        this.watcher = FileSystems.getDefault().newWatchService();
+        this.reloadExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "refuel-reload-scheduler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        setDaemon(true);
+    }
+
+    /**
+     * starts watching the file, onChange is run by the handler executor after the file changed
+     */
+    public synchronized void watch(File file, Consumer<File> onChange) throws IOException {
+        Path path = file.toPath().toAbsolutePath();
+        Path directory = path.getParent();
+        if (!directoryKeys.containsKey(directory)) {
+            directoryKeys.put(directory, directory.register(watcher, StandardWatchEventKinds.ENTRY_MODIFY));
+        }
+
+        ReloadScheduler reloadScheduler = new ReloadScheduler(reloadExecutor, quietPeriodMillis,
+                superseded -> handlerExecutor.execute(() -> {
+                    if (!superseded.getAsBoolean()) {
+                        onChange.accept(file);
+                    }
+                }));
+        ReloadScheduler previous = watchedFiles.computeIfAbsent(directory, dir -> new HashMap<>())
+                .put(path.getFileName(), reloadScheduler);
+        if (previous != null) {
+            previous.cancel();
+        }
+    }
+
+    /**
+     * stops watching the file, its directory is no longer watched when it has no other watched files
+     */
+    public synchronized void unwatch(File file) {
+        Path path = file.toPath().toAbsolutePath();
+        Path directory = path.getParent();
+        Map<Path, ReloadScheduler> files = watchedFiles.get(directory);
+        if (files == null) {
+            return;
+        }
+
+        ReloadScheduler reloadScheduler = files.remove(path.getFileName());
+        if (reloadScheduler != null) {
+            reloadScheduler.cancel();
+        }
+        if (files.isEmpty()) {
+            watchedFiles.remove(directory);
+            directoryKeys.remove(directory).cancel();
+        }
     }
 
-    public boolean isStopped() {
-        return stop.get();
+    public synchronized void unwatchAll() {
+        for (Map<Path, ReloadScheduler> files : watchedFiles.values()) {
+            for (ReloadScheduler reloadScheduler : files.values()) {
+                reloadScheduler.cancel();
+            }
+        }
+        watchedFiles.clear();
+        for (WatchKey key : directoryKeys.values()) {
+            key.cancel();
+        }
+        directoryKeys.clear();
     }
 
     public void stopThread() {
-        stop.set(true);
+        reloadExecutor.shutdownNow();
+        try {
+            watcher.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        interrupt();
     }
 
-    public void doOnChange() {
-        Platform.runLater(new Runnable(){
-            @Override public void run() {
-                refuelController.applyFileToGraph(file);
+    private synchronized void doOnChange(Path directory, Path fileName) {
+        Map<Path, ReloadScheduler> files = watchedFiles.get(directory);
+        if (files == null) {
+            return;
+        }
+        if (fileName == null) {
+            // events were lost, any file of the directory may have changed
+            for (Map.Entry<Path, ReloadScheduler> file : files.entrySet()) {
+                RefuelMetrics.get().fileChanged(directory.resolve(file.getKey()).toFile());
+                file.getValue().requestReload();
             }
-        });
+        } else if (files.containsKey(fileName)) {
+            RefuelMetrics.get().fileChanged(directory.resolve(fileName).toFile());
+            files.get(fileName).requestReload();
+        }
     }
 
     @Override
     public void run() {
-        try (WatchService watcher = FileSystems.getDefault().newWatchService()) {
-            Path path = file.toPath().getParent();
-            path.register(watcher, StandardWatchEventKinds.ENTRY_MODIFY);
-            while (!isStopped()) {
-                WatchKey key;
-                try {
-                    key = watcher.poll(25, TimeUnit.MILLISECONDS);
-                } catch (InterruptedException e) {
-                    return;
-                }
-                if (key == null) {
-                    Thread.yield();
-                    continue;
-                }
+        try {
+            while (true) {
+                WatchKey key = watcher.take();
+                Path directory = (Path) key.watchable();
 
                 for (WatchEvent<?> event : key.pollEvents()) {
                     WatchEvent.Kind<?> kind = event.kind();
 
-                    @SuppressWarnings("unchecked")
-                    WatchEvent<Path> ev = (WatchEvent<Path>) event;
-                    Path filename = ev.context();
-
                     if (kind == StandardWatchEventKinds.OVERFLOW) {
-                        Thread.yield();
-                        continue;
-                    } else if (kind == java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY
-                            && filename.toString().equals(file.getName())) {
-                        doOnChange();
-                    }
-                    boolean valid = key.reset();
-                    if (!valid) {
-                        break;
+                        doOnChange(directory, null);
+                    } else if (kind == StandardWatchEventKinds.ENTRY_MODIFY) {
+                        doOnChange(directory, (Path) event.context());
                     }
                 }
-                Thread.yield();
+
+                // the key must be reset once all of its events are handled to receive the next ones; an invalid
+                // key only means that its directory is no longer watched
+                key.reset();
             }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // stopped
         } catch (Throwable e) {
             e.printStackTrace();
+        } finally {
+            try {
+                watcher.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
         }
     }
 }
@@ -0,0 +1,82 @@
+package com.refuel.business.watcher;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+/**
+ * Collapses bursts of reload requests into one reload that runs when no request came for the quiet period.
+ * <p>
+ * The reload gets a check that tells whether a newer request came after it was started, so a reload that is
+ * still running or waiting to be applied can give up and leave the file state to the newest one.
+ */
+public class ReloadScheduler {
+
+    private final ScheduledExecutorService executor;
+    private final boolean ownExecutor;
+    private final long quietPeriodMillis;
+    private final Consumer<BooleanSupplier> reload;
+    private final AtomicLong generation = new AtomicLong();
+
+    private ScheduledFuture<?> pendingReload;
+
+    public ReloadScheduler(long quietPeriodMillis, Consumer<BooleanSupplier> reload) {
+        this(Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "refuel-reload-scheduler");
+            thread.setDaemon(true);
+            return thread;
+        }), true, quietPeriodMillis, reload);
+    }
+
+    /**
+     * creates a scheduler that runs its reloads on the given executor, which can be shared by many schedulers
+     */
+    public ReloadScheduler(ScheduledExecutorService executor, long quietPeriodMillis, Consumer<BooleanSupplier> reload) {
+        this(executor, false, quietPeriodMillis, reload);
+    }
+
+    private ReloadScheduler(ScheduledExecutorService executor, boolean ownExecutor, long quietPeriodMillis,
+                            Consumer<BooleanSupplier> reload) {
+        this.executor = executor;
+        this.ownExecutor = ownExecutor;
+        this.quietPeriodMillis = quietPeriodMillis;
+        this.reload = reload;
+    }
+
+    /**
+     * (re)starts the quiet period, the reload runs when it ends
+     */
+    public synchronized void requestReload() {
+        long requestGeneration = generation.incrementAndGet();
+        if (pendingReload != null) {
+            pendingReload.cancel(false);
+        }
+        pendingReload = executor.schedule(() -> reload.accept(() -> generation.get() != requestGeneration),
+                quietPeriodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * drops the pending reload and marks a running one as superseded
+     */
+    public synchronized void cancel() {
+        generation.incrementAndGet();
+        if (pendingReload != null) {
+            pendingReload.cancel(false);
+            pendingReload = null;
+        }
+    }
+
+    /**
+     * cancels the reloads and stops the executor if the scheduler created it
+     */
+    public void shutdown() {
+        cancel();
+        if (ownExecutor) {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,222 @@
+package com.refuel.cli;
+
+import com.refuel.business.RefuelConstants;
+import com.refuel.business.aggregate.RefuelChartData;
+import com.refuel.business.exception.RefuelDataException;
+import com.refuel.business.load.LoadProgressListener;
+import com.refuel.business.load.RefuelDataSet;
+import com.refuel.business.load.RefuelFileLoader;
+import com.refuel.business.load.RefuelSnapshotFile;
+import com.refuel.business.parse.RecordSource;
+import com.refuel.business.parse.RecordSources;
+import com.refuel.business.store.RefuelStore;
+import com.refuel.business.time.Granularity;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Writes the spending of data files as CSV or JSON without starting the user interface.
+ * <p>
+ * Every file is a vehicle, like in the user interface. The files are loaded one after the other with the same
+ * loader and aggregates as the chart, and only their aggregates are kept, so many files can be reported at once.
+ * <p>
+ * With a store, the files are appended to it instead and the report is made from the records of the store in the
+ * date range, which can hold a much longer history than the files. The store remembers the records it took from
+ * each file, so a file that is given again only appends the records of the lines added to it since. Deduplicating
+ * drops the records that repeat an earlier record of their file.
+ * <p>
+ * Aggregate-only streams the records of each file into its aggregates without keeping them, so files larger than
+ * the heap can be reported; it cannot be used with a store, which needs the records.
+ * <p>
+ * The format of each file is recognized by its first line unless an input format is given, e.g. for a file whose
+ * first line is in another format by mistake.
+ */
+public class RefuelReport {
+
+    private static final String USAGE = "Usage: RefuelReport [--format csv|json] [--granularity day|week|month|quarter|year]"
+            + " [--fuel-type <fuelType>] [--from yyyy-mm-dd] [--to yyyy-mm-dd] [--store <directory>] [--output <file>]"
+            + " [--input-format pipe|csv|jsonl] [--lenient] [--deduplicate] [--aggregate-only] <dataFile>...";
+
+    public static void main(String[] args) {
+        System.exit(new RefuelReport().run(args, System.out, System.err));
+    }
+
+    /**
+     * returns the exit code: 0 on success, 1 if a data file could not be loaded and 2 for invalid arguments
+     */
+    public int run(String[] args, PrintStream out, PrintStream err) {
+        ReportFormat format = ReportFormat.CSV;
+        Granularity granularity = Granularity.MONTH;
+        String fuelType = null;
+        File outputFile = null;
+        boolean lenient = false;
+        boolean deduplicating = false;
+        boolean aggregateOnly = false;
+        RecordSource inputFormat = null;
+        int fromDay = Integer.MIN_VALUE;
+        int toDay = Integer.MAX_VALUE;
+        File storeDirectory = null;
+        List<File> dataFiles = new ArrayList<>();
+
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--format":
+                        format = ReportFormat.valueOf(valueOf(args, ++i).toUpperCase(Locale.ROOT));
+                        break;
+                    case "--granularity":
+                        granularity = Granularity.valueOf(valueOf(args, ++i).toUpperCase(Locale.ROOT));
+                        break;
+                    case "--fuel-type":
+                        fuelType = valueOf(args, ++i);
+                        break;
+                    case "--output":
+                        outputFile = new File(valueOf(args, ++i));
+                        break;
+                    case "--from":
+                        fromDay = dayOf(valueOf(args, ++i));
+                        break;
+                    case "--to":
+                        toDay = dayOf(valueOf(args, ++i));
+                        break;
+                    case "--store":
+                        storeDirectory = new File(valueOf(args, ++i));
+                        break;
+                    case "--input-format":
+                        inputFormat = RecordSources.named(valueOf(args, ++i));
+                        break;
+                    case "--lenient":
+                        lenient = true;
+                        break;
+                    case "--deduplicate":
+                        deduplicating = true;
+                        break;
+                    case "--aggregate-only":
+                        aggregateOnly = true;
+                        break;
+                    default:
+                        if (args[i].startsWith("--")) {
+                            throw new IllegalArgumentException("Unknown option: " + args[i]);
+                        }
+                        dataFiles.add(new File(args[i]));
+                }
+            }
+            if (dataFiles.isEmpty() && storeDirectory == null) {
+                throw new IllegalArgumentException("No data file given");
+            }
+            if (aggregateOnly && storeDirectory != null) {
+                throw new IllegalArgumentException("--aggregate-only cannot be used with --store");
+            }
+        } catch (IllegalArgumentException e) {
+            err.println(e.getMessage());
+            err.println(USAGE);
+            return 2;
+        }
+
+        RefuelStore store = null;
+        if (storeDirectory != null) {
+            try {
+                store = RefuelStore.open(storeDirectory);
+            } catch (IOException e) {
+                err.println(storeDirectory + ": Store cannot be opened. Detail: " + e.getMessage());
+                return 1;
+            }
+        }
+
+        int exitCode = 0;
+        Map<String, RefuelChartData> chartDataByVehicle = new LinkedHashMap<>();
+        RefuelFileLoader loader = new RefuelFileLoader(ForkJoinPool.commonPool(), RefuelFileLoader.DEFAULT_CHUNK_SIZE,
+                lenient, inputFormat);
+        boolean useSnapshot = Boolean.parseBoolean(System.getProperty(RefuelConstants.SNAPSHOT_ENABLED_PROPERTY,
+                "false"));
+        for (File dataFile : dataFiles) {
+            String vehicle = chartDataByVehicle.containsKey(dataFile.getName()) ? dataFile.getPath() : dataFile.getName();
+            try {
+                RefuelDataSet dataSet = new RefuelDataSet(dataFile, loader,
+                        useSnapshot ? RefuelSnapshotFile.sidecarOf(dataFile) : null, deduplicating, aggregateOnly);
+                dataSet.load(LoadProgressListener.NONE);
+                long duplicateCount = dataSet.getDuplicateCount();
+                if (store == null) {
+                    chartDataByVehicle.put(vehicle, dataSet.snapshot().between(fromDay, toDay));
+                } else {
+                    int storedCount = store.appendFrom(dataFile, dataSet.getColumns());
+                    if (storedCount > 0) {
+                        err.println(dataFile + ": Skipped " + storedCount + " records stored before");
+                    }
+                }
+                if (duplicateCount > 0) {
+                    err.println(dataFile + ": Dropped " + duplicateCount + " duplicate records");
+                }
+                if (!dataSet.getRejects().isEmpty()) {
+                    err.println(dataFile + ": Skipped " + dataSet.getRejects().getTotal() + " invalid lines ("
+                            + dataSet.getRejects() + "), see " + RefuelFileLoader.rejectsFileOf(dataFile));
+                }
+            } catch (RefuelDataException e) {
+                err.println(dataFile + ": " + e.getMessage());
+                exitCode = 1;
+            } catch (IOException e) {
+                err.println(dataFile + ": Data file cannot be read. Detail: " + e.getMessage());
+                exitCode = 1;
+            }
+        }
+        if (store != null) {
+            try {
+                chartDataByVehicle.put(storeDirectory.getName(), store.chartData(fromDay, toDay));
+            } catch (IOException e) {
+                err.println(storeDirectory + ": Store cannot be read. Detail: " + e.getMessage());
+                return 1;
+            } catch (RefuelDataException e) {
+                err.println(storeDirectory + ": " + e.getMessage());
+                return 1;
+            }
+        }
+
+        try {
+            if (outputFile == null) {
+                Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+                format.writeReport(writer, granularity, fuelType, chartDataByVehicle);
+                writer.flush();
+            } else {
+                try (OutputStream stream = Files.newOutputStream(outputFile.toPath());
+                     Writer writer = new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8))) {
+                    format.writeReport(writer, granularity, fuelType, chartDataByVehicle);
+                }
+            }
+        } catch (IOException | RefuelDataException e) {
+            err.println("Report cannot be written. Detail: " + e.getMessage());
+            return 1;
+        }
+        return exitCode;
+    }
+
+    private static int dayOf(String date) {
+        try {
+            return (int) LocalDate.parse(date).toEpochDay();
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Invalid date: " + date);
+        }
+    }
+
+    private static String valueOf(String[] args, int index) {
+        if (index >= args.length) {
+            throw new IllegalArgumentException("Missing value of " + args[index - 1]);
+        }
+        return args[index];
+    }
+}
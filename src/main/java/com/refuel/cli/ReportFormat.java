@@ -0,0 +1,141 @@
+package com.refuel.cli;
+
+import com.refuel.business.RefuelConstants;
+import com.refuel.business.aggregate.RefuelChartData;
+import com.refuel.business.aggregate.RefuelChartPage;
+import com.refuel.business.time.Granularity;
+import com.refuel.model.FixedPoint;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Output formats of the report. Every row is the spending of one fuel type of one vehicle in one period.
+ */
+public enum ReportFormat {
+
+    CSV {
+        @Override
+        public void writeStart(Writer out) throws IOException {
+            out.write("vehicle,fuelType,period,refuelCount,spent\n");
+        }
+
+        @Override
+        public void writeRow(Writer out, boolean first, String vehicle, String fuelType, String period,
+                             int refuelCount, long spendUnits) throws IOException {
+            out.write(csv(vehicle) + ',' + csv(fuelType) + ',' + period + ',' + refuelCount + ','
+                    + formatMoney(spendUnits) + '\n');
+        }
+
+        @Override
+        public void writeEnd(Writer out) {
+        }
+
+        private String csv(String value) {
+            if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0
+                    && value.indexOf('\r') < 0) {
+                return value;
+            }
+            return '"' + value.replace("\"", "\"\"") + '"';
+        }
+    },
+
+    JSON {
+        @Override
+        public void writeStart(Writer out) throws IOException {
+            out.write("[\n");
+        }
+
+        @Override
+        public void writeRow(Writer out, boolean first, String vehicle, String fuelType, String period,
+                             int refuelCount, long spendUnits) throws IOException {
+            out.write((first ? "" : ",\n") + "{\"vehicle\":" + json(vehicle) + ",\"fuelType\":" + json(fuelType)
+                    + ",\"period\":\"" + period + "\",\"refuelCount\":" + refuelCount + ",\"spent\":"
+                    + formatMoney(spendUnits) + '}');
+        }
+
+        @Override
+        public void writeEnd(Writer out) throws IOException {
+            out.write("\n]\n");
+        }
+
+        private String json(String value) {
+            StringBuilder builder = new StringBuilder(value.length() + 2).append('"');
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (c == '"' || c == '\\') {
+                    builder.append('\\').append(c);
+                } else if (c < 0x20) {
+                    builder.append(String.format("\\u%04x", (int) c));
+                } else {
+                    builder.append(c);
+                }
+            }
+            return builder.append('"').toString();
+        }
+    };
+
+    /**
+     * writes the rows of every vehicle, followed by the rows of all vehicles combined when there are several; all
+     * fuel types and each of them are reported when fuelType is null
+     */
+    public void writeReport(Writer out, Granularity granularity, String fuelType,
+                            Map<String, RefuelChartData> chartDataByVehicle) throws IOException {
+        Map<String, RefuelChartData> reported = new LinkedHashMap<>(chartDataByVehicle);
+        if (chartDataByVehicle.size() > 1) {
+            reported.put(RefuelConstants.VEHICLE_ALL, RefuelChartData.merge(chartDataByVehicle.values()));
+        }
+
+        writeStart(out);
+        boolean first = true;
+        for (Map.Entry<String, RefuelChartData> entry : reported.entrySet()) {
+            RefuelChartData chartData = entry.getValue();
+            List<String> fuelTypes = new ArrayList<>();
+            if (fuelType == null) {
+                fuelTypes.add(RefuelConstants.FUEL_TYPE_ALL);
+                fuelTypes.addAll(chartData.getFuelTypes());
+            } else {
+                fuelTypes.add(fuelType);
+            }
+
+            for (String reportedFuelType : fuelTypes) {
+                RefuelChartPage buckets = chartData.allBuckets(reportedFuelType, granularity);
+                if (buckets == null) {
+                    continue;
+                }
+                for (int index = 0; index < buckets.getBucketCount(); index++) {
+                    if (buckets.hasRefuelings(index)) {
+                        writeRow(out, first, entry.getKey(), reportedFuelType,
+                                granularity.periodOf(buckets.getBucket(index)), buckets.getRefuelCount(index),
+                                buckets.getSpentUnits(index));
+                        first = false;
+                    }
+                }
+            }
+        }
+        writeEnd(out);
+    }
+
+    public abstract void writeStart(Writer out) throws IOException;
+
+    /**
+     * first tells whether the row is the first one of the report
+     */
+    public abstract void writeRow(Writer out, boolean first, String vehicle, String fuelType, String period,
+                                  int refuelCount, long spendUnits) throws IOException;
+
+    public abstract void writeEnd(Writer out) throws IOException;
+
+    /**
+     * spending units of FixedPoint are written with a dot and at most six decimals, e.g. 66.6855
+     */
+    static String formatMoney(long spendUnits) {
+        return FixedPoint.spendToDecimal(spendUnits).setScale(6, RoundingMode.HALF_UP).stripTrailingZeros()
+                .toPlainString();
+    }
+}
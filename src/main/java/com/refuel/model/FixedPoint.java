@@ -0,0 +1,50 @@
+package com.refuel.model;
+
+import java.math.BigDecimal;
+
+/**
+ * Fixed point decimals kept in longs, so that money adds up exactly and in any order.
+ * <p>
+ * Fuel prices and amounts are units of 1/10000, the spending of a refueling is their product and so a unit of
+ * spending is 1/100000000. A long holds about 92 billion spent in those units, far more than a data file adds up
+ * to; the aggregates report a sum beyond it instead of wrapping around. Values are converted to double or
+ * BigDecimal only to be shown.
+ */
+public final class FixedPoint {
+
+    public static final int DECIMALS = 4;
+    public static final long SCALE = 10_000;
+
+    public static final int SPEND_DECIMALS = 2 * DECIMALS;
+    public static final long SPEND_SCALE = SCALE * SCALE;
+
+    private FixedPoint() {
+    }
+
+    /**
+     * returns the units of the value, rounded half up to the 4th decimal
+     */
+    public static long of(double value) {
+        return Math.round(value * SCALE);
+    }
+
+    public static double toDouble(long units) {
+        // both operands are exact doubles, so the quotient is the double nearest to the decimal
+        return units / (double) SCALE;
+    }
+
+    /**
+     * returns the spending units of a refueling, price times amount; the parsers cap both so that the product fits
+     */
+    public static long spendOf(long priceUnits, long amountUnits) {
+        return Math.multiplyExact(priceUnits, amountUnits);
+    }
+
+    public static double spendToDouble(long spendUnits) {
+        return spendUnits / (double) SPEND_SCALE;
+    }
+
+    public static BigDecimal spendToDecimal(long spendUnits) {
+        return BigDecimal.valueOf(spendUnits, SPEND_DECIMALS);
+    }
+}
@@ -0,0 +1,116 @@
+package com.refuel.model;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Assigns small integer ids to fuel names in the order they are first seen.
+ * <p>
+ * Names can be looked up straight from a range of chars, so a name that is already known costs no String.
+ */
+public class FuelTypeDictionary {
+
+    private String[] names = new String[8];
+    private int size;
+
+    // Open addressing table of id + 1 per slot, 0 for an empty slot.
+    private int[] slots = new int[16];
+
+    public int size() {
+        return size;
+    }
+
+    public String nameOf(int fuelTypeId) {
+        if (fuelTypeId < 0 || fuelTypeId >= size) {
+            throw new IndexOutOfBoundsException("Unknown fuel type id: " + fuelTypeId);
+        }
+        return names[fuelTypeId];
+    }
+
+    /**
+     * returns the id of the fuel name, -1 if it is not known
+     */
+    public int idOf(CharSequence name) {
+        return find(name, 0, name.length(), hash(name, 0, name.length()));
+    }
+
+    public int intern(CharSequence name) {
+        return intern(name, 0, name.length());
+    }
+
+    /**
+     * returns the id of the fuel name between start (inclusive) and end (exclusive), adding it if it is new
+     */
+    public int intern(CharSequence chars, int start, int end) {
+        int hash = hash(chars, start, end);
+        int id = find(chars, start, end, hash);
+        if (id >= 0) {
+            return id;
+        }
+
+        if (size == names.length) {
+            names = Arrays.copyOf(names, size * 2);
+        }
+        id = size++;
+        names[id] = chars.subSequence(start, end).toString();
+        if (size * 2 > slots.length) {
+            rehash();
+        } else {
+            insert(hash, id);
+        }
+        return id;
+    }
+
+    public List<String> getNames() {
+        return Collections.unmodifiableList(Arrays.asList(Arrays.copyOf(names, size)));
+    }
+
+    private int find(CharSequence chars, int start, int end, int hash) {
+        int mask = slots.length - 1;
+        for (int slot = hash & mask; slots[slot] != 0; slot = (slot + 1) & mask) {
+            int id = slots[slot] - 1;
+            if (matches(names[id], chars, start, end)) {
+                return id;
+            }
+        }
+        return -1;
+    }
+
+    private void insert(int hash, int id) {
+        int mask = slots.length - 1;
+        int slot = hash & mask;
+        while (slots[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        slots[slot] = id + 1;
+    }
+
+    private void rehash() {
+        slots = new int[slots.length * 2];
+        for (int id = 0; id < size; id++) {
+            insert(hash(names[id], 0, names[id].length()), id);
+        }
+    }
+
+    private static boolean matches(String name, CharSequence chars, int start, int end) {
+        if (name.length() != end - start) {
+            return false;
+        }
+        for (int i = 0; i < name.length(); i++) {
+            if (name.charAt(i) != chars.charAt(start + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int hash(CharSequence chars, int start, int end) {
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + chars.charAt(i);
+        }
+        // spread the high bits, since the table index only uses the low ones
+        return hash ^ (hash >>> 16);
+    }
+}
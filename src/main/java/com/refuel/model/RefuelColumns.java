@@ -0,0 +1,229 @@
+package com.refuel.model;
+
+import java.time.LocalDate;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Column store of refuel records: one primitive array per field, with the fuel names encoded by a dictionary,
+ * the fuel prices and amounts kept as FixedPoint units and the refuelling dates kept as epoch days.
+ * <p>
+ * Rows are read through the column accessors or as detached RefuelInfo objects.
+ */
+public class RefuelColumns {
+
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private final FuelTypeDictionary fuelTypes = new FuelTypeDictionary();
+
+    private int[] fuelTypeIds;
+    private long[] fuelPrices;
+    private long[] fuelAmounts;
+    private int[] refuellingDays;
+    private int size;
+
+    public RefuelColumns() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public RefuelColumns(int capacity) {
+        fuelTypeIds = new int[capacity];
+        fuelPrices = new long[capacity];
+        fuelAmounts = new long[capacity];
+        refuellingDays = new int[capacity];
+    }
+
+    public static RefuelColumns of(Collection<RefuelInfo> refuelInfos) {
+        RefuelColumns columns = new RefuelColumns(Math.max(refuelInfos.size(), DEFAULT_CAPACITY));
+        for (RefuelInfo refuelInfo : refuelInfos) {
+            columns.add(refuelInfo);
+        }
+        return columns;
+    }
+
+    /**
+     * creates columns from the first size values of the arrays, which are owned by the columns afterwards; the
+     * fuel type ids are the indexes of the fuel names and the prices and amounts are FixedPoint units
+     */
+    public static RefuelColumns of(List<String> fuelNames, int[] fuelTypeIds, long[] fuelPrices,
+                                   long[] fuelAmounts, int[] refuellingDays, int size) {
+        if (size > fuelTypeIds.length || size > fuelPrices.length || size > fuelAmounts.length
+                || size > refuellingDays.length) {
+            throw new IllegalArgumentException("Columns are shorter than " + size);
+        }
+        RefuelColumns columns = new RefuelColumns(0);
+        for (String fuelName : fuelNames) {
+            columns.fuelTypes.intern(fuelName);
+        }
+        if (columns.fuelTypes.size() != fuelNames.size()) {
+            throw new IllegalArgumentException("Fuel names are not distinct: " + fuelNames);
+        }
+        columns.fuelTypeIds = fuelTypeIds;
+        columns.fuelPrices = fuelPrices;
+        columns.fuelAmounts = fuelAmounts;
+        columns.refuellingDays = refuellingDays;
+        columns.size = size;
+        return columns;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public FuelTypeDictionary getFuelTypes() {
+        return fuelTypes;
+    }
+
+    /**
+     * fuelPrice and fuelAmount are FixedPoint units
+     */
+    public void add(int fuelTypeId, long fuelPrice, long fuelAmount, int refuellingDay) {
+        if (size == fuelTypeIds.length) {
+            grow(size + 1);
+        }
+        fuelTypeIds[size] = fuelTypeId;
+        fuelPrices[size] = fuelPrice;
+        fuelAmounts[size] = fuelAmount;
+        refuellingDays[size] = refuellingDay;
+        size++;
+    }
+
+    public void add(RefuelInfo refuelInfo) {
+        add(fuelTypes.intern(refuelInfo.getFuelName()), FixedPoint.of(refuelInfo.getFuelPrice()),
+                FixedPoint.of(refuelInfo.getFuelAmount()),
+                (int) refuelInfo.getRefuellingDate().toEpochDay());
+    }
+
+    /**
+     * appends the rows of the other columns, translating their fuel type ids to the ones of this dictionary
+     */
+    public void addAll(RefuelColumns other) {
+        FuelTypeDictionary otherFuelTypes = other.getFuelTypes();
+        int[] idMapping = new int[otherFuelTypes.size()];
+        for (int id = 0; id < idMapping.length; id++) {
+            idMapping[id] = fuelTypes.intern(otherFuelTypes.nameOf(id));
+        }
+
+        if (size + other.size > fuelTypeIds.length) {
+            grow(size + other.size);
+        }
+        for (int row = 0; row < other.size; row++) {
+            fuelTypeIds[size + row] = idMapping[other.fuelTypeIds[row]];
+        }
+        System.arraycopy(other.fuelPrices, 0, fuelPrices, size, other.size);
+        System.arraycopy(other.fuelAmounts, 0, fuelAmounts, size, other.size);
+        System.arraycopy(other.refuellingDays, 0, refuellingDays, size, other.size);
+        size += other.size;
+    }
+
+    /**
+     * drops the rows after the first newSize ones
+     */
+    public void truncate(int newSize) {
+        if (newSize < 0 || newSize > size) {
+            throw new IndexOutOfBoundsException("Size: " + size + ", new size: " + newSize);
+        }
+        size = newSize;
+    }
+
+    /**
+     * removes the rows of the set bits, the rows after them move up and keep their order
+     */
+    public void removeRows(BitSet rows) {
+        int kept = rows.nextSetBit(0);
+        if (kept < 0 || kept >= size) {
+            return;
+        }
+        for (int row = kept + 1; row < size; row++) {
+            if (!rows.get(row)) {
+                fuelTypeIds[kept] = fuelTypeIds[row];
+                fuelPrices[kept] = fuelPrices[row];
+                fuelAmounts[kept] = fuelAmounts[row];
+                refuellingDays[kept] = refuellingDays[row];
+                kept++;
+            }
+        }
+        size = kept;
+    }
+
+    public int getFuelTypeId(int row) {
+        checkRow(row);
+        return fuelTypeIds[row];
+    }
+
+    public String getFuelName(int row) {
+        return fuelTypes.nameOf(getFuelTypeId(row));
+    }
+
+    public double getFuelPrice(int row) {
+        return FixedPoint.toDouble(getFuelPriceUnits(row));
+    }
+
+    public double getFuelAmount(int row) {
+        return FixedPoint.toDouble(getFuelAmountUnits(row));
+    }
+
+    public long getFuelPriceUnits(int row) {
+        checkRow(row);
+        return fuelPrices[row];
+    }
+
+    public long getFuelAmountUnits(int row) {
+        checkRow(row);
+        return fuelAmounts[row];
+    }
+
+    /**
+     * returns the refuelling date of the row as epoch day
+     */
+    public int getRefuellingDay(int row) {
+        checkRow(row);
+        return refuellingDays[row];
+    }
+
+    /**
+     * returns a copy of the row, changing it does not change the columns
+     */
+    public RefuelInfo get(int row) {
+        return new RefuelInfo(getFuelName(row), getFuelPrice(row), getFuelAmount(row),
+                LocalDate.ofEpochDay(getRefuellingDay(row)));
+    }
+
+    /**
+     * returns a read only list view of the rows
+     */
+    public List<RefuelInfo> asList() {
+        return new RowList();
+    }
+
+    private void checkRow(int row) {
+        if (row < 0 || row >= size) {
+            throw new IndexOutOfBoundsException("Row: " + row + ", size: " + size);
+        }
+    }
+
+    private void grow(int minCapacity) {
+        int capacity = Math.max(minCapacity, fuelTypeIds.length + (fuelTypeIds.length >> 1));
+        fuelTypeIds = Arrays.copyOf(fuelTypeIds, capacity);
+        fuelPrices = Arrays.copyOf(fuelPrices, capacity);
+        fuelAmounts = Arrays.copyOf(fuelAmounts, capacity);
+        refuellingDays = Arrays.copyOf(refuellingDays, capacity);
+    }
+
+    private class RowList extends AbstractList<RefuelInfo> implements RandomAccess {
+
+        @Override
+        public RefuelInfo get(int index) {
+            return RefuelColumns.this.get(index);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+}
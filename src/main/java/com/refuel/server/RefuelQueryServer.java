@@ -0,0 +1,290 @@
+package com.refuel.server;
+
+import com.refuel.business.RefuelConstants;
+import com.refuel.business.aggregate.RefuelChartData;
+import com.refuel.business.time.Granularity;
+import com.refuel.cli.ReportFormat;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Answers the spending of the loaded data files over HTTP on the loopback interface, e.g. for dashboards and cost
+ * scripts:
+ * <p>
+ * GET /spend?fuelType=95&amp;granularity=month&amp;vehicle=all&amp;format=json
+ * <p>
+ * All parameters are optional and the rows are the ones of the command line report. The answers are made from the
+ * aggregates published by the user interface after every load, never by parsing the data files. Every publish is a
+ * new data version: an answer is made once per version and query and then served from memory, and its ETag is the
+ * data version, so a polling client that sends it back with If-None-Match gets a 304 until the data changes.
+ */
+public class RefuelQueryServer {
+
+    static final String SPEND_PATH = "/spend";
+
+    // Answers kept per data version, queries beyond them are answered without keeping the answer.
+    private static final int MAX_CACHED_RESPONSES = 256;
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    // Tells the data versions of this server apart from the ones of a server started before.
+    private final String etagPrefix = Long.toHexString(System.currentTimeMillis());
+
+    private volatile DataVersion dataVersion = new DataVersion(0, Collections.emptyMap());
+
+    /**
+     * port 0 takes any free port
+     */
+    public RefuelQueryServer(int port) throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        executor = Executors.newFixedThreadPool(2, runnable -> {
+            Thread thread = new Thread(runnable, "refuel-query-server");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(executor);
+        server.createContext(SPEND_PATH, this::handleSpend);
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    public void stop() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * makes the aggregates of the vehicles the answer of the following queries, the chart data must not be changed
+     * afterwards
+     */
+    public synchronized void publish(Map<String, RefuelChartData> chartDataByVehicle) {
+        dataVersion = new DataVersion(dataVersion.version + 1, new LinkedHashMap<>(chartDataByVehicle));
+    }
+
+    private void handleSpend(HttpExchange exchange) throws IOException {
+        try {
+            String method = exchange.getRequestMethod();
+            if (!"GET".equals(method) && !"HEAD".equals(method)) {
+                exchange.getResponseHeaders().set("Allow", "GET, HEAD");
+                sendError(exchange, 405, "Method not allowed: " + method);
+                return;
+            }
+            if (!SPEND_PATH.equals(exchange.getRequestURI().getPath())) {
+                sendError(exchange, 404, "Not found: " + exchange.getRequestURI().getPath());
+                return;
+            }
+
+            SpendQuery query;
+            try {
+                query = SpendQuery.of(exchange.getRequestURI().getRawQuery());
+            } catch (IllegalArgumentException e) {
+                sendError(exchange, 400, e.getMessage());
+                return;
+            }
+
+            DataVersion current = dataVersion;
+            String etag = '"' + etagPrefix + '-' + current.version + '"';
+            exchange.getResponseHeaders().set("ETag", etag);
+            // clients may keep the answer but have to ask whether the data changed before using it again
+            exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+            if (matches(exchange.getRequestHeaders().getFirst("If-None-Match"), etag)) {
+                exchange.sendResponseHeaders(304, -1);
+                return;
+            }
+
+            byte[] body = current.responseOf(query);
+            exchange.getResponseHeaders().set("Content-Type", query.format == ReportFormat.CSV
+                    ? "text/csv; charset=utf-8" : "application/json; charset=utf-8");
+            if ("HEAD".equals(method)) {
+                exchange.sendResponseHeaders(200, -1);
+            } else {
+                exchange.sendResponseHeaders(200, body.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * ifNoneMatch is a list of ETags or *
+     */
+    private static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            String trimmed = candidate.trim();
+            if (trimmed.equals("*") || trimmed.equals(etag) || trimmed.equals("W/" + etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void sendError(HttpExchange exchange, int status, String message) throws IOException {
+        byte[] body = (message + '\n').getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    /**
+     * The aggregates of one publish and the answers made from them so far, dropped with them by the next publish.
+     */
+    private static class DataVersion {
+
+        private final long version;
+        private final Map<String, RefuelChartData> chartDataByVehicle;
+        private final ConcurrentMap<SpendQuery, byte[]> responses = new ConcurrentHashMap<>();
+
+        DataVersion(long version, Map<String, RefuelChartData> chartDataByVehicle) {
+            this.version = version;
+            this.chartDataByVehicle = chartDataByVehicle;
+        }
+
+        private byte[] responseOf(SpendQuery query) {
+            byte[] response = responses.get(query);
+            if (response == null) {
+                response = answer(query);
+                if (responses.size() < MAX_CACHED_RESPONSES) {
+                    responses.putIfAbsent(query, response);
+                }
+            }
+            return response;
+        }
+
+        private byte[] answer(SpendQuery query) {
+            Map<String, RefuelChartData> reported;
+            if (query.vehicle == null) {
+                reported = chartDataByVehicle;
+            } else if (RefuelConstants.VEHICLE_ALL.equals(query.vehicle)) {
+                reported = Collections.singletonMap(RefuelConstants.VEHICLE_ALL,
+                        RefuelChartData.merge(chartDataByVehicle.values()));
+            } else if (chartDataByVehicle.containsKey(query.vehicle)) {
+                reported = Collections.singletonMap(query.vehicle, chartDataByVehicle.get(query.vehicle));
+            } else {
+                reported = Collections.emptyMap();
+            }
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            try (Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8)) {
+                query.format.writeReport(writer, query.granularity, query.fuelType, reported);
+            } catch (IOException e) {
+                // not thrown by a byte array
+                throw new IllegalStateException(e);
+            }
+            return out.toByteArray();
+        }
+    }
+
+    /**
+     * The parameters of a spend query, equal queries share their answer.
+     */
+    static final class SpendQuery {
+
+        private final String fuelType;
+        private final Granularity granularity;
+        private final String vehicle;
+        private final ReportFormat format;
+
+        private SpendQuery(String fuelType, Granularity granularity, String vehicle, ReportFormat format) {
+            this.fuelType = fuelType;
+            this.granularity = granularity;
+            this.vehicle = vehicle;
+            this.format = format;
+        }
+
+        /**
+         * throws IllegalArgumentException for an unknown parameter or value
+         */
+        static SpendQuery of(String rawQuery) {
+            Map<String, String> parameters = new HashMap<>();
+            if (rawQuery != null && !rawQuery.isEmpty()) {
+                for (String pair : rawQuery.split("&")) {
+                    int separator = pair.indexOf('=');
+                    String name = decode(separator < 0 ? pair : pair.substring(0, separator));
+                    parameters.put(name, separator < 0 ? "" : decode(pair.substring(separator + 1)));
+                }
+            }
+
+            String fuelType = parameters.remove("fuelType");
+            String granularity = parameters.remove("granularity");
+            String vehicle = parameters.remove("vehicle");
+            String format = parameters.remove("format");
+            if (!parameters.isEmpty()) {
+                throw new IllegalArgumentException("Unknown parameter: " + parameters.keySet().iterator().next());
+            }
+            return new SpendQuery(fuelType,
+                    granularity == null ? Granularity.MONTH : valueOf(Granularity.class, "granularity", granularity),
+                    vehicle,
+                    format == null ? ReportFormat.JSON : valueOf(ReportFormat.class, "format", format));
+        }
+
+        private static <E extends Enum<E>> E valueOf(Class<E> type, String name, String value) {
+            try {
+                return Enum.valueOf(type, value.toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Invalid " + name + ": " + value);
+            }
+        }
+
+        private static String decode(String value) {
+            try {
+                return URLDecoder.decode(value, StandardCharsets.UTF_8.name());
+            } catch (UnsupportedEncodingException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof SpendQuery)) {
+                return false;
+            }
+            SpendQuery other = (SpendQuery) o;
+            return Objects.equals(fuelType, other.fuelType) && granularity == other.granularity
+                    && Objects.equals(vehicle, other.vehicle) && format == other.format;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(fuelType, granularity, vehicle, format);
+        }
+    }
+}
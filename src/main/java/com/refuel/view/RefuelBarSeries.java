@@ -0,0 +1,187 @@
+package com.refuel.view;
+
+import com.refuel.business.aggregate.ChartMetric;
+import com.refuel.business.aggregate.RefuelChartPage;
+import javafx.geometry.Bounds;
+import javafx.scene.Group;
+import javafx.scene.Node;
+import javafx.scene.chart.XYChart;
+import javafx.scene.text.Text;
+
+import java.math.RoundingMode;
+import java.text.DecimalFormat;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The only series of the refuel bar chart, with a bar and a value label for each time bucket of the page.
+ * <p>
+ * Bars and labels are created for the first page and kept for the following ones; a refresh of the same buckets
+ * only changes the values, styles and label texts, so the chart can animate the bars to their new heights. A page
+ * with other buckets puts the same bars back with the new labels, new bars are created only for a page with more
+ * buckets than any page before, e.g. the days of a month after the months of a year.
+ */
+class RefuelBarSeries {
+
+    private final XYChart<String, Number> chart;
+    private final XYChart.Series<String, Number> series = new XYChart.Series<>();
+
+    // Every bar created so far, the first ones of them are in the series.
+    private final List<Bar> bars = new ArrayList<>();
+
+    private final Map<ChartMetric, DecimalFormat> labelFormats = new EnumMap<>(ChartMetric.class);
+
+    RefuelBarSeries(XYChart<String, Number> chart) {
+        this.chart = chart;
+        for (ChartMetric metric : ChartMetric.values()) {
+            DecimalFormat labelFormat = new DecimalFormat(metric.getLabelPattern());
+            labelFormat.setRoundingMode(RoundingMode.CEILING);
+            labelFormats.put(metric, labelFormat);
+        }
+        chart.getData().add(series);
+    }
+
+    /**
+     * shows the metric in the buckets of the page, the bars with the highest and the lowest value are colored
+     */
+    void show(RefuelChartPage chartPage, ChartMetric metric) {
+        List<String> labels = new ArrayList<>(chartPage.getBucketCount());
+        for (int bucket = 0; bucket < chartPage.getBucketCount(); bucket++) {
+            labels.add(chartPage.getLabel(bucket));
+        }
+        useBuckets(labels);
+
+        DecimalFormat labelFormat = labelFormats.get(metric);
+        for (int bucket = 0; bucket < labels.size(); bucket++) {
+            Bar bar = bars.get(bucket);
+            double value = chartPage.getValue(metric, bucket);
+            bar.data.setYValue(value);
+            bar.setStyle(styleOf(chartPage, metric, bucket));
+            bar.setLabel(chartPage.hasRefuelings(bucket) || metric == ChartMetric.SPENT
+                    ? labelFormat.format(value) : null);
+        }
+    }
+
+    /**
+     * shows empty bars without labels, e.g. before a data file is loaded
+     */
+    void showEmpty(List<String> labels) {
+        useBuckets(labels);
+        for (int bucket = 0; bucket < labels.size(); bucket++) {
+            Bar bar = bars.get(bucket);
+            bar.data.setYValue(0);
+            bar.setStyle(null);
+            bar.setLabel(null);
+        }
+    }
+
+    private static String styleOf(RefuelChartPage chartPage, ChartMetric metric, int bucket) {
+        if (chartPage.isMax(metric, bucket)) {
+            return "-fx-bar-fill: -fx-max-value;";
+        } else if (chartPage.isMin(metric, bucket)) {
+            return "-fx-bar-fill: -fx-min-value;";
+        } else {
+            return "-fx-bar-fill: -fx-middle-value;";
+        }
+    }
+
+    /**
+     * puts a bar into the series for each label; the bar chart finds the bars by their category, so a bar whose
+     * label changes is taken out of the series first
+     */
+    private void useBuckets(List<String> labels) {
+        if (hasBuckets(labels)) {
+            return;
+        }
+
+        boolean animated = chart.getAnimated();
+        chart.setAnimated(false);
+        try {
+            series.getData().clear();
+            while (bars.size() < labels.size()) {
+                bars.add(new Bar());
+            }
+            List<XYChart.Data<String, Number>> shownData = new ArrayList<>(labels.size());
+            for (int bucket = 0; bucket < labels.size(); bucket++) {
+                XYChart.Data<String, Number> data = bars.get(bucket).data;
+                data.setXValue(labels.get(bucket));
+                shownData.add(data);
+            }
+            series.getData().addAll(shownData);
+        } finally {
+            chart.setAnimated(animated);
+        }
+    }
+
+    private boolean hasBuckets(List<String> labels) {
+        List<XYChart.Data<String, Number>> shownData = series.getData();
+        if (shownData.size() != labels.size()) {
+            return false;
+        }
+        for (int bucket = 0; bucket < labels.size(); bucket++) {
+            if (!labels.get(bucket).equals(shownData.get(bucket).getXValue())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * A bar of the chart and the label on top of it, the label follows the bar into and out of the chart.
+     */
+    private static class Bar {
+
+        private final XYChart.Data<String, Number> data = new XYChart.Data<>("", 0);
+        private final Text label = new Text();
+        private String style;
+
+        Bar() {
+            // the bar chart creates the node of the data when it is first added to the series
+            data.nodeProperty().addListener((obs, oldNode, node) -> {
+                if (node != null) {
+                    node.setStyle(style);
+                    node.parentProperty().addListener((parentObs, oldParent, parent) -> {
+                        if (oldParent != null) {
+                            ((Group) oldParent).getChildren().remove(label);
+                        }
+                        if (parent != null && !((Group) parent).getChildren().contains(label)) {
+                            ((Group) parent).getChildren().add(label);
+                        }
+                    });
+                    node.boundsInParentProperty().addListener((boundsObs, oldBounds, bounds) -> placeLabel(bounds));
+                }
+            });
+        }
+
+        void setStyle(String style) {
+            this.style = style;
+            if (data.getNode() != null) {
+                data.getNode().setStyle(style);
+            }
+        }
+
+        /**
+         * label is null to hide it
+         */
+        void setLabel(String text) {
+            label.setVisible(text != null);
+            if (text != null && !text.equals(label.getText())) {
+                label.setText(text);
+                Node node = data.getNode();
+                if (node != null) {
+                    placeLabel(node.getBoundsInParent());
+                }
+            }
+        }
+
+        /**
+         * the value is displayed centered on top of the bar
+         */
+        private void placeLabel(Bounds bounds) {
+            label.setLayoutX(Math.round(bounds.getMinX() + bounds.getWidth() / 2 - label.prefWidth(-1) / 2));
+            label.setLayoutY(Math.round(bounds.getMinY() - label.prefHeight(-1) * 0.5));
+        }
+    }
+}
@@ -2,41 +2,44 @@ package com.refuel.view;
 
 import com.refuel.MainApp;
 import com.refuel.business.RefuelConstants;
+import com.refuel.business.aggregate.ChartMetric;
+import com.refuel.business.aggregate.RefuelChartData;
+import com.refuel.business.aggregate.RefuelChartPage;
 import com.refuel.business.exception.RefuelDataException;
+import com.refuel.business.load.LoadProgressListener;
+import com.refuel.business.load.RefuelDataSet;
+import com.refuel.business.load.RefuelFileLoader;
+import com.refuel.business.load.RefuelSnapshotFile;
+import com.refuel.business.load.RejectCounts;
+import com.refuel.business.metrics.RefuelMetrics;
+import com.refuel.business.parse.RefuelLineParser;
+import com.refuel.business.time.Granularity;
 import com.refuel.business.watcher.FileWatcher;
+import com.refuel.model.RefuelColumns;
+import com.refuel.server.RefuelQueryServer;
 import com.refuel.model.RefuelInfo;
-import javafx.beans.value.ChangeListener;
-import javafx.beans.value.ObservableValue;
+import javafx.application.Platform;
 import javafx.collections.FXCollections;
 import javafx.fxml.FXML;
-import javafx.geometry.Bounds;
-import javafx.scene.Group;
-import javafx.scene.Node;
-import javafx.scene.Parent;
 import javafx.scene.chart.BarChart;
 import javafx.scene.chart.CategoryAxis;
 import javafx.scene.chart.NumberAxis;
-import javafx.scene.chart.XYChart;
 import javafx.scene.control.Alert;
+import javafx.scene.control.Button;
+import javafx.scene.control.CheckBox;
 import javafx.scene.control.ComboBox;
+import javafx.scene.control.DatePicker;
 import javafx.scene.control.Label;
-import javafx.scene.text.Text;
+import javafx.scene.control.ProgressBar;
 import javafx.stage.FileChooser;
 
 import java.io.File;
-import java.math.RoundingMode;
-import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
-import java.nio.file.Paths;
-import java.text.DecimalFormat;
-import java.text.NumberFormat;
-import java.text.ParseException;
+import java.io.IOException;
 import java.time.LocalDate;
 import java.time.Month;
-import java.time.format.DateTimeFormatter;
 import java.util.*;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * Created by egucer on 01-Feb-19.
@@ -46,21 +49,93 @@ public class RefuelController {
     // Reference to the main application.
     private MainApp mainApp;
 
-    // Reference to the uploaded data file.
-    private File dataFile;
-
-    // Reference to the file watcher.
+    // Reference to the file watcher shared by all data files.
     private FileWatcher dataFileWatcher;
 
-    // Reference to the constructed refuel info objects.
-    private List<RefuelInfo> refuelInfoList = new ArrayList<>();
+    // Reference to the parser of the data file lines.
+    private final RefuelLineParser refuelLineParser = new RefuelLineParser();
+
+    // Reference to the loader of the data files, a lenient one skips the invalid lines.
+    private RefuelFileLoader refuelFileLoader = new RefuelFileLoader(
+            Boolean.parseBoolean(System.getProperty(RefuelConstants.LENIENT_LOAD_PROPERTY, "false")));
+
+    // Whether the records that repeat an earlier record of their data file are dropped.
+    private boolean deduplicating = Boolean.parseBoolean(System.getProperty(
+            RefuelConstants.DEDUPLICATE_LOAD_PROPERTY, "false"));
+
+    // Whether only the aggregates of the data files are kept, not their records.
+    private final boolean aggregateOnly = Boolean.parseBoolean(System.getProperty(
+            RefuelConstants.AGGREGATE_ONLY_LOAD_PROPERTY, "false"));
+
+    // Reference to the loaded records and aggregates of each vehicle's data file, changed only by the load tasks.
+    private Map<String, RefuelDataSet> refuelDataSets = new LinkedHashMap<>();
+
+    // Reference to the copies of the aggregates of each vehicle.
+    private Map<String, RefuelChartData> refuelChartDataByVehicle = new HashMap<>();
+
+    // Reference to the copy of the aggregates that the chart is drawn from, all vehicles combined or one of them.
+    private RefuelChartData refuelChartData = RefuelChartData.EMPTY;
+
+    // Reference to the vehicle shown in the chart.
+    private String selectedVehicle = RefuelConstants.VEHICLE_ALL;
+
+    // Reference to the first and last day of the refuelings shown in the chart, null for no limit.
+    private LocalDate fromDate;
+    private LocalDate toDate;
+
+    // Reference to the statistic of the time buckets shown by the bars.
+    private ChartMetric selectedMetric = ChartMetric.SPENT;
+
+    // Reference to the size of the time buckets shown in the chart.
+    private Granularity selectedGranularity = Granularity.MONTH;
+
+    // Reference to the page of time buckets chosen with the page buttons, null shows the latest one.
+    private Integer selectedPage;
+
+    // Reference to the page of time buckets shown in the chart.
+    private RefuelChartPage shownChartPage;
+
+    // Reference to the thread that runs the load tasks one after the other.
+    private final ExecutorService loadExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "refuel-loader");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Reference to the last started load task of each vehicle.
+    private Map<String, RefuelLoadTask> runningLoadTasks = new HashMap<>();
+
+    // Reference to the thread that combines the chart data of the vehicles and cuts it to the date range.
+    private final ExecutorService viewExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "refuel-view");
+        thread.setDaemon(true);
+        return thread;
+    });
 
-    // Reference to the group that contains texts for each bar.
-    private Group groupOfPanesAndLabels;
+    // Reference to the last started view task, only its result is drawn.
+    private RefuelViewTask runningViewTask;
+
+    // Reference to the local HTTP server answering the spending of the vehicles, null unless its port is set.
+    private RefuelQueryServer queryServer;
+
+    // Reference to the series of the bar chart, its bars are reused by every refresh.
+    private RefuelBarSeries refuelBarSeries;
 
     @FXML
     private Label dataFileLabel;
 
+    @FXML
+    private ProgressBar loadProgressBar;
+
+    @FXML
+    private CheckBox skipInvalidLinesCheckBox;
+
+    @FXML
+    private CheckBox dropDuplicatesCheckBox;
+
+    @FXML
+    private Label rejectsLabel;
+
     @FXML
     private CategoryAxis xAxis;
 
@@ -68,43 +143,145 @@ public class RefuelController {
     private NumberAxis yAxis;
 
     @FXML
-    private BarChart<CategoryAxis, NumberAxis> refuelBarChart;
+    private BarChart<String, Number> refuelBarChart;
 
     @FXML
     private ComboBox<String> fuelTypeComboBox;
 
+    @FXML
+    private ComboBox<ChartMetric> metricComboBox;
+
+    @FXML
+    private ComboBox<String> vehicleComboBox;
+
+    @FXML
+    private ComboBox<Granularity> granularityComboBox;
+
+    @FXML
+    private DatePicker fromDatePicker;
+
+    @FXML
+    private DatePicker toDatePicker;
+
+    @FXML
+    private Button previousPageButton;
+
+    @FXML
+    private Button nextPageButton;
+
     /**
-     * Called when the user clicks choose data file.
+     * Called when the user clicks choose data file. Several files can be selected, one for each vehicle.
      */
     @FXML
     private void uploadDataFile() {
         FileChooser fileChooser = new FileChooser();
-        fileChooser.getExtensionFilters().addAll(new FileChooser.ExtensionFilter("Txt Files", "*.txt"));
-        File selectedFile = fileChooser.showOpenDialog(null);
+        fileChooser.getExtensionFilters().addAll(
+                new FileChooser.ExtensionFilter("Data Files", "*.txt", "*.csv", "*.jsonl", "*.gz", "*.zst"),
+                new FileChooser.ExtensionFilter("All Files", "*.*"));
+        List<File> selectedFiles = fileChooser.showOpenMultipleDialog(null);
+
+        if (selectedFiles != null && !selectedFiles.isEmpty()) {
+            if (selectedFiles.size() == 1) {
+                dataFileLabel.setText("File selected: " + selectedFiles.get(0).getName());
+            } else {
+                dataFileLabel.setText(selectedFiles.size() + " files selected.");
+            }
 
-        if (selectedFile != null) {
-            dataFileLabel.setText("File selected: " + selectedFile.getName());
-            dataFile = selectedFile;
+            cancelLoadTasks();
+            refuelDataSets = new LinkedHashMap<>();
+            refuelChartDataByVehicle = new HashMap<>();
+            publishChartData();
+            selectedPage = null;
+            for (File selectedFile : selectedFiles) {
+                refuelDataSets.put(vehicleNameOf(selectedFile), newDataSet(selectedFile));
+            }
+            fillVehicleComboBox();
+            showRejects();
 
-            applyFileToGraph(selectedFile);
+            for (String vehicle : refuelDataSets.keySet()) {
+                startLoadTask(vehicle, true);
+            }
 
-            stopDataFileWatcher();
-            startNewDataFileWatcher();
+            watchDataFiles();
         } else {
             dataFileLabel.setText("File selection cancelled.");
         }
     }
 
+    /**
+     * Called when the user checks or unchecks skip invalid lines, the data files are loaded again with the new
+     * loader.
+     */
+    @FXML
+    private void changeSkipInvalidLines() {
+        refuelFileLoader = new RefuelFileLoader(skipInvalidLinesCheckBox.isSelected());
+        reloadDataSets();
+    }
+
+    /**
+     * Called when the user checks or unchecks drop duplicates, the data files are loaded again with or without
+     * dropping the duplicate records.
+     */
+    @FXML
+    private void changeDropDuplicates() {
+        deduplicating = dropDuplicatesCheckBox.isSelected();
+        reloadDataSets();
+    }
+
+    private void reloadDataSets() {
+        if (refuelDataSets.isEmpty()) {
+            return;
+        }
+
+        cancelLoadTasks();
+        Map<String, RefuelDataSet> reloadedDataSets = new LinkedHashMap<>();
+        for (Map.Entry<String, RefuelDataSet> entry : refuelDataSets.entrySet()) {
+            reloadedDataSets.put(entry.getKey(), newDataSet(entry.getValue().getFile()));
+        }
+        refuelDataSets = reloadedDataSets;
+        refuelChartDataByVehicle = new HashMap<>();
+        publishChartData();
+        showRejects();
+
+        for (String vehicle : refuelDataSets.keySet()) {
+            startLoadTask(vehicle, true);
+        }
+    }
+
+    /**
+     * the records of the file are kept in a snapshot next to it only when snapshots are enabled
+     */
+    private RefuelDataSet newDataSet(File file) {
+        boolean useSnapshot = Boolean.parseBoolean(System.getProperty(RefuelConstants.SNAPSHOT_ENABLED_PROPERTY,
+                "false"));
+        return new RefuelDataSet(file, refuelFileLoader, useSnapshot ? RefuelSnapshotFile.sidecarOf(file) : null,
+                deduplicating, aggregateOnly);
+    }
+
+    /**
+     * vehicles are named after their data files, files with the same name in different directories get the path
+     */
+    private String vehicleNameOf(File file) {
+        return refuelDataSets.containsKey(file.getName()) ? file.getAbsolutePath() : file.getName();
+    }
+
     /**
      * Initializes the controller class. This method is automatically called
      * after the fxml file has been loaded.
      */
     @FXML
     private void initialize() {
+        skipInvalidLinesCheckBox.setSelected(refuelFileLoader.isLenient());
+        dropDuplicatesCheckBox.setSelected(deduplicating);
         initializeFuelTypeComboBox();
+        initializeMetricComboBox();
+        initializeVehicleComboBox();
+        initializeGranularityComboBox();
+        initializeDatePickers();
         setDefaultAxisProperties();
         setDefaultRefuelBarChartProperties();
         loadEmptyRefuelBarChart();
+        startQueryServer();
     }
 
     private void initializeFuelTypeComboBox() {
@@ -117,49 +294,257 @@ public class RefuelController {
         });
     }
 
+    /**
+     * the page already holds every metric, so another metric is shown without merging the days again
+     */
+    private void initializeMetricComboBox() {
+        metricComboBox.setItems(FXCollections.observableArrayList(ChartMetric.values()));
+        metricComboBox.setValue(selectedMetric);
+        metricComboBox.valueProperty().addListener((obs, oldVal, newVal) -> {
+            if (newVal != null) {
+                selectedMetric = newVal;
+                showChartPage();
+            }
+        });
+    }
+
+    private void initializeVehicleComboBox() {
+        vehicleComboBox.setItems(FXCollections.observableArrayList(RefuelConstants.VEHICLE_ALL));
+        vehicleComboBox.setValue(RefuelConstants.VEHICLE_ALL);
+        vehicleComboBox.valueProperty().addListener((obs, oldVal, newVal) -> {
+            if (newVal != null) {
+                selectedVehicle = newVal;
+                showSelectedVehicle();
+            }
+        });
+    }
+
+    private void initializeGranularityComboBox() {
+        granularityComboBox.setItems(FXCollections.observableArrayList(Granularity.values()));
+        granularityComboBox.setValue(selectedGranularity);
+        granularityComboBox.valueProperty().addListener((obs, oldVal, newVal) -> {
+            if (newVal != null) {
+                selectedPage = pageAfterGranularityChange(oldVal, newVal);
+                selectedGranularity = newVal;
+                generateBarChart(fuelTypeComboBox.getValue());
+            }
+        });
+    }
+
+    /**
+     * the chart shows only the refuelings between the picked days, an empty picker does not limit the range
+     */
+    private void initializeDatePickers() {
+        fromDatePicker.valueProperty().addListener((obs, oldVal, newVal) -> {
+            fromDate = newVal;
+            showSelectedVehicle();
+        });
+        toDatePicker.valueProperty().addListener((obs, oldVal, newVal) -> {
+            toDate = newVal;
+            showSelectedVehicle();
+        });
+    }
+
+    /**
+     * the new granularity shows the page that contains the start of the shown page, e.g. the year of a month
+     */
+    private Integer pageAfterGranularityChange(Granularity oldGranularity, Granularity newGranularity) {
+        if (shownChartPage == null || oldGranularity == null || !oldGranularity.isPaged()) {
+            return null;
+        }
+        int firstDay = oldGranularity.firstDayOf(oldGranularity.firstBucketOfPage(shownChartPage.getPage()));
+        return newGranularity.pageOf(newGranularity.bucketOf(firstDay));
+    }
+
+    /**
+     * Called when the user clicks the previous page button, e.g. to show the year before.
+     */
+    @FXML
+    private void showPreviousPage() {
+        if (shownChartPage != null && shownChartPage.hasPreviousPage()) {
+            selectedPage = shownChartPage.getPage() - 1;
+            generateBarChart(fuelTypeComboBox.getValue());
+        }
+    }
+
+    /**
+     * Called when the user clicks the next page button, e.g. to show the year after.
+     */
+    @FXML
+    private void showNextPage() {
+        if (shownChartPage != null && shownChartPage.hasNextPage()) {
+            selectedPage = shownChartPage.getPage() + 1;
+            generateBarChart(fuelTypeComboBox.getValue());
+        }
+    }
+
+    private void fillVehicleComboBox() {
+        List<String> vehicles = new ArrayList<>();
+        vehicles.add(RefuelConstants.VEHICLE_ALL);
+        vehicles.addAll(refuelDataSets.keySet());
+        vehicleComboBox.setItems(FXCollections.observableArrayList(vehicles));
+        vehicleComboBox.setValue(RefuelConstants.VEHICLE_ALL);
+    }
+
     private void setDefaultAxisProperties() {
-        xAxis.setLabel("Months");
-        yAxis.setLabel("Euro");
+        xAxis.setLabel(selectedGranularity.getDisplayName());
+        yAxis.setLabel(selectedMetric.getAxisLabel());
         yAxis.setAutoRanging(false);
         yAxis.setLowerBound(0);
     }
 
     private void setDefaultRefuelBarChartProperties() {
         refuelBarChart.setLegendVisible(false);
+        refuelBarChart.setAnimated(Boolean.parseBoolean(System.getProperty(
+                RefuelConstants.CHART_ANIMATED_PROPERTY, "true")));
+        refuelBarSeries = new RefuelBarSeries(refuelBarChart);
     }
 
     private void loadEmptyRefuelBarChart() {
-        XYChart.Series dataSeries = new XYChart.Series();
+        refuelBarChart.setTitle(null);
+        List<String> months = new ArrayList<>();
         for (Month monthEnum : Month.values()) {
-            dataSeries.getData().add(new XYChart.Data((Month.of(monthEnum.getValue())).toString(), 0));
+            months.add(monthEnum.toString());
+        }
+        refuelBarSeries.showEmpty(months);
+    }
+
+    /**
+     * starts the local HTTP server when its port is set, it answers from the aggregates published after every load
+     */
+    private void startQueryServer() {
+        Integer port = Integer.getInteger(RefuelConstants.QUERY_SERVER_PORT_PROPERTY);
+        if (port == null) {
+            return;
+        }
+        try {
+            queryServer = new RefuelQueryServer(port);
+            queryServer.start();
+        } catch (IOException e) {
+            e.printStackTrace();
+            showErrorDialog("The query server cannot be started on port " + port + ". Detail: " + e.getMessage());
+        }
+    }
+
+    public void stopQueryServer() {
+        if (queryServer != null) {
+            queryServer.stop();
+            queryServer = null;
+        }
+    }
+
+    /**
+     * the aggregates of the vehicles are copies, so the query server can answer from them on its own threads; the
+     * vehicles that are still loading are left out
+     */
+    private void publishChartData() {
+        if (queryServer != null) {
+            Map<String, RefuelChartData> chartDataByVehicle = new LinkedHashMap<>();
+            for (String vehicle : refuelDataSets.keySet()) {
+                if (refuelChartDataByVehicle.containsKey(vehicle)) {
+                    chartDataByVehicle.put(vehicle, refuelChartDataByVehicle.get(vehicle));
+                }
+            }
+            queryServer.publish(chartDataByVehicle);
         }
-        refuelBarChart.getData().add(dataSeries);
     }
 
     public void stopDataFileWatcher() {
         if (dataFileWatcher != null) {
             dataFileWatcher.stopThread();
+            dataFileWatcher = null;
         }
     }
 
-    public void startNewDataFileWatcher() {
-        dataFileWatcher = new FileWatcher(dataFile, this);
-        dataFileWatcher.start();
+    /**
+     * watches the data files of all vehicles, the watcher thread is started with the first ones
+     */
+    private void watchDataFiles() {
+        try {
+            if (dataFileWatcher == null) {
+                long quietPeriodMillis = Long.getLong(RefuelConstants.RELOAD_QUIET_PERIOD_PROPERTY,
+                        RefuelConstants.DEFAULT_RELOAD_QUIET_PERIOD_MILLIS);
+                dataFileWatcher = new FileWatcher(quietPeriodMillis, Platform::runLater);
+                dataFileWatcher.start();
+            }
+            dataFileWatcher.unwatchAll();
+            for (RefuelDataSet dataSet : refuelDataSets.values()) {
+                dataFileWatcher.watch(dataSet.getFile(), this::applyFileToGraph);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            showErrorDialog("Changes of the data files cannot be watched. Detail: " + e.getMessage());
+        }
     }
 
+    /**
+     * loads the changes of the file in the background and refreshes the chart when they are loaded
+     */
     public void applyFileToGraph(File file) {
-        try {
-            fillRefuelInfoList(file);
-        } catch (RefuelDataException dataEx) {
-            dataEx.printStackTrace();
-            showErrorDialog(dataEx.getMessage());
-            return;
-        } catch (Exception e) {
-            e.printStackTrace();
-            showErrorDialog("Invalid Data");
-            return;
+        for (Map.Entry<String, RefuelDataSet> entry : refuelDataSets.entrySet()) {
+            if (file.equals(entry.getValue().getFile())) {
+                startLoadTask(entry.getKey(), false);
+                return;
+            }
+        }
+    }
+
+    /**
+     * a newer load of a vehicle supersedes its running one, only the result of its last started task is shown
+     */
+    private void startLoadTask(String vehicle, boolean fullLoad) {
+        RefuelLoadTask runningLoadTask = runningLoadTasks.get(vehicle);
+        if (runningLoadTask != null) {
+            runningLoadTask.cancel();
+        }
+
+        RefuelLoadTask loadTask = new RefuelLoadTask(refuelDataSets.get(vehicle), fullLoad);
+        loadTask.setOnSucceeded(event -> applyChartData(vehicle, loadTask.getValue()));
+        loadTask.setOnFailed(event -> showLoadError(vehicle, loadTask.getException()));
+        loadProgressBar.progressProperty().bind(loadTask.progressProperty());
+        loadProgressBar.visibleProperty().bind(loadTask.runningProperty());
+
+        runningLoadTasks.put(vehicle, loadTask);
+        loadExecutor.execute(loadTask);
+    }
+
+    private void cancelLoadTasks() {
+        for (RefuelLoadTask loadTask : runningLoadTasks.values()) {
+            loadTask.cancel();
+        }
+        runningLoadTasks.clear();
+    }
+
+    private void applyChartData(String vehicle, RefuelChartData chartData) {
+        refuelChartDataByVehicle.put(vehicle, chartData);
+        publishChartData();
+        showRejects();
+        showSelectedVehicle();
+        RefuelMetrics.get().chartRefreshed(refuelDataSets.get(vehicle).getFile());
+    }
+
+    /**
+     * draws the chart of the selected vehicle, or of all vehicles combined, once the view task has combined and cut
+     * its chart data; a newer call supersedes the running view task
+     */
+    private void showSelectedVehicle() {
+        if (runningViewTask != null) {
+            runningViewTask.cancel();
         }
 
+        RefuelViewTask viewTask = new RefuelViewTask(refuelChartDataByVehicle, selectedVehicle, fromDate, toDate);
+        viewTask.setOnSucceeded(event -> drawChartData(viewTask.getValue()));
+        viewTask.setOnFailed(event -> {
+            viewTask.getException().printStackTrace();
+            showErrorDialog("A general exception occurred. Detail: " + viewTask.getException().getMessage());
+        });
+
+        runningViewTask = viewTask;
+        viewExecutor.execute(viewTask);
+    }
+
+    private void drawChartData(RefuelChartData chartData) {
+        refuelChartData = chartData;
         try {
             fillFuelTypeComboBox();
             generateBarChart(RefuelConstants.FUEL_TYPE_ALL);
@@ -169,14 +554,97 @@ public class RefuelController {
         }
     }
 
+    /**
+     * combines and cuts the chart data on the calling thread, e.g. for the loads that do not draw the chart
+     */
+    private void updateShownChartData() {
+        refuelChartData = RefuelViewTask.shownChartData(refuelChartDataByVehicle, selectedVehicle, fromDate, toDate);
+    }
+
+    /**
+     * limits the spending by month to the refuelings between the days (both inclusive) on the calling thread, null
+     * does not limit the range
+     */
+    public void setDateRange(LocalDate fromDate, LocalDate toDate) {
+        this.fromDate = fromDate;
+        this.toDate = toDate;
+        updateShownChartData();
+    }
+
+    /**
+     * shows how many invalid lines the loads skipped and where they were written to, and how many duplicate records
+     * they dropped; nothing when there were none
+     */
+    private void showRejects() {
+        RejectCounts rejects = RejectCounts.NONE;
+        long duplicateCount = 0;
+        List<File> rejectsFiles = new ArrayList<>();
+        for (RefuelDataSet dataSet : refuelDataSets.values()) {
+            if (!dataSet.getRejects().isEmpty()) {
+                rejects = rejects.plus(dataSet.getRejects());
+                rejectsFiles.add(RefuelFileLoader.rejectsFileOf(dataSet.getFile()));
+            }
+            duplicateCount += dataSet.getDuplicateCount();
+        }
+
+        String rejectsText = null;
+        if (rejectsFiles.size() == 1) {
+            rejectsText = "Skipped " + rejects.getTotal() + " invalid lines (" + rejects + "), see "
+                    + rejectsFiles.get(0).getName();
+        } else if (rejectsFiles.size() > 1) {
+            rejectsText = "Skipped " + rejects.getTotal() + " invalid lines (" + rejects + ") in "
+                    + rejectsFiles.size() + " files, see their " + RefuelFileLoader.REJECTS_SUFFIX + " files";
+        }
+        if (duplicateCount > 0) {
+            String duplicatesText = "Dropped " + duplicateCount + " duplicate records";
+            rejectsText = rejectsText == null ? duplicatesText : rejectsText + ". " + duplicatesText;
+        }
+        rejectsLabel.setText(rejectsText);
+    }
+
+    private void showLoadError(String vehicle, Throwable exception) {
+        exception.printStackTrace();
+        String prefix = refuelDataSets.size() > 1 ? vehicle + ": " : "";
+        if (exception instanceof RefuelDataException) {
+            showErrorDialog(prefix + exception.getMessage());
+        } else {
+            showErrorDialog(prefix + "Invalid Data");
+        }
+    }
+
+    /**
+     * loads the file as the only vehicle on the calling thread
+     */
     public void fillRefuelInfoList(File file) throws Exception {
-        refuelInfoList = new ArrayList<>();
-        try {
-            Stream<String> stream = Files.lines(Paths.get(file.getAbsolutePath()), StandardCharsets.UTF_8);
-            stream.forEach(s -> refuelInfoList.add(generateRefuelnfo(s)));
-        } catch (Exception e) {
-            throw e;
+        RefuelDataSet dataSet = newDataSet(file);
+        dataSet.load(LoadProgressListener.NONE);
+        useSingleDataSet(vehicleNameOf(file), dataSet);
+    }
+
+    /**
+     * parses only the lines appended since the last load, unless the file was replaced or rewritten
+     */
+    public void updateRefuelInfoList(File file) throws Exception {
+        for (Map.Entry<String, RefuelDataSet> entry : refuelDataSets.entrySet()) {
+            if (file.equals(entry.getValue().getFile())) {
+                entry.getValue().update(LoadProgressListener.NONE);
+                refuelChartDataByVehicle.put(entry.getKey(), entry.getValue().snapshot());
+                publishChartData();
+                updateShownChartData();
+                return;
+            }
         }
+        fillRefuelInfoList(file);
+    }
+
+    private void useSingleDataSet(String vehicle, RefuelDataSet dataSet) {
+        refuelDataSets = new LinkedHashMap<>();
+        refuelDataSets.put(vehicle, dataSet);
+        refuelChartDataByVehicle = new HashMap<>();
+        refuelChartDataByVehicle.put(vehicle, dataSet.snapshot());
+        publishChartData();
+        selectedVehicle = RefuelConstants.VEHICLE_ALL;
+        updateShownChartData();
     }
 
     private void showErrorDialog(String message) {
@@ -188,7 +656,7 @@ public class RefuelController {
     }
 
     private void fillFuelTypeComboBox() {
-        Set<String> distinctFuelTypes = refuelInfoList.stream().map(elem -> elem.getFuelName()).collect(Collectors.toSet());
+        Set<String> distinctFuelTypes = new HashSet<>(refuelChartData.getFuelTypes());
         distinctFuelTypes.add(RefuelConstants.FUEL_TYPE_ALL);
 
         if (fuelTypeComboBox.getItems() != null) {
@@ -199,55 +667,71 @@ public class RefuelController {
     }
 
     private void generateBarChart(String fuelType) {
+        long startNanos = System.nanoTime();
+        try {
+            shownChartPage = refuelChartData.page(fuelType, selectedGranularity, selectedPage);
+            previousPageButton.setDisable(shownChartPage == null || !shownChartPage.hasPreviousPage());
+            nextPageButton.setDisable(shownChartPage == null || !shownChartPage.hasNextPage());
+
+            // e.g. a vehicle whose data file is still loading
+            if (shownChartPage == null) {
+                loadEmptyRefuelBarChart();
+                return;
+            }
 
-        removeOldBarChartData();
-        removeOldBarChartDataLabels();
-
-        Map<Integer, Double> refuelingByMonth = createRefuelingByMonth(fuelType);
-
-        Double maxValue = getMaxOfRefuelingByMonth(refuelingByMonth);
-        Double minValue = getMinOfRefuelingByMonth(refuelingByMonth);
-
-        setUpperBoundAccordingToMaxValue(maxValue);
-        generateDataSeriesWithRefuelingByMonth(refuelingByMonth, maxValue, minValue);
+            xAxis.setLabel(selectedGranularity.getDisplayName());
+            refuelBarChart.setTitle(shownChartPage.getTitle());
+            showChartPage();
+        } finally {
+            RefuelMetrics.get().rendered(System.nanoTime() - startNanos);
+        }
     }
 
     /**
-     * remove old data
+     * shows the selected metric of the shown page
      */
-    private void removeOldBarChartData() {
-        if (refuelBarChart.getData() != null && refuelBarChart.getData().size() > 0) {
-            refuelBarChart.getData().remove(0);
+    private void showChartPage() {
+        if (shownChartPage == null) {
+            return;
         }
+        yAxis.setLabel(selectedMetric.getAxisLabel());
+        setUpperBoundAccordingToMaxValue(shownChartPage.getMaxValue(selectedMetric));
+        refuelBarSeries.show(shownChartPage, selectedMetric);
     }
 
     /**
-     * remove old data labels
+     * put the upperbound a little higher than the maximum so that the value of it can still be seen, a page without
+     * refuelings keeps the upperbound of the page before
      */
-    private void removeOldBarChartDataLabels() {
-        if (groupOfPanesAndLabels != null && groupOfPanesAndLabels.getChildren() != null) {
-            groupOfPanesAndLabels.getChildren().clear();
+    private void setUpperBoundAccordingToMaxValue(Double maxValue) {
+        if (maxValue == null) {
+            return;
+        }
+        double upperBound = maxValue + (maxValue / 10);
+        if (upperBound >= 10) {
+            yAxis.setUpperBound(Math.round(upperBound));
+            // the default of the axis
+            yAxis.setTickUnit(5);
+        } else {
+            // e.g. prices per liter, which rounding would cut off
+            yAxis.setUpperBound(upperBound);
+            yAxis.setTickUnit(upperBound / 5);
         }
     }
 
     /**
-     * put the upperbound a little higher than the maximum so that the value of it can still be seen
+     * returns money spent on refuelings grouped by month in the year of the latest refueling
      */
-    private void setUpperBoundAccordingToMaxValue(Double maxValue) {
-        yAxis.setUpperBound(Math.round(maxValue + (maxValue / 10)));
+    public Map<Integer, Double> createRefuelingByMonth(String fuelType) {
+        Integer lastYear = refuelChartData.getLastYear();
+        return lastYear == null ? new HashMap<>() : createRefuelingByMonth(fuelType, lastYear);
     }
 
     /**
-     * returns money spent on refuelings grouped by month
+     * returns money spent on refuelings grouped by month in the given year
      */
-    public Map<Integer, Double> createRefuelingByMonth(String fuelType) {
-        Stream<RefuelInfo> refuelInfoStream = refuelInfoList.stream();
-        if (!RefuelConstants.FUEL_TYPE_ALL.equals(fuelType)) {
-            refuelInfoStream = refuelInfoStream.filter(r -> r.getFuelName().equals(fuelType));
-        }
-
-        return refuelInfoStream.collect(Collectors.groupingBy(refuelInfo -> refuelInfo.getRefuellingDate().getMonthValue(),
-                Collectors.summingDouble(refuelInfo -> refuelInfo.getFuelPrice() * refuelInfo.getFuelAmount())));
+    public Map<Integer, Double> createRefuelingByMonth(String fuelType, int year) {
+        return refuelChartData.getRefuelingByMonth(fuelType, year);
     }
 
     /**
@@ -264,116 +748,11 @@ public class RefuelController {
         return refuelingByMonth.entrySet().stream().min(Map.Entry.comparingByValue()).get().getValue();
     }
 
-    /**
-     * generate and add the data to the refuel bar chart
-     */
-    private void generateDataSeriesWithRefuelingByMonth(Map<Integer, Double> refuelingByMonth, Double maxValue, Double minValue) {
-        XYChart.Series dataSeries = new XYChart.Series();
-        for (Month monthEnum : Month.values()) {
-            Double yValue;
-            if (!refuelingByMonth.keySet().contains(monthEnum.getValue())) {
-                yValue = new Double(0);
-            } else {
-                yValue = refuelingByMonth.get(monthEnum.getValue());
-            }
-
-            XYChart.Data<String, Number> data = new XYChart.Data((Month.of(monthEnum.getValue())).toString(), yValue);
-            data.nodeProperty().addListener(new ChangeListener<Node>() {
-                @Override
-                public void changed(ObservableValue<? extends Node> ov, Node oldNode, final Node node) {
-                    if (node != null) {
-                        setNodeStyle(data, maxValue, minValue);
-                        displayLabelForData(data);
-                    }
-                }
-            });
-            dataSeries.getData().add(data);
-        }
-
-        refuelBarChart.getData().add(dataSeries);
-    }
-
-    /**
-     * coloring for different data values
-     */
-    private void setNodeStyle(XYChart.Data<String, Number> data, Double maxValue, Double minValue) {
-        Node node = data.getNode();
-        if (data.getYValue().doubleValue() == maxValue.doubleValue()) {
-            node.setStyle("-fx-bar-fill: -fx-max-value;");
-        } else if (data.getYValue().doubleValue() == minValue.doubleValue()) {
-            node.setStyle("-fx-bar-fill: -fx-min-value;");
-        } else {
-            node.setStyle("-fx-bar-fill: -fx-middle-value;");
-        }
-    }
-
-    /**
-     * spent money will be displayed on top of the bars of the chart
-     */
-    private void displayLabelForData(XYChart.Data<String, Number> data) {
-
-        DecimalFormat df = new DecimalFormat("0.000");
-        df.setRoundingMode(RoundingMode.CEILING);
-
-        final Node node = data.getNode();
-        final Text dataText = new Text(df.format(data.getYValue()) + "");
-        node.parentProperty().addListener(new ChangeListener<Parent>() {
-            @Override
-            public void changed(ObservableValue<? extends Parent> ov, Parent oldParent, Parent parent) {
-                Group parentGroup = (Group) parent;
-                if (parentGroup != null && parentGroup.getChildren() != null) {
-                    parentGroup.getChildren().add(dataText);
-                    groupOfPanesAndLabels = parentGroup;
-                }
-            }
-        });
-
-        node.boundsInParentProperty().addListener(new ChangeListener<Bounds>() {
-            @Override
-            public void changed(ObservableValue<? extends Bounds> ov, Bounds oldBounds, Bounds bounds) {
-                dataText.setLayoutX(
-                        Math.round(
-                                bounds.getMinX() + bounds.getWidth() / 2 - dataText.prefWidth(-1) / 2
-                        )
-                );
-                dataText.setLayoutY(
-                        Math.round(
-                                bounds.getMinY() - dataText.prefHeight(-1) * 0.5
-                        )
-                );
-            }
-        });
-    }
-
     /**
      * creates Refuelnfo object from the line of string
      */
     public RefuelInfo generateRefuelnfo(String line) {
-        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("dd.MM.yyyy");
-        List valueList = Stream.of(line.split("\\|")).map(elem -> new String(elem)).collect(Collectors.toList());
-
-        RefuelInfo refuelInfo = new RefuelInfo();
-        refuelInfo.setFuelName((String) valueList.get(0));
-
-        NumberFormat format = NumberFormat.getInstance(Locale.FRANCE);
-        try {
-            Number fuelPrice = format.parse(((String) valueList.get(1)).replace('.', ','));
-            refuelInfo.setFuelPrice(fuelPrice.doubleValue());
-
-            Number fuelAmount = format.parse(((String) valueList.get(2)).replace('.', ','));
-            refuelInfo.setFuelAmount(fuelAmount.doubleValue());
-
-        } catch (ParseException e) {
-            throw new RefuelDataException("There is an error in Fuel Price/Amount Values");
-        }
-
-        refuelInfo.setRefuellingDate(LocalDate.parse((String) valueList.get(3), formatter));
-
-        if (refuelInfo.getFuelPrice().doubleValue() < 0 || refuelInfo.getFuelAmount().doubleValue() < 0) {
-            throw new RefuelDataException("Values Cannot Be Negative");
-        }
-
-        return refuelInfo;
+        return refuelLineParser.parse(line);
     }
 
     public MainApp getMainApp() {
@@ -388,11 +767,23 @@ public class RefuelController {
         return fuelTypeComboBox;
     }
 
+    /**
+     * returns the loaded records of all vehicles, only the ones of the tails when only the aggregates are kept
+     */
     public List<RefuelInfo> getRefuelInfoList() {
+        if (refuelDataSets.size() == 1) {
+            return refuelDataSets.values().iterator().next().getColumns().asList();
+        }
+        List<RefuelInfo> refuelInfoList = new ArrayList<>();
+        for (RefuelDataSet dataSet : refuelDataSets.values()) {
+            refuelInfoList.addAll(dataSet.getColumns().asList());
+        }
         return refuelInfoList;
     }
 
     public void setRefuelInfoList(List<RefuelInfo> refuelInfoList) {
-        this.refuelInfoList = refuelInfoList;
+        RefuelDataSet dataSet = new RefuelDataSet(null, refuelFileLoader);
+        dataSet.replace(RefuelColumns.of(refuelInfoList));
+        useSingleDataSet(RefuelConstants.VEHICLE_ALL, dataSet);
     }
 }
@@ -0,0 +1,32 @@
+package com.refuel.view;
+
+import com.refuel.business.aggregate.RefuelChartData;
+import com.refuel.business.load.LoadProgressListener;
+import com.refuel.business.load.RefuelDataSet;
+import javafx.concurrent.Task;
+
+/**
+ * Loads or updates a data set off the JavaFX application thread, reporting the parsed bytes as progress.
+ * Only the chart data snapshot of the result is handed back to the application thread.
+ */
+public class RefuelLoadTask extends Task<RefuelChartData> {
+
+    private final RefuelDataSet dataSet;
+    private final boolean fullLoad;
+
+    public RefuelLoadTask(RefuelDataSet dataSet, boolean fullLoad) {
+        this.dataSet = dataSet;
+        this.fullLoad = fullLoad;
+    }
+
+    @Override
+    protected RefuelChartData call() throws Exception {
+        LoadProgressListener progressListener = (loadedBytes, totalBytes) -> updateProgress(loadedBytes, totalBytes);
+        if (fullLoad) {
+            dataSet.load(progressListener);
+        } else {
+            dataSet.update(progressListener);
+        }
+        return dataSet.snapshot();
+    }
+}
@@ -0,0 +1,57 @@
+package com.refuel.view;
+
+import com.refuel.business.RefuelConstants;
+import com.refuel.business.aggregate.RefuelChartData;
+import javafx.concurrent.Task;
+
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Combines the chart data of the vehicles and cuts it to the date range off the JavaFX application thread, so that
+ * only the chart data to draw is handed back to the application thread.
+ */
+public class RefuelViewTask extends Task<RefuelChartData> {
+
+    private final Map<String, RefuelChartData> chartDataByVehicle;
+    private final String vehicle;
+    private final LocalDate fromDate;
+    private final LocalDate toDate;
+
+    /**
+     * the map is copied, its chart data are snapshots that the loads do not change
+     */
+    public RefuelViewTask(Map<String, RefuelChartData> chartDataByVehicle, String vehicle, LocalDate fromDate,
+                          LocalDate toDate) {
+        this.chartDataByVehicle = new HashMap<>(chartDataByVehicle);
+        this.vehicle = vehicle;
+        this.fromDate = fromDate;
+        this.toDate = toDate;
+    }
+
+    @Override
+    protected RefuelChartData call() {
+        return shownChartData(chartDataByVehicle, vehicle, fromDate, toDate);
+    }
+
+    /**
+     * returns the chart data of the vehicle, or of all vehicles combined, between the days (both inclusive); null
+     * does not limit the range
+     */
+    static RefuelChartData shownChartData(Map<String, RefuelChartData> chartDataByVehicle, String vehicle,
+                                          LocalDate fromDate, LocalDate toDate) {
+        RefuelChartData chartData;
+        if (RefuelConstants.VEHICLE_ALL.equals(vehicle)) {
+            chartData = RefuelChartData.merge(chartDataByVehicle.values());
+        } else {
+            chartData = chartDataByVehicle.getOrDefault(vehicle, RefuelChartData.EMPTY);
+        }
+        if (fromDate != null || toDate != null) {
+            chartData = chartData.between(
+                    fromDate == null ? Integer.MIN_VALUE : (int) fromDate.toEpochDay(),
+                    toDate == null ? Integer.MAX_VALUE : (int) toDate.toEpochDay());
+        }
+        return chartData;
+    }
+}
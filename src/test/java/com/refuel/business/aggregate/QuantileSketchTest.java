@@ -0,0 +1,53 @@
+package com.refuel.business.aggregate;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.Matchers.closeTo;
+import static org.junit.Assert.assertThat;
+
+public class QuantileSketchTest {
+
+    @Test
+    public void bucketsShouldCoverEveryValueOnce() {
+        long[] values = {0, 63, 64, 127, 128, 129, 1000, 123_456_789, Long.MAX_VALUE};
+        for (long value : values) {
+            int index = QuantileSketch.indexOf(value);
+            assertThat(QuantileSketch.lowestOf(index) <= value, is(true));
+            if (value < Long.MAX_VALUE) {
+                assertThat(QuantileSketch.lowestOf(index + 1) > value, is(true));
+            }
+            assertThat((double) QuantileSketch.middleOf(index), is(closeTo(value, value / 100.0)));
+        }
+    }
+
+    @Test
+    public void mergedSketchesShouldHaveQuantilesOfAllValues() throws Exception {
+        QuantileSketch first = new QuantileSketch();
+        QuantileSketch second = new QuantileSketch();
+        for (long value = 1; value <= 1000; value++) {
+            (value % 2 == 0 ? first : second).add(value * 10_000, 1);
+        }
+        QuantileSketch merged = new QuantileSketch();
+        merged.addAll(first);
+        merged.addAll(second);
+
+        assertThat(merged.getTotalCount(), is(equalTo(1000L)));
+        assertThat((double) merged.quantile(0.5), is(closeTo(5_000_000, 50_000)));
+        assertThat((double) merged.quantile(0.95), is(closeTo(9_500_000, 95_000)));
+
+        second.add(999 * 10_000L, -1);
+        merged.add(999 * 10_000L, -1);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        merged.writeTo(new DataOutputStream(bytes));
+        QuantileSketch read = QuantileSketch.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+        assertThat(read.getTotalCount(), is(equalTo(999L)));
+        assertThat(read.quantile(1.0), is(equalTo(merged.quantile(1.0))));
+    }
+}
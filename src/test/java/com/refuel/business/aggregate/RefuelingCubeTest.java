@@ -0,0 +1,199 @@
+package com.refuel.business.aggregate;
+
+import com.refuel.business.RefuelConstants;
+import com.refuel.business.exception.RefuelDataException;
+import com.refuel.business.time.Granularity;
+import com.refuel.model.RefuelColumns;
+import com.refuel.model.RefuelInfo;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.time.LocalDate;
+import java.util.Arrays;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class RefuelingCubeTest {
+
+    @Test
+    public void removedRowsShouldUpdateSpendingAndExtremes() {
+        RefuelColumns columns = RefuelColumns.of(Arrays.asList(
+                new RefuelInfo("98", 3.0, 50.00, LocalDate.of(2016, 1, 1)),
+                new RefuelInfo("95", 2.0, 40.00, LocalDate.of(2016, 1, 1)),
+                new RefuelInfo("D", 1.5, 10.00, LocalDate.of(2016, 2, 1))));
+        RefuelingCube cube = RefuelingCube.of(columns);
+        RefuelChartPage page = cube.snapshot().page(RefuelConstants.FUEL_TYPE_ALL, Granularity.MONTH, null);
+        assertThat(page.getMaxSpent(), is(equalTo(230.0)));
+        assertThat(page.getMinSpent(), is(equalTo(15.0)));
+
+        cube.remove(columns, 2, 3);
+        columns.truncate(2);
+        RefuelChartData chartData = cube.snapshot();
+        assertThat(chartData.page(RefuelConstants.FUEL_TYPE_ALL, Granularity.MONTH, null).getMinSpent(),
+                is(equalTo(230.0)));
+        assertThat(chartData.page("D", Granularity.MONTH, null), is(nullValue()));
+        assertThat(cube.getFuelTypes(), containsInAnyOrder("98", "95"));
+
+        columns.add(new RefuelInfo("E85", 2.0, 30.00, LocalDate.of(2016, 11, 1)));
+        cube.add(columns, 2, 3);
+        chartData = cube.snapshot();
+        assertThat(chartData.getRefuelingByMonth("E85", 2016).get(11), is(equalTo(60.0)));
+        assertThat(chartData.page(RefuelConstants.FUEL_TYPE_ALL, Granularity.MONTH, null).getMinSpent(),
+                is(equalTo(60.0)));
+    }
+
+    @Test
+    public void sameMonthOfDifferentYearsShouldBeSeparateBuckets() {
+        RefuelColumns columns = RefuelColumns.of(Arrays.asList(
+                new RefuelInfo("98", 1.0, 10.00, LocalDate.of(2016, 1, 5)),
+                new RefuelInfo("98", 1.0, 20.00, LocalDate.of(2019, 1, 5)),
+                new RefuelInfo("98", 1.0, 40.00, LocalDate.of(2019, 3, 31))));
+        RefuelChartData chartData = RefuelingCube.of(columns).snapshot();
+
+        assertThat(chartData.getRefuelingByMonth("98", 2016).get(1), is(equalTo(10.0)));
+        assertThat(chartData.getRefuelingByMonth("98", 2019).get(1), is(equalTo(20.0)));
+        assertThat(chartData.getLastYear(), is(equalTo(2019)));
+
+        RefuelChartPage latestQuarters = chartData.page("98", Granularity.QUARTER, null);
+        assertThat(latestQuarters.getTitle(), is(equalTo("2019")));
+        assertThat(latestQuarters.getSpent(0), is(equalTo(60.0)));
+        assertThat(latestQuarters.hasPreviousPage(), is(true));
+        assertThat(latestQuarters.hasNextPage(), is(false));
+
+        RefuelChartPage firstYear = chartData.page("98", Granularity.MONTH, 2010);
+        assertThat(firstYear.getPage(), is(equalTo(2016)));
+        assertThat(firstYear.getLabel(0), is(equalTo("JANUARY")));
+        assertThat(firstYear.getBucketCount(), is(equalTo(12)));
+
+        RefuelChartPage years = chartData.page("98", Granularity.YEAR, null);
+        assertThat(years.getBucketCount(), is(equalTo(4)));
+        assertThat(years.getLabel(3), is(equalTo("2019")));
+        assertThat(years.getSpent(3), is(equalTo(60.0)));
+        assertThat(years.hasRefuelings(1), is(false));
+
+        RefuelChartPage days = chartData.page("98", Granularity.DAY, null);
+        assertThat(days.getTitle(), is(equalTo("MARCH 2019")));
+        assertThat(days.getBucketCount(), is(equalTo(31)));
+        assertThat(days.getSpent(30), is(equalTo(40.0)));
+    }
+
+    @Test
+    public void datesCenturiesApartShouldKeepTheirSpending() throws Exception {
+        RefuelColumns columns = RefuelColumns.of(Arrays.asList(
+                new RefuelInfo("98", 1.0, 10.00, LocalDate.of(2016, 1, 5)),
+                new RefuelInfo("98", 1.0, 20.00, LocalDate.of(9019, 1, 2)),
+                new RefuelInfo("95", 1.0, 30.00, LocalDate.of(1, 3, 1))));
+        RefuelingCube cube = RefuelingCube.of(columns);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        cube.writeTo(new DataOutputStream(bytes));
+        assertThat(bytes.size() < 1024, is(true));
+        RefuelChartData chartData = RefuelingCube.readFrom(new DataInputStream(
+                new ByteArrayInputStream(bytes.toByteArray())), columns.getFuelTypes()).snapshot();
+
+        assertThat(chartData.getLastYear(), is(equalTo(9019)));
+        assertThat(chartData.getRefuelingByMonth("98", 9019).get(1), is(equalTo(20.0)));
+        assertThat(chartData.getRefuelingByMonth("98", 2016).get(1), is(equalTo(10.0)));
+        assertThat(chartData.getRefuelingByMonth(RefuelConstants.FUEL_TYPE_ALL, 1).get(3), is(equalTo(30.0)));
+        assertThat(chartData.page("98", Granularity.MONTH, 2017).getPage(), is(equalTo(2017)));
+
+        RefuelChartData year2016 = chartData.between((int) LocalDate.of(2016, 1, 1).toEpochDay(),
+                (int) LocalDate.of(2016, 12, 31).toEpochDay());
+        assertThat(year2016.getLastYear(), is(equalTo(2016)));
+        assertThat(year2016.page(RefuelConstants.FUEL_TYPE_ALL, Granularity.MONTH, null).getSpent(0),
+                is(equalTo(10.0)));
+    }
+
+    @Test
+    public void spendingThatDoesNotFitShouldNotBeAddedUp() {
+        // each refueling spends 10^10, about a ninth of what a long holds in spending units
+        RefuelColumns columns = new RefuelColumns();
+        for (int day = 1; day <= 10; day++) {
+            columns.add(new RefuelInfo("98", 100000.0, 100000.0, LocalDate.of(2016, 1, day)));
+        }
+        RefuelChartData chartData = RefuelingCube.of(columns).snapshot();
+        assertThat(chartData.page("98", Granularity.DAY, null).getSpent(9), is(equalTo(1.0E10)));
+        try {
+            chartData.page("98", Granularity.MONTH, null);
+            fail("RefuelDataException expected");
+        } catch (RefuelDataException e) {
+            assertThat(e.getMessage(), is(equalTo("Fuel Spending/Amount Is Too Large To Be Added Up")));
+        }
+
+        for (int refueling = 1; refueling <= 10; refueling++) {
+            columns.add(new RefuelInfo("95", 100000.0, 100000.0, LocalDate.of(2016, 2, 1)));
+        }
+        try {
+            RefuelingCube.of(columns);
+            fail("RefuelDataException expected");
+        } catch (RefuelDataException e) {
+            assertThat(e.getMessage(), is(equalTo("Fuel Spending/Amount Is Too Large To Be Added Up")));
+        }
+    }
+
+    @Test
+    public void spendingShouldBeExactInAnyOrder() {
+        RefuelInfo first = new RefuelInfo("98", 1.319, 50.56, LocalDate.of(2016, 1, 1));
+        RefuelInfo second = new RefuelInfo("98", 1.219, 0.1, LocalDate.of(2016, 1, 2));
+        RefuelInfo third = new RefuelInfo("95", 0.3, 0.2, LocalDate.of(2016, 1, 3));
+        RefuelChartPage forward = RefuelingCube.of(RefuelColumns.of(Arrays.asList(first, second, third))).snapshot()
+                .page(RefuelConstants.FUEL_TYPE_ALL, Granularity.MONTH, null);
+        RefuelChartPage backward = RefuelingCube.of(RefuelColumns.of(Arrays.asList(third, second, first))).snapshot()
+                .page(RefuelConstants.FUEL_TYPE_ALL, Granularity.MONTH, null);
+
+        // 66.68864 + 0.1219 + 0.06
+        assertThat(forward.getSpentUnits(0), is(equalTo(6687054000L)));
+        assertThat(backward.getSpentUnits(0), is(equalTo(forward.getSpentUnits(0))));
+        assertThat(forward.getSpent(0), is(equalTo(66.87054)));
+        assertThat(forward.isMaxSpent(0), is(true));
+        assertThat(forward.isMinSpent(0), is(true));
+        assertThat(forward.isMaxSpent(1), is(false));
+    }
+
+    @Test
+    public void everyMetricShouldBeMergedFromTheDaysOfTheBucket() {
+        RefuelColumns columns = RefuelColumns.of(Arrays.asList(
+                new RefuelInfo("98", 1.5, 40.00, LocalDate.of(2016, 1, 1)),
+                new RefuelInfo("98", 1.2, 10.00, LocalDate.of(2016, 1, 2)),
+                new RefuelInfo("98", 1.3, 20.00, LocalDate.of(2016, 1, 2)),
+                new RefuelInfo("98", 1.4, 30.00, LocalDate.of(2016, 2, 1))));
+        RefuelChartPage page = RefuelingCube.of(columns).snapshot().page("98", Granularity.MONTH, null);
+
+        assertThat(page.getValue(ChartMetric.REFUEL_COUNT, 0), is(equalTo(3.0)));
+        assertThat(page.getValue(ChartMetric.LITERS, 0), is(equalTo(70.0)));
+        // (60 + 12 + 26) / 70
+        assertThat(page.getValue(ChartMetric.AVERAGE_PRICE, 0), is(equalTo(1.4)));
+        assertThat(page.getValue(ChartMetric.MIN_PRICE, 0), is(equalTo(1.2)));
+        assertThat(page.getValue(ChartMetric.MAX_PRICE, 0), is(equalTo(1.5)));
+        assertThat(page.getValue(ChartMetric.MEDIAN_FILL, 0), is(closeTo(20.0, 0.2)));
+        assertThat(page.getValue(ChartMetric.P95_FILL, 0), is(closeTo(40.0, 0.4)));
+        assertThat(page.isMax(ChartMetric.LITERS, 0), is(true));
+        assertThat(page.isMin(ChartMetric.MIN_PRICE, 0), is(true));
+        assertThat(page.isMax(ChartMetric.MIN_PRICE, 1), is(true));
+        assertThat(page.getValue(ChartMetric.MIN_PRICE, 2), is(equalTo(0.0)));
+    }
+
+    @Test
+    public void removedRowWithExtremePriceShouldMakeCubeStale() {
+        RefuelColumns columns = RefuelColumns.of(Arrays.asList(
+                new RefuelInfo("98", 1.2, 10.00, LocalDate.of(2016, 1, 1)),
+                new RefuelInfo("98", 1.3, 10.00, LocalDate.of(2016, 1, 1)),
+                new RefuelInfo("98", 1.4, 10.00, LocalDate.of(2016, 1, 1)),
+                new RefuelInfo("98", 1.25, 10.00, LocalDate.of(2016, 1, 1))));
+        RefuelingCube cube = RefuelingCube.of(columns);
+
+        cube.remove(columns, 3, 4);
+        assertThat(cube.isStale(), is(false));
+        cube.remove(columns, 2, 3);
+        assertThat(cube.isStale(), is(true));
+    }
+}
@@ -0,0 +1,50 @@
+package com.refuel.business.dedup;
+
+import com.refuel.model.RefuelColumns;
+import com.refuel.model.RefuelInfo;
+import org.junit.Test;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.Matchers.contains;
+import static org.junit.Assert.assertThat;
+
+public class RecordDeduplicatorTest {
+
+    @Test
+    public void setShouldKeepEveryKeyWhileGrowing() {
+        LongHashSet set = new LongHashSet();
+        for (long key = -50000; key < 50000; key += 2) {
+            assertThat(set.add(key), is(true));
+        }
+        assertThat(set.size(), is(equalTo(50000)));
+        assertThat(set.add(0), is(false));
+        assertThat(set.contains(-50000), is(true));
+        assertThat(set.contains(49998), is(true));
+        assertThat(set.contains(1), is(false));
+    }
+
+    @Test
+    public void recordsSeenBeforeShouldBeDroppedWhateverTheirDictionary() {
+        RefuelColumns stored = RefuelColumns.of(Arrays.asList(
+                new RefuelInfo("98", 1.319, 50.56, LocalDate.of(2016, 1, 1)),
+                new RefuelInfo("D", 1.0, 10.0, LocalDate.of(2016, 1, 31))));
+        RecordDeduplicator deduplicator = new RecordDeduplicator();
+        deduplicator.addAll(stored, 0, stored.size());
+
+        // the next export repeats the last day, with other fuel type ids
+        RefuelColumns next = RefuelColumns.of(Arrays.asList(
+                new RefuelInfo("D", 1.0, 10.0, LocalDate.of(2016, 1, 31)),
+                new RefuelInfo("98", 1.4, 20.0, LocalDate.of(2016, 2, 1)),
+                new RefuelInfo("98", 1.4, 20.0, LocalDate.of(2016, 2, 1)),
+                new RefuelInfo("98", 1.4, 20.0, LocalDate.of(2016, 2, 2))));
+        assertThat(deduplicator.dropDuplicates(next, 0, next.size()), is(equalTo(2)));
+        assertThat(next.asList(), contains(
+                new RefuelInfo("98", 1.4, 20.0, LocalDate.of(2016, 2, 1)),
+                new RefuelInfo("98", 1.4, 20.0, LocalDate.of(2016, 2, 2))));
+        assertThat(deduplicator.size(), is(equalTo(4)));
+    }
+}
@@ -0,0 +1,381 @@
+package com.refuel.business.load;
+
+import com.refuel.business.exception.RefuelDataError;
+import com.refuel.business.exception.RefuelDataException;
+import com.refuel.model.RefuelColumns;
+import com.refuel.model.RefuelInfo;
+import io.airlift.compress.zstd.ZstdOutputStream;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.GZIPOutputStream;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.Matchers.contains;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class RefuelFileLoaderTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    // Small chunks so that every test file is split into several chunks.
+    private final RefuelFileLoader loader = new RefuelFileLoader(ForkJoinPool.commonPool(), 8);
+
+    @Test
+    public void recordsShouldKeepLineOrderAcrossChunks() throws Exception {
+        File file = write("98|1.319|50.56|01.01.2016\r\n95|1.319|45,32|15.01.2016\rD|1.219|5.00|01.02.2016\n"
+                + "E85|0.95|15,12|12.11.2016");
+
+        List<RefuelInfo> refuelInfoList = loader.load(file).getRecords().asList();
+
+        assertThat(refuelInfoList, contains(
+                new RefuelInfo("98", 1.319, 50.56, LocalDate.of(2016, 1, 1)),
+                new RefuelInfo("95", 1.319, 45.32, LocalDate.of(2016, 1, 15)),
+                new RefuelInfo("D", 1.219, 5.00, LocalDate.of(2016, 2, 1)),
+                new RefuelInfo("E85", 0.95, 15.12, LocalDate.of(2016, 11, 12))));
+    }
+
+    @Test
+    public void firstInvalidLineShouldBeReported() throws Exception {
+        File file = write("98|1.319|50.56|01.01.2016\n95|1.319|45,32|15.01.2016\n95|-1|5.00|01.04.2016\n"
+                + "D|asd|5.00|01.02.2016\n");
+
+        try {
+            loader.load(file);
+            fail("RefuelDataException expected");
+        } catch (RefuelDataException e) {
+            assertThat(e.getLineNumber(), is(equalTo(3L)));
+            assertThat(e.getMessage(), is(equalTo("Line 3: Values Cannot Be Negative")));
+            assertThat(e.getError(), is(equalTo(RefuelDataError.NEGATIVE_VALUE)));
+        }
+    }
+
+    @Test
+    public void emptyFileShouldHaveNoRecords() throws Exception {
+        assertThat(loader.load(write("")).getRecords().size(), is(equalTo(0)));
+    }
+
+    @Test
+    public void appendedLinesShouldBeLoadedIncrementally() throws Exception {
+        File file = write("98|1.319|50.56|01.01.2016\nD|1.219|5.00|01.02.2016");
+        RefuelLoadResult first = loader.update(file, null);
+        assertThat(first.isIncremental(), is(false));
+        assertThat(first.getState().getTailRecordCount(), is(equalTo(1)));
+
+        append(file, "\nE85|0.95|15,12|12.11.2016\n");
+        RefuelLoadResult second = loader.update(file, first.getState());
+        assertThat(second.isIncremental(), is(true));
+        assertThat(second.getRetractedRecordCount(), is(equalTo(1)));
+
+        List<RefuelInfo> refuelInfoList = second.applyTo(first.getRecords()).asList();
+        assertThat(refuelInfoList, contains(
+                new RefuelInfo("98", 1.319, 50.56, LocalDate.of(2016, 1, 1)),
+                new RefuelInfo("D", 1.219, 5.00, LocalDate.of(2016, 2, 1)),
+                new RefuelInfo("E85", 0.95, 15.12, LocalDate.of(2016, 11, 12))));
+    }
+
+    @Test
+    public void unfinishedLineShouldWaitForTheNextUpdate() throws Exception {
+        File file = write("98|1.319|50.56|01.01.2016\nD|1.219|5.0");
+        RefuelLoadResult first = loader.update(file, null);
+        assertThat(first.getRecords().size(), is(equalTo(1)));
+
+        append(file, "0|01.02.2016\n");
+        RefuelLoadResult second = loader.update(file, first.getState());
+        assertThat(second.isIncremental(), is(true));
+        assertThat(second.getRecords().asList(), contains(new RefuelInfo("D", 1.219, 5.00, LocalDate.of(2016, 2, 1))));
+    }
+
+    @Test(expected = RefuelDataException.class)
+    public void unfinishedLineShouldBeReportedOnFullLoad() throws Exception {
+        loader.load(write("98|1.319|50.56|01.01.2016\nD|1.219|5.0"));
+    }
+
+    @Test
+    public void rewrittenFileShouldBeLoadedAgain() throws Exception {
+        File file = write("98|1.319|50.56|01.01.2016\n");
+        RefuelLoadResult first = loader.load(file);
+
+        Files.write(file.toPath(), "95|1.319|45,32|15.01.2016\nD|1.219|5.00|01.02.2016\n".getBytes(StandardCharsets.UTF_8));
+        RefuelLoadResult second = loader.update(file, first.getState());
+        assertThat(second.isIncremental(), is(false));
+        assertThat(second.getRecords().size(), is(equalTo(2)));
+    }
+
+    @Test
+    public void sameLengthEditInTheMiddleShouldLoadFileAgain() throws Exception {
+        StringBuilder content = new StringBuilder();
+        for (int line = 1; line <= 20000; line++) {
+            content.append(line == 5000 ? "95|1.319|45.32|15.01.2016\n" : "98|1.319|50.56|01.01.2016\n");
+        }
+        File file = write(content.toString());
+        RefuelLoadResult first = loader.load(file);
+
+        Files.write(file.toPath(), content.toString().replace("95|1.319|", "95|1.419|")
+                .getBytes(StandardCharsets.UTF_8));
+        Files.setLastModifiedTime(file.toPath(), FileTime.fromMillis(first.getState().getLastModified() + 2000));
+        RefuelLoadResult second = loader.update(file, first.getState());
+
+        assertThat(second.isIncremental(), is(false));
+        assertThat(second.getRecords().getFuelPrice(4999), is(equalTo(1.419)));
+    }
+
+    @Test
+    public void editAtTheStartShouldLoadGrownFileAgain() throws Exception {
+        StringBuilder content = new StringBuilder("95|1.319|45.32|15.01.2016\n");
+        for (int line = 2; line <= 1000; line++) {
+            content.append("98|1.319|50.56|01.01.2016\n");
+        }
+        File file = write(content.toString());
+        RefuelLoadResult first = loader.load(file);
+
+        Files.write(file.toPath(), (content.toString().replace("95|1.319|", "95|1.419|")
+                + "D|1.219|5.00|01.02.2016\n").getBytes(StandardCharsets.UTF_8));
+        RefuelLoadResult second = loader.update(file, first.getState());
+
+        assertThat(second.isIncremental(), is(false));
+        assertThat(second.getRecords().getFuelPrice(0), is(equalTo(1.419)));
+        assertThat(second.getRecords().size(), is(equalTo(1001)));
+    }
+
+    @Test
+    public void editAwayFromTheSampledBytesShouldLoadGrownFileAgain() throws Exception {
+        StringBuilder content = new StringBuilder();
+        for (int line = 1; line <= 1000; line++) {
+            content.append(line == 250 ? "95|1.319|45.32|15.01.2016\n" : "98|1.319|50.56|01.01.2016\n");
+        }
+        File file = write(content.toString());
+        RefuelLoadResult first = loader.load(file);
+
+        Files.write(file.toPath(), (content.toString().replace("95|1.319|", "95|1.419|")
+                + "D|1.219|5.00|01.02.2016\n").getBytes(StandardCharsets.UTF_8));
+        RefuelLoadResult second = loader.update(file, first.getState());
+
+        assertThat(second.isIncremental(), is(false));
+        assertThat(second.getRecords().getFuelPrice(249), is(equalTo(1.419)));
+        assertThat(second.getRecords().size(), is(equalTo(1001)));
+    }
+
+    @Test
+    public void gzipFileShouldBeLoadedInOrder() throws Exception {
+        File file = folder.newFile("fuel.txt.gz");
+        try (OutputStream out = new GZIPOutputStream(new FileOutputStream(file))) {
+            out.write(("98|1.319|50.56|01.01.2016\r\n95|1.319|45,32|15.01.2016\nD|1.219|5.00|01.02.2016\n"
+                    + "E85|0.95|15,12|12.11.2016").getBytes(StandardCharsets.UTF_8));
+        }
+
+        RefuelLoadResult result = loader.load(file);
+
+        assertThat(result.getRecords().asList(), contains(
+                new RefuelInfo("98", 1.319, 50.56, LocalDate.of(2016, 1, 1)),
+                new RefuelInfo("95", 1.319, 45.32, LocalDate.of(2016, 1, 15)),
+                new RefuelInfo("D", 1.219, 5.00, LocalDate.of(2016, 2, 1)),
+                new RefuelInfo("E85", 0.95, 15.12, LocalDate.of(2016, 11, 12))));
+        assertThat(result.getState().getTailRecordCount(), is(equalTo(1)));
+    }
+
+    @Test
+    public void zstdFileShouldReportInvalidLineNumber() throws Exception {
+        File file = folder.newFile("fuel.zst");
+        try (OutputStream out = new ZstdOutputStream(new FileOutputStream(file))) {
+            out.write("98|1.319|50.56|01.01.2016\n95|1.319|45,32|15.01.2016\nD|asd|5.00|01.02.2016\n"
+                    .getBytes(StandardCharsets.UTF_8));
+        }
+
+        try {
+            loader.load(file);
+            fail("RefuelDataException expected");
+        } catch (RefuelDataException e) {
+            assertThat(e.getLineNumber(), is(equalTo(3L)));
+            assertThat(e.getError(), is(equalTo(RefuelDataError.INVALID_NUMBER)));
+        }
+    }
+
+    @Test
+    public void lenientLoadShouldSkipAndCountInvalidLines() throws Exception {
+        File file = write("98|1.319|50.56|01.01.2016\n95|-1|5.00|01.04.2016\nD|asd|5.00|01.02.2016\n"
+                + "E85|0.95|15,12|12.11.2016\nD|1|2|32.01.2016\nD|1.219|5.0");
+        RefuelFileLoader lenientLoader = new RefuelFileLoader(ForkJoinPool.commonPool(), 8, true);
+
+        RefuelLoadResult first = lenientLoader.update(file, null);
+        assertThat(first.getRecords().asList(), contains(
+                new RefuelInfo("98", 1.319, 50.56, LocalDate.of(2016, 1, 1)),
+                new RefuelInfo("E85", 0.95, 15.12, LocalDate.of(2016, 11, 12))));
+        RejectCounts rejects = first.getState().getRejects();
+        assertThat(rejects.getTotal(), is(equalTo(3L)));
+        assertThat(rejects.get(RefuelDataError.INVALID_NUMBER), is(equalTo(1L)));
+        assertThat(rejects.toString(), is(equalTo("bad number: 1, negative value: 1, bad date: 1")));
+        assertThat(readRejects(file), contains("2\tNEGATIVE_VALUE\t95|-1|5.00|01.04.2016",
+                "3\tINVALID_NUMBER\tD|asd|5.00|01.02.2016", "5\tINVALID_DATE\tD|1|2|32.01.2016"));
+
+        // the unfinished line is counted once it is terminated, still invalid
+        append(file, "\n");
+        RefuelLoadResult second = lenientLoader.update(file, first.getState());
+        assertThat(second.isIncremental(), is(true));
+        assertThat(second.getState().getRejects().getTotal(), is(equalTo(4L)));
+        assertThat(readRejects(file).get(3), is(equalTo("6\tWRONG_COLUMN_COUNT\tD|1.219|5.0")));
+    }
+
+    @Test
+    public void lenientLoadShouldSkipNumbersWhoseSpendingWouldOverflow() throws Exception {
+        File file = write("98|1.319|50.56|01.01.2016\n95|1000000,00|1000000,00|02.01.2019\n"
+                + "D|100000|100000|01.02.2016\n98|1.319|-99999999999999999999|01.01.2016\n");
+        RefuelFileLoader lenientLoader = new RefuelFileLoader(ForkJoinPool.commonPool(), 8, true);
+
+        RefuelLoadResult result = lenientLoader.load(file);
+
+        assertThat(result.getRecords().asList(), contains(
+                new RefuelInfo("98", 1.319, 50.56, LocalDate.of(2016, 1, 1)),
+                new RefuelInfo("D", 100000.0, 100000.0, LocalDate.of(2016, 2, 1))));
+        assertThat(result.getState().getRejects().get(RefuelDataError.VALUE_TOO_LARGE), is(equalTo(1L)));
+        assertThat(readRejects(file), contains("2\tVALUE_TOO_LARGE\t95|1000000,00|1000000,00|02.01.2019",
+                "4\tNEGATIVE_VALUE\t98|1.319|-99999999999999999999|01.01.2016"));
+    }
+
+    @Test
+    public void lenientLoadWithoutInvalidLinesShouldRemoveRejectsFile() throws Exception {
+        File file = write("98|1.319|50.56|01.01.2016\nD|asd|5.00|01.02.2016\n");
+        RefuelFileLoader lenientLoader = new RefuelFileLoader(ForkJoinPool.commonPool(), 8, true);
+        lenientLoader.load(file);
+        assertThat(RefuelFileLoader.rejectsFileOf(file).isFile(), is(true));
+
+        Files.write(file.toPath(), "98|1.319|50.56|01.01.2016\n".getBytes(StandardCharsets.UTF_8));
+        RefuelLoadResult result = lenientLoader.load(file);
+        assertThat(result.getState().getRejects().isEmpty(), is(true));
+        assertThat(RefuelFileLoader.rejectsFileOf(file).exists(), is(false));
+    }
+
+    @Test
+    public void streamShouldHandOverCompleteLinesInOrderAndKeepOnlyTheTail() throws Exception {
+        File file = write("98|1.319|50.56|01.01.2016\n95|1.319|45,32|15.01.2016\nD|1.219|5.00|01.02.2016\n"
+                + "E85|0.95|15,12|12.11.2016");
+        List<RefuelInfo> streamed = new ArrayList<>();
+        List<Boolean> starts = new ArrayList<>();
+        RecordSink sink = new RecordSink() {
+            @Override
+            public void start(boolean incremental) {
+                starts.add(incremental);
+            }
+
+            @Override
+            public void accept(RefuelColumns records) {
+                streamed.addAll(records.asList());
+            }
+        };
+
+        RefuelLoadResult first = loader.stream(file, null, sink, LoadProgressListener.NONE);
+        assertThat(starts, contains(false));
+        assertThat(streamed, contains(
+                new RefuelInfo("98", 1.319, 50.56, LocalDate.of(2016, 1, 1)),
+                new RefuelInfo("95", 1.319, 45.32, LocalDate.of(2016, 1, 15)),
+                new RefuelInfo("D", 1.219, 5.00, LocalDate.of(2016, 2, 1))));
+        assertThat(first.getRecords().asList(), contains(new RefuelInfo("E85", 0.95, 15.12,
+                LocalDate.of(2016, 11, 12))));
+        assertThat(first.getState().getCompleteLineCount(), is(equalTo(3L)));
+
+        streamed.clear();
+        append(file, "\n");
+        RefuelLoadResult second = loader.stream(file, first.getState(), sink, LoadProgressListener.NONE);
+        assertThat(starts, contains(false, true));
+        assertThat(second.getRetractedRecordCount(), is(equalTo(1)));
+        assertThat(second.getRecords().size(), is(equalTo(0)));
+        assertThat(streamed, contains(new RefuelInfo("E85", 0.95, 15.12, LocalDate.of(2016, 11, 12))));
+    }
+
+    @Test
+    public void csvHeaderShouldBeFirstLineWithoutRecord() throws Exception {
+        File file = write("fuelName,fuelPrice,fuelAmount,refuellingDate\r\n98,1.319,50.56,2016-01-01\n"
+                + "95,1.319,\"45,32\",15.01.2016\n");
+        RefuelLoadResult first = loader.update(file, null);
+        assertThat(first.getRecords().size(), is(equalTo(2)));
+        assertThat(first.getState().getCompleteLineCount(), is(equalTo(3L)));
+
+        append(file, "D,1.219,5.00,2016-02-01\nE85,0.95,asd,2016-11-12\n");
+        try {
+            loader.update(file, first.getState());
+            fail("RefuelDataException expected");
+        } catch (RefuelDataException e) {
+            assertThat(e.getLineNumber(), is(equalTo(5L)));
+            assertThat(e.getError(), is(equalTo(RefuelDataError.INVALID_NUMBER)));
+        }
+    }
+
+    @Test
+    public void fileShouldHaveNoRecordsUntilHeaderIsComplete() throws Exception {
+        File file = write("fuelName,fuelPrice,fuel");
+        RefuelLoadResult first = loader.update(file, null);
+        assertThat(first.getRecords().size(), is(equalTo(0)));
+
+        append(file, "Amount,refuellingDate\nD,1.219,5.00,2016-02-01\n");
+        RefuelLoadResult second = loader.update(file, first.getState());
+        assertThat(second.getRecords().asList(), contains(
+                new RefuelInfo("D", 1.219, 5.00, LocalDate.of(2016, 2, 1))));
+        assertThat(second.getState().getCompleteLineCount(), is(equalTo(2L)));
+    }
+
+    @Test
+    public void formatShouldBeRecognizedByStartOfLongFirstLine() throws Exception {
+        StringBuilder note = new StringBuilder();
+        for (int i = 0; i < RefuelFileLoader.MAX_FIRST_LINE_LENGTH; i++) {
+            note.append('x');
+        }
+        File file = write("{\"fuelName\": \"98\", \"note\": \"" + note + "\", \"fuelPrice\": 1.319, "
+                + "\"fuelAmount\": 50.56, \"refuellingDate\": \"2016-01-01\"}");
+
+        assertThat(loader.load(file).getRecords().asList(), contains(
+                new RefuelInfo("98", 1.319, 50.56, LocalDate.of(2016, 1, 1))));
+
+        // a header longer than that cannot be read
+        File csvFile = write("fuelName,fuelPrice,fuelAmount,refuellingDate," + note + "\nD,1.219,5.00,2016-02-01\n");
+        try {
+            loader.load(csvFile);
+            fail("RefuelDataException expected");
+        } catch (RefuelDataException e) {
+            assertThat(e.getLineNumber(), is(equalTo(1L)));
+        }
+    }
+
+    @Test
+    public void gzipJsonLinesShouldBeLoadedInOrder() throws Exception {
+        File file = folder.newFile("fuel.jsonl.gz");
+        try (OutputStream out = new GZIPOutputStream(new FileOutputStream(file))) {
+            out.write(("{\"fuelName\": \"98\", \"fuelPrice\": 1.319, \"fuelAmount\": 50.56, "
+                    + "\"refuellingDate\": \"2016-01-01\"}\n"
+                    + "{\"fuelName\": \"E85\", \"fuelPrice\": 0.95, \"fuelAmount\": 15.12, "
+                    + "\"refuellingDate\": \"2016-11-12\"}\n").getBytes(StandardCharsets.UTF_8));
+        }
+
+        assertThat(loader.load(file).getRecords().asList(), contains(
+                new RefuelInfo("98", 1.319, 50.56, LocalDate.of(2016, 1, 1)),
+                new RefuelInfo("E85", 0.95, 15.12, LocalDate.of(2016, 11, 12))));
+    }
+
+    private List<String> readRejects(File file) throws Exception {
+        return Files.readAllLines(RefuelFileLoader.rejectsFileOf(file).toPath(), StandardCharsets.UTF_8);
+    }
+
+    private File write(String content) throws Exception {
+        File file = folder.newFile();
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    private void append(File file, String content) throws Exception {
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+    }
+}
@@ -0,0 +1,235 @@
+package com.refuel.business.load;
+
+import com.refuel.business.RefuelConstants;
+import com.refuel.business.exception.RefuelDataError;
+import com.refuel.business.exception.RefuelDataException;
+import com.refuel.business.time.Granularity;
+import com.refuel.model.RefuelInfo;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.time.LocalDate;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.Matchers.contains;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class RefuelSnapshotFileTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final RefuelFileLoader loader = new RefuelFileLoader(ForkJoinPool.commonPool(), 8);
+
+    @Test
+    public void unchangedFileShouldBeRestoredWithoutParsing() throws Exception {
+        File file = write("98|1.319|50.56|01.01.2016\n95|1.5|40|15.01.2017\n");
+        newDataSet(file).load(LoadProgressListener.NONE);
+        assertThat(RefuelSnapshotFile.sidecarOf(file).getFile().isFile(), is(true));
+
+        AtomicInteger progressCalls = new AtomicInteger();
+        RefuelDataSet dataSet = newDataSet(file);
+        dataSet.load((loadedBytes, totalBytes) -> progressCalls.incrementAndGet());
+
+        assertThat(progressCalls.get(), is(equalTo(0)));
+        assertThat(dataSet.getColumns().asList(), contains(
+                new RefuelInfo("98", 1.319, 50.56, LocalDate.of(2016, 1, 1)),
+                new RefuelInfo("95", 1.5, 40.0, LocalDate.of(2017, 1, 15))));
+        assertThat(dataSet.snapshot().getRefuelingByMonth("95", 2017).get(1), is(equalTo(60.0)));
+        assertThat(dataSet.snapshot().page(RefuelConstants.FUEL_TYPE_ALL, Granularity.YEAR, null).getBucketCount(),
+                is(equalTo(2)));
+    }
+
+    @Test
+    public void linesAppendedAfterSnapshotShouldBeParsed() throws Exception {
+        File file = write("98|1.319|50.56|01.01.2016\n");
+        newDataSet(file).load(LoadProgressListener.NONE);
+        Files.write(file.toPath(), "D|1|10|01.02.2016\n".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+
+        RefuelDataSet dataSet = newDataSet(file);
+        dataSet.load(LoadProgressListener.NONE);
+
+        assertThat(dataSet.getColumns().size(), is(equalTo(2)));
+        assertThat(dataSet.snapshot().getRefuelingByMonth("D", 2016).get(2), is(equalTo(10.0)));
+
+        // the new snapshot covers the appended line
+        RefuelDataSet restored = newDataSet(file);
+        restored.load((loadedBytes, totalBytes) -> {
+            throw new AssertionError("Snapshot was not used");
+        });
+        assertThat(restored.getColumns().size(), is(equalTo(2)));
+    }
+
+    @Test
+    public void skippedLinesShouldBeRestoredOnlyForLenientLoads() throws Exception {
+        File file = write("98|1.319|50.56|01.01.2016\nD|asd|5.00|01.02.2016\n");
+        RefuelFileLoader lenientLoader = new RefuelFileLoader(ForkJoinPool.commonPool(), 8, true);
+        new RefuelDataSet(file, lenientLoader, RefuelSnapshotFile.sidecarOf(file)).load(LoadProgressListener.NONE);
+
+        RefuelDataSet restored = new RefuelDataSet(file, lenientLoader, RefuelSnapshotFile.sidecarOf(file));
+        restored.load((loadedBytes, totalBytes) -> {
+            throw new AssertionError("Snapshot was not used");
+        });
+        assertThat(restored.getColumns().size(), is(equalTo(1)));
+        assertThat(restored.getRejects().get(RefuelDataError.INVALID_NUMBER), is(equalTo(1L)));
+
+        try {
+            newDataSet(file).load(LoadProgressListener.NONE);
+            fail("RefuelDataException expected");
+        } catch (RefuelDataException e) {
+            assertThat(e.getLineNumber(), is(equalTo(2L)));
+        }
+    }
+
+    @Test
+    public void duplicatesShouldBeDroppedFromAppendedLinesAndCountedInSnapshot() throws Exception {
+        File file = write("98|1.319|50.56|01.01.2016\nD|1|10|01.02.2016\n98|1.319|50.56|01.01.2016\n");
+        RefuelDataSet dataSet = new RefuelDataSet(file, loader, RefuelSnapshotFile.sidecarOf(file), true);
+        dataSet.load(LoadProgressListener.NONE);
+        assertThat(dataSet.getColumns().size(), is(equalTo(2)));
+        assertThat(dataSet.getDuplicateCount(), is(equalTo(1L)));
+
+        // the repeated line is dropped, the unfinished one only when it is complete
+        Files.write(file.toPath(), "D|1|10|01.02.2016\nD|2|5|01.03.2016\nD|2|5|01.03.2016".getBytes(
+                StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+        RefuelDataSet appended = new RefuelDataSet(file, loader, RefuelSnapshotFile.sidecarOf(file), true);
+        appended.load(LoadProgressListener.NONE);
+        assertThat(appended.getColumns().size(), is(equalTo(4)));
+        assertThat(appended.getDuplicateCount(), is(equalTo(2L)));
+        Files.write(file.toPath(), "\n".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+        appended.update(LoadProgressListener.NONE);
+        assertThat(appended.getColumns().size(), is(equalTo(3)));
+        assertThat(appended.getDuplicateCount(), is(equalTo(3L)));
+        assertThat(appended.snapshot().getRefuelingByMonth("D", 2016).get(3), is(equalTo(10.0)));
+
+        // a data set that keeps the duplicates parses the file again
+        RefuelDataSet keepingDuplicates = newDataSet(file);
+        keepingDuplicates.load(LoadProgressListener.NONE);
+        assertThat(keepingDuplicates.getColumns().size(), is(equalTo(6)));
+        assertThat(keepingDuplicates.getDuplicateCount(), is(equalTo(0L)));
+    }
+
+    @Test
+    public void aggregateOnlyDataSetShouldKeepTheChartWithoutTheRecords() throws Exception {
+        File file = write("98|1.319|50.56|01.01.2016\n95|1.5|40|15.01.2017\n95|1|10|20.01.2017\nD|1|10|01.02.2016");
+        RefuelDataSet dataSet = new RefuelDataSet(file, loader, RefuelSnapshotFile.sidecarOf(file), false, true);
+        dataSet.load(LoadProgressListener.NONE);
+        assertThat(dataSet.getColumns().size(), is(equalTo(1)));
+        assertThat(dataSet.snapshot().getFuelTypes(), contains("98", "95", "D"));
+        assertThat(dataSet.snapshot().getRefuelingByMonth("95", 2017).get(1), is(equalTo(70.0)));
+
+        // the snapshot holds the aggregates and the tail
+        RefuelDataSet restored = new RefuelDataSet(file, loader, RefuelSnapshotFile.sidecarOf(file), false, true);
+        restored.load((loadedBytes, totalBytes) -> {
+            throw new AssertionError("Snapshot was not used");
+        });
+        assertThat(restored.getColumns().size(), is(equalTo(1)));
+        assertThat(restored.snapshot().getRefuelingByMonth("D", 2016).get(2), is(equalTo(10.0)));
+
+        // the records of the tail are retracted once its line is complete
+        Files.write(file.toPath(), "\nD|1|5|01.03.2016\n".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+        restored.update(LoadProgressListener.NONE);
+        assertThat(restored.getColumns().size(), is(equalTo(0)));
+        assertThat(restored.snapshot().getRefuelingByMonth("D", 2016).get(2), is(equalTo(10.0)));
+        assertThat(restored.snapshot().getRefuelingByMonth("D", 2016).get(3), is(equalTo(5.0)));
+
+        // a data set that keeps the records does not use the snapshot
+        RefuelDataSet keepingRecords = newDataSet(file);
+        keepingRecords.load(LoadProgressListener.NONE);
+        assertThat(keepingRecords.getColumns().size(), is(equalTo(5)));
+
+        // a failed update does not change the chart, not even with the lines before the invalid one
+        Files.write(file.toPath(), "95|2|10|01.02.2017\nD|asd|5|01.04.2016\n".getBytes(StandardCharsets.UTF_8),
+                StandardOpenOption.APPEND);
+        try {
+            restored.update(LoadProgressListener.NONE);
+            fail("RefuelDataException expected");
+        } catch (RefuelDataException e) {
+            assertThat(e.getLineNumber(), is(equalTo(7L)));
+        }
+        assertThat(restored.snapshot().getRefuelingByMonth("95", 2017).containsKey(2), is(false));
+        assertThat(restored.snapshot().getRefuelingByMonth("D", 2016).get(3), is(equalTo(5.0)));
+    }
+
+    @Test
+    public void rewrittenFileShouldNotUseSnapshot() throws Exception {
+        File file = write("98|1.319|50.56|01.01.2016\n");
+        newDataSet(file).load(LoadProgressListener.NONE);
+        // same size, possibly the same modification time
+        file = write("95|1.319|50.56|01.01.2016\n");
+
+        RefuelDataSet dataSet = newDataSet(file);
+        dataSet.load(LoadProgressListener.NONE);
+
+        assertThat(dataSet.getColumns().getFuelName(0), is(equalTo("95")));
+    }
+
+    @Test
+    public void fileRewrittenWithTheSameModificationTimeShouldNotUseSnapshot() throws Exception {
+        StringBuilder content = new StringBuilder();
+        for (int line = 1; line <= 500; line++) {
+            content.append(line == 200 ? "95|1.319|45.32|15.01.2016\n" : "98|1.319|50.56|01.01.2016\n");
+        }
+        File file = write(content.toString());
+        newDataSet(file).load(LoadProgressListener.NONE);
+        FileTime lastModified = Files.getLastModifiedTime(file.toPath());
+
+        file = write(content.toString().replace("95|1.319|", "95|1.419|"));
+        Files.setLastModifiedTime(file.toPath(), lastModified);
+
+        assertThat(RefuelSnapshotFile.sidecarOf(file).read(file), is(nullValue()));
+        RefuelDataSet dataSet = newDataSet(file);
+        dataSet.load(LoadProgressListener.NONE);
+        assertThat(dataSet.getColumns().getFuelPrice(199), is(equalTo(1.419)));
+    }
+
+    @Test
+    public void snapshotShouldBeIgnoredWhenModificationTimeChangedOrFileShrank() throws Exception {
+        File file = write("98|1.319|50.56|01.01.2016\nD|1.219|5.00|01.02.2016");
+        newDataSet(file).load(LoadProgressListener.NONE);
+        RefuelSnapshotFile snapshotFile = RefuelSnapshotFile.sidecarOf(file);
+        assertThat(snapshotFile.read(file).getState().getSize(), is(equalTo(file.length())));
+
+        // the same bytes written again
+        FileTime lastModified = Files.getLastModifiedTime(file.toPath());
+        Files.setLastModifiedTime(file.toPath(), FileTime.fromMillis(lastModified.toMillis() + 2000));
+        assertThat(snapshotFile.read(file), is(nullValue()));
+
+        newDataSet(file).load(LoadProgressListener.NONE);
+        // the unfinished last line is shorter
+        write("98|1.319|50.56|01.01.2016\nD|1.219|5");
+        assertThat(snapshotFile.read(file), is(nullValue()));
+    }
+
+    @Test
+    public void snapshotOfOtherVersionShouldBeIgnored() throws Exception {
+        File file = write("98|1.319|50.56|01.01.2016\n");
+        Files.write(RefuelSnapshotFile.sidecarOf(file).getFile().toPath(), new byte[]{1, 2, 3, 4, 5, 6, 7, 8});
+
+        RefuelDataSet dataSet = newDataSet(file);
+        dataSet.load(LoadProgressListener.NONE);
+
+        assertThat(dataSet.getColumns().size(), is(equalTo(1)));
+    }
+
+    private RefuelDataSet newDataSet(File file) {
+        return new RefuelDataSet(file, loader, RefuelSnapshotFile.sidecarOf(file));
+    }
+
+    private File write(String content) throws Exception {
+        File file = new File(folder.getRoot(), "refuel.txt");
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+}
@@ -0,0 +1,72 @@
+package com.refuel.business.metrics;
+
+import com.refuel.business.exception.RefuelDataError;
+import com.refuel.business.exception.RefuelDataException;
+import com.refuel.business.load.RefuelFileLoader;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class RefuelMetricsTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final RefuelMetrics metrics = RefuelMetrics.get();
+    private final RefuelFileLoader loader = new RefuelFileLoader();
+
+    @Test
+    public void loadShouldCountParsedLinesAndBytes() throws Exception {
+        String content = "98|1.319|50.56|01.01.2016\n95|1.319|45,32|15.01.2016\nD|1.219|5.00|01.02.2016";
+        long lines = metrics.getLinesParsed();
+        long bytes = metrics.getBytesRead();
+        long loads = metrics.getLoadCount();
+
+        loader.load(write(content));
+
+        assertThat(metrics.getLinesParsed() - lines, is(equalTo(3L)));
+        assertThat(metrics.getBytesRead() - bytes, is(equalTo((long) content.length())));
+        assertThat(metrics.getLoadCount() - loads, is(equalTo(1L)));
+    }
+
+    @Test
+    public void invalidLineShouldBeCountedByKind() throws Exception {
+        long invalidDates = metrics.getParseErrors().get(RefuelDataError.INVALID_DATE.name());
+
+        try {
+            loader.load(write("98|1.319|50.56|01.13.2016\n"));
+            fail("RefuelDataException expected");
+        } catch (RefuelDataException e) {
+            assertThat(metrics.getParseErrors().get(RefuelDataError.INVALID_DATE.name()) - invalidDates,
+                    is(equalTo(1L)));
+        }
+    }
+
+    @Test
+    public void reloadLatencyShouldBeRecordedOncePerShownChange() {
+        File file = new File(folder.getRoot(), "vehicle.txt");
+        long reloads = metrics.getReloadCount();
+
+        metrics.fileChanged(file);
+        metrics.fileChanged(file);
+        metrics.chartRefreshed(file);
+        metrics.chartRefreshed(file);
+
+        assertThat(metrics.getReloadCount() - reloads, is(equalTo(1L)));
+    }
+
+    private File write(String content) throws Exception {
+        File file = folder.newFile();
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+}
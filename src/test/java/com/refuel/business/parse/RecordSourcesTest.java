@@ -0,0 +1,103 @@
+package com.refuel.business.parse;
+
+import com.refuel.business.exception.RefuelDataError;
+import com.refuel.business.exception.RefuelDataException;
+import com.refuel.model.RefuelColumns;
+import com.refuel.model.RefuelInfo;
+import org.junit.Test;
+
+import java.time.LocalDate;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.Matchers.contains;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class RecordSourcesTest {
+
+    @Test
+    public void sourceShouldBeRecognizedByFirstLine() {
+        assertThat(RecordSources.forFirstLine("98|1.319|50.56|01.01.2016").getName(), is(equalTo("pipe")));
+        assertThat(RecordSources.forFirstLine("Date,fuelName,fuelPrice,fuelAmount,refuellingDate").getName(),
+                is(equalTo("csv")));
+        assertThat(RecordSources.forFirstLine(" {\"fuelName\": \"98\"}").getName(), is(equalTo("jsonl")));
+        assertThat(RecordSources.forFirstLine("").getName(), is(equalTo("pipe")));
+    }
+
+    @Test
+    public void csvColumnsShouldBeReadByHeaderInAnyOrder() {
+        RecordSource.LineReader reader = RecordSources.named("csv")
+                .newReader("refuellingDate,FuelName,station,fuelAmount,fuelPrice");
+        RefuelColumns records = new RefuelColumns();
+
+        String text = "2016-01-01,98,\"Main St, 5\",50.56,1.319\n12.11.2016,\"E\"\"85\",,\"15,12\",0.95\n";
+        int lineEnd = text.indexOf('\n');
+        reader.read(text, 0, lineEnd, records);
+        reader.read(text, lineEnd + 1, text.length() - 1, records);
+
+        assertThat(records.asList(), contains(
+                new RefuelInfo("98", 1.319, 50.56, LocalDate.of(2016, 1, 1)),
+                new RefuelInfo("E\"85", 0.95, 15.12, LocalDate.of(2016, 11, 12))));
+    }
+
+    @Test
+    public void csvHeaderWithoutAFieldShouldThrowException() {
+        try {
+            RecordSources.named("csv").newReader("fuelName,fuelPrice,refuellingDate");
+            fail("RefuelDataException expected");
+        } catch (RefuelDataException e) {
+            assertThat(e.getMessage(), is(equalTo("CSV header must have a fuelAmount column")));
+        }
+    }
+
+    @Test
+    public void csvLineShouldHaveAllColumnsOfHeader() {
+        RecordSource.LineReader reader = RecordSources.named("csv")
+                .newReader("fuelName,fuelPrice,fuelAmount,refuellingDate");
+        assertError(reader, "98,1.319,50.56", RefuelDataError.WRONG_COLUMN_COUNT);
+        assertError(reader, "98,\"1.319,50.56,01.01.2016", RefuelDataError.MALFORMED_LINE);
+        assertError(reader, "98,1.319,-50.56,01.01.2016", RefuelDataError.NEGATIVE_VALUE);
+    }
+
+    @Test
+    public void jsonLineShouldBeReadWithKeysInAnyOrder() {
+        RecordSource.LineReader reader = RecordSources.named("jsonl").newReader(null);
+        RefuelColumns records = new RefuelColumns();
+
+        String nested = "{\"refuellingDate\": \"2016-01-01\", \"fuelPrice\": 1.319, \"extra\": {\"a\": [1, \"}\"]},"
+                + " \"fuelAmount\": 50.56, \"fuelName\": \"98\"}";
+        reader.read(nested, 0, nested.length(), records);
+        String escaped = " {\"fuel\\u004eame\":\"E\\\"85\",\"fuelPrice\":\"0,95\",\"fuelAmount\":15.12,"
+                + "\"refuellingDate\":\"12.11.2016\",\"note\":null} ";
+        reader.read(escaped, 0, escaped.length(), records);
+
+        assertThat(records.asList(), contains(
+                new RefuelInfo("98", 1.319, 50.56, LocalDate.of(2016, 1, 1)),
+                new RefuelInfo("E\"85", 0.95, 15.12, LocalDate.of(2016, 11, 12))));
+    }
+
+    @Test
+    public void invalidJsonLinesShouldThrowException() {
+        RecordSource.LineReader reader = RecordSources.named("jsonl").newReader(null);
+        assertError(reader, "{\"fuelName\": \"98\", \"fuelPrice\": 1.319, \"refuellingDate\": \"2016-01-01\"}",
+                RefuelDataError.WRONG_COLUMN_COUNT);
+        assertError(reader, "{\"fuelName\": \"98\", \"fuelPrice\": 1e3, \"fuelAmount\": 1, \"refuellingDate\": "
+                + "\"2016-01-01\"}", RefuelDataError.INVALID_NUMBER);
+        assertError(reader, "{\"fuelName\": \"98\", \"fuelPrice\": 1, \"fuelAmount\": 1, \"refuellingDate\": "
+                + "\"2016-13-01\"}", RefuelDataError.INVALID_DATE);
+        assertError(reader, "{\"fuelName\": \"98\", \"fuelPrice\": 1, \"fuelAmount\": 1, \"refuellingDate\": "
+                + "\"2016-01-01\"", RefuelDataError.MALFORMED_LINE);
+    }
+
+    private static void assertError(RecordSource.LineReader reader, String line, RefuelDataError error) {
+        RefuelColumns records = new RefuelColumns();
+        try {
+            reader.read(line, 0, line.length(), records);
+            fail("RefuelDataException expected");
+        } catch (RefuelDataException e) {
+            assertThat(e.getError(), is(equalTo(error)));
+            assertThat(records.size(), is(equalTo(0)));
+        }
+    }
+}
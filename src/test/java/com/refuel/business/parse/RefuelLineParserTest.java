@@ -0,0 +1,69 @@
+package com.refuel.business.parse;
+
+import com.refuel.business.exception.RefuelDataException;
+import com.refuel.model.RefuelInfo;
+import org.junit.Test;
+
+import java.time.LocalDate;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class RefuelLineParserTest {
+
+    @Test
+    public void lineShouldBeParsedWithinRange() {
+        RefuelLineParser parser = new RefuelLineParser();
+        String text = "98|1.319|50.56|01.01.2016\nE85|0,95|15,12|12.11.2016\n";
+        parser.parse(text, 26, 51);
+        assertThat(parser.getFuelName(), is(equalTo("E85")));
+        assertThat(parser.getFuelPrice(), is(equalTo(0.95)));
+        assertThat(parser.getFuelAmount(), is(equalTo(15.12)));
+        assertThat(parser.getEpochDay(), is(equalTo((int) LocalDate.of(2016, 11, 12).toEpochDay())));
+    }
+
+    @Test
+    public void numbersShouldBeReadUntilFirstInvalidChar() {
+        RefuelInfo refuelInfo = new RefuelLineParser().parse("98|1.319.5|50,56 l|01.01.2016");
+        assertThat(refuelInfo.getFuelPrice(), is(equalTo(1.319)));
+        assertThat(refuelInfo.getFuelAmount(), is(equalTo(50.56)));
+    }
+
+    @Test
+    public void numbersShouldBeRoundedHalfUpToFourDecimals() {
+        RefuelLineParser parser = new RefuelLineParser();
+        parser.parse("98|1.31900000000000000001|45,123450|01.01.2016");
+        assertThat(parser.getFuelPriceUnits(), is(equalTo(13190L)));
+        assertThat(parser.getFuelAmountUnits(), is(equalTo(451235L)));
+        assertThat(parser.getFuelAmount(), is(equalTo(45.1235)));
+    }
+
+    @Test(expected = RefuelDataException.class)
+    public void numberOutOfFixedPointRangeShouldThrowException() {
+        new RefuelLineParser().parse("98|1.319|123456789012345678,9|01.01.2016");
+    }
+
+    @Test
+    public void dayAfterEndOfMonthShouldBeMovedToLastDay() {
+        RefuelLineParser parser = new RefuelLineParser();
+        assertThat(parser.parse("98|1|1|31.04.2016").getRefuellingDate(), is(equalTo(LocalDate.of(2016, 4, 30))));
+        assertThat(parser.parse("98|1|1|30.02.2016").getRefuellingDate(), is(equalTo(LocalDate.of(2016, 2, 29))));
+        assertThat(parser.parse("98|1|1|29.02.2019").getRefuellingDate(), is(equalTo(LocalDate.of(2019, 2, 28))));
+    }
+
+    @Test(expected = RefuelDataException.class)
+    public void invalidDateShouldThrowException() {
+        new RefuelLineParser().parse("98|1.319|50.56|32.01.2016");
+    }
+
+    @Test(expected = RefuelDataException.class)
+    public void trailingCharsAfterDateShouldThrowException() {
+        new RefuelLineParser().parse("98|1.319|50.56|01.01.2016\r");
+    }
+
+    @Test(expected = RefuelDataException.class)
+    public void missingColumnShouldThrowException() {
+        new RefuelLineParser().parse("98|1.319|50.56");
+    }
+}
@@ -0,0 +1,118 @@
+package com.refuel.business.store;
+
+import com.refuel.business.RefuelConstants;
+import com.refuel.business.aggregate.RefuelChartData;
+import com.refuel.business.exception.RefuelDataException;
+import com.refuel.business.time.EpochDays;
+import com.refuel.business.time.Granularity;
+import com.refuel.model.RefuelColumns;
+import com.refuel.model.RefuelInfo;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.time.LocalDate;
+import java.util.Arrays;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.Matchers.contains;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class RefuelStoreTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void rangeShouldBeReadFromReopenedSegments() throws Exception {
+        RefuelStore store = RefuelStore.open(folder.getRoot(), 3000);
+        // 5000 days from 2010 on, in descending order, every tenth one is diesel
+        RefuelColumns columns = new RefuelColumns();
+        int firstDay = EpochDays.of(2010, 1, 1);
+        for (int i = 4999; i >= 0; i--) {
+            columns.add(new RefuelInfo(i % 10 == 0 ? "D" : "98", 1.0, 10.0, LocalDate.ofEpochDay(firstDay + i)));
+        }
+        store.append(columns);
+        store.append(RefuelColumns.of(Arrays.asList(new RefuelInfo("D", 2.0, 5.0, LocalDate.of(2018, 3, 1)))));
+
+        RefuelStore reopened = RefuelStore.open(folder.getRoot(), 3000);
+        assertThat(reopened.getSegmentCount(), is(equalTo(3)));
+        assertThat(reopened.size(), is(equalTo(5001L)));
+
+        int fromDay = EpochDays.of(2018, 3, 1);
+        int toDay = EpochDays.of(2018, 9, 30);
+        assertThat(reopened.segmentsBetween(fromDay, toDay).size(), is(equalTo(3)));
+        assertThat(reopened.segmentsBetween(EpochDays.of(2012, 1, 1), EpochDays.of(2012, 12, 31)).size(),
+                is(equalTo(1)));
+        assertThat(reopened.segmentsBetween(EpochDays.of(2020, 1, 1), EpochDays.of(2020, 12, 31)).size(),
+                is(equalTo(1)));
+        RefuelColumns diesel = reopened.read(fromDay, toDay, "D");
+        int dieselDays = 0;
+        for (int day = fromDay; day <= toDay; day++) {
+            if ((day - firstDay) % 10 == 0) {
+                dieselDays++;
+            }
+        }
+        assertThat(diesel.size(), is(equalTo(dieselDays + 1)));
+        for (int row = 0; row < diesel.size(); row++) {
+            assertThat(diesel.getFuelName(row), is(equalTo("D")));
+        }
+
+        RefuelChartData chartData = reopened.chartData(fromDay, toDay);
+        assertThat(chartData.getFuelTypes(), contains("D", "98"));
+        assertThat(chartData.allBuckets(RefuelConstants.FUEL_TYPE_ALL, Granularity.YEAR).getRefuelCount(0),
+                is(equalTo(toDay - fromDay + 2)));
+        assertThat(reopened.read(EpochDays.of(2030, 1, 1), Integer.MAX_VALUE, null).size(), is(equalTo(0)));
+    }
+
+    @Test
+    public void dataFileGivenAgainShouldOnlyAppendItsNewRecords() throws Exception {
+        File car = new File(folder.getRoot(), "car.txt");
+        File van = new File(folder.getRoot(), "van.txt");
+        RefuelInfo refueling = new RefuelInfo("98", 1.5, 10.0, LocalDate.of(2016, 1, 1));
+        RefuelStore store = RefuelStore.open(new File(folder.getRoot(), "store"));
+
+        // two identical refuelings of one file, and the same rows of another vehicle
+        assertThat(store.appendFrom(car, RefuelColumns.of(Arrays.asList(refueling, refueling))), is(equalTo(0)));
+        assertThat(store.appendFrom(van, RefuelColumns.of(Arrays.asList(refueling, refueling))), is(equalTo(0)));
+        assertThat(store.size(), is(equalTo(4L)));
+
+        RefuelStore reopened = RefuelStore.open(new File(folder.getRoot(), "store"));
+        assertThat(reopened.appendFrom(car, RefuelColumns.of(Arrays.asList(refueling, refueling))), is(equalTo(2)));
+        RefuelInfo appended = new RefuelInfo("D", 1.2, 20.0, LocalDate.of(2016, 2, 1));
+        assertThat(reopened.appendFrom(car, RefuelColumns.of(Arrays.asList(refueling, refueling, appended))),
+                is(equalTo(2)));
+        assertThat(reopened.size(), is(equalTo(5L)));
+        assertThat(reopened.read(Integer.MIN_VALUE, Integer.MAX_VALUE, "D").size(), is(equalTo(1)));
+
+        try {
+            reopened.appendFrom(van, RefuelColumns.of(Arrays.asList(refueling, appended)));
+            fail("RefuelDataException expected");
+        } catch (RefuelDataException e) {
+            assertThat(reopened.size(), is(equalTo(5L)));
+        }
+    }
+
+    @Test
+    public void sparseIndexShouldCoverTheRecordsOfTheRange() throws Exception {
+        RefuelStore store = RefuelStore.open(folder.getRoot());
+        RefuelColumns columns = new RefuelColumns();
+        // 3000 refuelings on one day, followed by one on each of the following days
+        for (int i = 0; i < 3000; i++) {
+            columns.add(new RefuelInfo("98", 1.0, 1.0, LocalDate.ofEpochDay(100)));
+        }
+        for (int day = 101; day < 2000; day++) {
+            columns.add(new RefuelInfo("98", 1.0, 1.0, LocalDate.ofEpochDay(day)));
+        }
+        store.append(columns);
+
+        StoreSegment segment = store.segmentsBetween(100, 100).get(0);
+        assertThat(segment.firstRowFrom(100), is(equalTo(0)));
+        assertThat(segment.endRowTo(100), is(equalTo(3 * StoreSegment.INDEX_INTERVAL)));
+        assertThat(store.read(100, 100, null).size(), is(equalTo(3000)));
+        assertThat(store.read(150, 160, RefuelConstants.FUEL_TYPE_ALL).size(), is(equalTo(11)));
+    }
+}
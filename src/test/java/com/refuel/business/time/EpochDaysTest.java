@@ -0,0 +1,24 @@
+package com.refuel.business.time;
+
+import org.junit.Test;
+
+import java.time.LocalDate;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class EpochDaysTest {
+
+    @Test
+    public void calculationsShouldMatchLocalDate() {
+        LocalDate end = LocalDate.of(2101, 1, 1);
+        for (LocalDate date = LocalDate.of(1899, 1, 1); date.isBefore(end); date = date.plusDays(1)) {
+            int epochDay = (int) date.toEpochDay();
+            assertThat(EpochDays.of(date.getYear(), date.getMonthValue(), date.getDayOfMonth()), is(equalTo(epochDay)));
+            assertThat(EpochDays.year(epochDay), is(equalTo(date.getYear())));
+            assertThat(EpochDays.monthOfYear(epochDay), is(equalTo(date.getMonthValue())));
+            assertThat(EpochDays.dayOfMonth(epochDay), is(equalTo(date.getDayOfMonth())));
+        }
+    }
+}
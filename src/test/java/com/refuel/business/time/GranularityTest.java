@@ -0,0 +1,54 @@
+package com.refuel.business.time;
+
+import org.junit.Test;
+
+import java.time.LocalDate;
+import java.time.temporal.IsoFields;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class GranularityTest {
+
+    @Test
+    public void weeksShouldFollowIsoWeekBasedYears() {
+        for (LocalDate date = LocalDate.of(1965, 1, 1); date.getYear() < 2035; date = date.plusDays(1)) {
+            int bucket = Granularity.WEEK.bucketOf((int) date.toEpochDay());
+            int weekBasedYear = date.get(IsoFields.WEEK_BASED_YEAR);
+            int week = date.get(IsoFields.WEEK_OF_WEEK_BASED_YEAR);
+
+            assertThat(Granularity.WEEK.pageOf(bucket), is(equalTo(weekBasedYear)));
+            assertThat(Granularity.WEEK.labelOf(bucket), is(equalTo(String.format("W%02d", week))));
+            assertThat(Granularity.WEEK.firstDayOf(bucket), is(equalTo((int) date.minusDays(date.getDayOfWeek().getValue() - 1).toEpochDay())));
+        }
+    }
+
+    @Test
+    public void bucketsShouldStartOnTheirFirstDay() {
+        LocalDate date = LocalDate.of(2019, 8, 17);
+        int epochDay = (int) date.toEpochDay();
+
+        assertThat(Granularity.MONTH.firstDayOf(Granularity.MONTH.bucketOf(epochDay)),
+                is(equalTo((int) LocalDate.of(2019, 8, 1).toEpochDay())));
+        assertThat(Granularity.QUARTER.firstDayOf(Granularity.QUARTER.bucketOf(epochDay)),
+                is(equalTo((int) LocalDate.of(2019, 7, 1).toEpochDay())));
+        assertThat(Granularity.QUARTER.labelOf(Granularity.QUARTER.bucketOf(epochDay)), is(equalTo("Q3")));
+        assertThat(Granularity.YEAR.firstDayOf(Granularity.YEAR.bucketOf(epochDay)),
+                is(equalTo((int) LocalDate.of(2019, 1, 1).toEpochDay())));
+        assertThat(Granularity.DAY.lastBucketOfPage(Granularity.DAY.pageOf(epochDay)),
+                is(equalTo((int) LocalDate.of(2019, 8, 31).toEpochDay())));
+    }
+
+    @Test
+    public void yearsShouldBeInOnePage() {
+        int bucket = Granularity.YEAR.bucketOf((int) LocalDate.of(2019, 8, 17).toEpochDay());
+        int page = Granularity.YEAR.pageOf(bucket);
+
+        assertThat(Granularity.YEAR.pageOf(Granularity.YEAR.bucketOf((int) LocalDate.of(1, 1, 1).toEpochDay())),
+                is(equalTo(page)));
+        assertThat(Granularity.YEAR.firstBucketOfPage(page) <= bucket, is(true));
+        assertThat(Granularity.YEAR.lastBucketOfPage(page) >= bucket, is(true));
+        assertThat(Granularity.YEAR.lastBucketOfPage(page), is(equalTo(9999)));
+    }
+}
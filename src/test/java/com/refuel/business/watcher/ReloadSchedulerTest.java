@@ -0,0 +1,51 @@
+package com.refuel.business.watcher;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class ReloadSchedulerTest {
+
+    @Test
+    public void burstOfRequestsShouldCauseOneReload() throws Exception {
+        AtomicInteger reloads = new AtomicInteger();
+        ReloadScheduler scheduler = new ReloadScheduler(100, superseded -> reloads.incrementAndGet());
+        try {
+            for (int i = 0; i < 5; i++) {
+                scheduler.requestReload();
+                Thread.sleep(10);
+            }
+            Thread.sleep(400);
+            assertThat(reloads.get(), is(equalTo(1)));
+        } finally {
+            scheduler.shutdown();
+        }
+    }
+
+    @Test
+    public void runningReloadShouldBeSupersededByNewerRequest() throws Exception {
+        AtomicInteger supersededReloads = new AtomicInteger();
+        AtomicInteger reloads = new AtomicInteger();
+        ReloadScheduler[] scheduler = new ReloadScheduler[1];
+        scheduler[0] = new ReloadScheduler(20, superseded -> {
+            if (reloads.incrementAndGet() == 1) {
+                scheduler[0].requestReload();
+                if (superseded.getAsBoolean()) {
+                    supersededReloads.incrementAndGet();
+                }
+            }
+        });
+        try {
+            scheduler[0].requestReload();
+            Thread.sleep(400);
+            assertThat(reloads.get(), is(equalTo(2)));
+            assertThat(supersededReloads.get(), is(equalTo(1)));
+        } finally {
+            scheduler[0].shutdown();
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package com.refuel.cli;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class RefuelReportTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    private final ByteArrayOutputStream err = new ByteArrayOutputStream();
+
+    @Test
+    public void csvShouldHaveRowsOfEveryVehicleAndAllVehicles() throws Exception {
+        File car = write("car.txt", "98|1.5|10|01.01.2016\n95|2|10|15.01.2016\n98|1|5|03.01.2019\n");
+        File van = write("van.txt", "D|1.25|20|01.01.2016\n");
+
+        int exitCode = run("--fuel-type", "all", car.getPath(), van.getPath());
+
+        assertThat(exitCode, is(equalTo(0)));
+        assertThat(output(), is(equalTo("vehicle,fuelType,period,refuelCount,spent\n"
+                + "car.txt,all,2016-01,2,35\n"
+                + "car.txt,all,2019-01,1,5\n"
+                + "van.txt,all,2016-01,1,25\n"
+                + "all,all,2016-01,3,60\n"
+                + "all,all,2019-01,1,5\n")));
+    }
+
+    @Test
+    public void jsonShouldHaveOneObjectPerRow() throws Exception {
+        File car = write("car.txt", "98|1.319|50.56|01.01.2016\n98|1|10|05.01.2016\n");
+
+        int exitCode = run("--format", "json", "--granularity", "week", car.getPath());
+
+        assertThat(exitCode, is(equalTo(0)));
+        assertThat(output(), is(equalTo("[\n"
+                + "{\"vehicle\":\"car.txt\",\"fuelType\":\"all\",\"period\":\"2015-W53\",\"refuelCount\":1,\"spent\":66.68864},\n"
+                + "{\"vehicle\":\"car.txt\",\"fuelType\":\"all\",\"period\":\"2016-W01\",\"refuelCount\":1,\"spent\":10},\n"
+                + "{\"vehicle\":\"car.txt\",\"fuelType\":\"98\",\"period\":\"2015-W53\",\"refuelCount\":1,\"spent\":66.68864},\n"
+                + "{\"vehicle\":\"car.txt\",\"fuelType\":\"98\",\"period\":\"2016-W01\",\"refuelCount\":1,\"spent\":10}\n"
+                + "]\n")));
+    }
+
+    @Test
+    public void invalidFileShouldBeReportedAndOthersWritten() throws Exception {
+        File car = write("car.txt", "98|1|10|01.01.2016\n");
+        File invalid = write("invalid.txt", "98|1|10|01.01.2016\n98|-1|10|01.01.2016\n");
+
+        int exitCode = run("--granularity", "year", invalid.getPath(), car.getPath());
+
+        assertThat(exitCode, is(equalTo(1)));
+        assertThat(new String(err.toByteArray(), StandardCharsets.UTF_8),
+                containsString("invalid.txt: Line 2: Values Cannot Be Negative"));
+        assertThat(output(), containsString("car.txt,98,2016,1,10\n"));
+    }
+
+    @Test
+    public void storeShouldKeepAppendedFilesAndReportTheDateRange() throws Exception {
+        File store = new File(folder.getRoot(), "fleet");
+        File y2016 = write("2016.txt", "98|1.5|10|01.01.2016\nD|1|20|15.06.2016\n");
+        // the same refuelings, e.g. of a second vehicle, are stored again
+        File copy = write("copy.txt", "98|1.5|10|01.01.2016\nD|1|20|15.06.2016\n");
+        File y2017 = write("2017.txt", "D|2|10|01.03.2017\nD|1|10|01.12.2017\n");
+
+        assertThat(run("--store", store.getPath(), y2016.getPath(), copy.getPath()), is(equalTo(0)));
+        out.reset();
+        // the file given again is not stored twice
+        int exitCode = run("--store", store.getPath(), "--fuel-type", "D", "--granularity", "year",
+                "--from", "2016-06-01", "--to", "2017-06-30", y2016.getPath(), y2017.getPath());
+
+        assertThat(exitCode, is(equalTo(0)));
+        assertThat(new String(err.toByteArray(), StandardCharsets.UTF_8),
+                containsString("2016.txt: Skipped 2 records stored before"));
+        assertThat(output(), is(equalTo("vehicle,fuelType,period,refuelCount,spent\n"
+                + "fleet,D,2016,2,40\n"
+                + "fleet,D,2017,1,20\n")));
+    }
+
+    @Test
+    public void missingDataFileArgumentShouldPrintUsage() {
+        assertThat(run("--format", "csv"), is(equalTo(2)));
+        assertThat(new String(err.toByteArray(), StandardCharsets.UTF_8), containsString("Usage: RefuelReport"));
+    }
+
+    private int run(String... args) {
+        return new RefuelReport().run(args, new PrintStream(out), new PrintStream(err));
+    }
+
+    private String output() {
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private File write(String name, String content) throws Exception {
+        File file = new File(folder.getRoot(), name);
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+}
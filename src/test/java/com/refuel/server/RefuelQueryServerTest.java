@@ -0,0 +1,116 @@
+package com.refuel.server;
+
+import com.refuel.business.aggregate.RefuelChartData;
+import com.refuel.business.load.RefuelDataSet;
+import com.refuel.business.load.RefuelFileLoader;
+import com.refuel.model.RefuelColumns;
+import com.refuel.model.RefuelInfo;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.junit.Assert.assertThat;
+
+public class RefuelQueryServerTest {
+
+    private RefuelQueryServer server;
+
+    @Before
+    public void startServer() throws IOException {
+        server = new RefuelQueryServer(0);
+        server.start();
+    }
+
+    @After
+    public void stopServer() {
+        server.stop();
+    }
+
+    @Test
+    public void spendShouldAnswerFromPublishedChartData() throws Exception {
+        Map<String, RefuelChartData> chartDataByVehicle = new LinkedHashMap<>();
+        chartDataByVehicle.put("car.txt", chartDataOf(
+                new RefuelInfo("98", 1.5, 10.0, LocalDate.of(2016, 1, 1)),
+                new RefuelInfo("95", 2.0, 10.0, LocalDate.of(2016, 1, 15))));
+        chartDataByVehicle.put("van.txt", chartDataOf(new RefuelInfo("98", 1.25, 20.0, LocalDate.of(2016, 2, 1))));
+        server.publish(chartDataByVehicle);
+
+        HttpURLConnection connection = open("/spend?fuelType=98&vehicle=all");
+
+        assertThat(connection.getResponseCode(), is(equalTo(200)));
+        assertThat(connection.getContentType(), is(equalTo("application/json; charset=utf-8")));
+        assertThat(bodyOf(connection), is(equalTo("[\n"
+                + "{\"vehicle\":\"all\",\"fuelType\":\"98\",\"period\":\"2016-01\",\"refuelCount\":1,\"spent\":15},\n"
+                + "{\"vehicle\":\"all\",\"fuelType\":\"98\",\"period\":\"2016-02\",\"refuelCount\":1,\"spent\":25}\n"
+                + "]\n")));
+    }
+
+    @Test
+    public void etagShouldChangeOnlyWithDataVersion() throws Exception {
+        server.publish(Collections.singletonMap("car.txt",
+                chartDataOf(new RefuelInfo("98", 1.5, 10.0, LocalDate.of(2016, 1, 1)))));
+        HttpURLConnection first = open("/spend?granularity=year&format=csv");
+        assertThat(bodyOf(first), is(equalTo("vehicle,fuelType,period,refuelCount,spent\n"
+                + "car.txt,all,2016,1,15\n"
+                + "car.txt,98,2016,1,15\n")));
+        String etag = first.getHeaderField("ETag");
+
+        HttpURLConnection unchanged = open("/spend?granularity=year&format=csv");
+        unchanged.setRequestProperty("If-None-Match", etag);
+        assertThat(unchanged.getResponseCode(), is(equalTo(304)));
+
+        server.publish(Collections.singletonMap("car.txt",
+                chartDataOf(new RefuelInfo("98", 1.5, 20.0, LocalDate.of(2016, 1, 1)))));
+        HttpURLConnection changed = open("/spend?granularity=year&format=csv");
+        changed.setRequestProperty("If-None-Match", etag);
+        assertThat(changed.getResponseCode(), is(equalTo(200)));
+        assertThat(changed.getHeaderField("ETag"), is(not(equalTo(etag))));
+        assertThat(bodyOf(changed), is(equalTo("vehicle,fuelType,period,refuelCount,spent\n"
+                + "car.txt,all,2016,1,30\n"
+                + "car.txt,98,2016,1,30\n")));
+    }
+
+    @Test
+    public void invalidQueryShouldBeBadRequest() throws Exception {
+        assertThat(open("/spend?granularity=decade").getResponseCode(), is(equalTo(400)));
+        assertThat(open("/spend?fuel=98").getResponseCode(), is(equalTo(400)));
+        assertThat(open("/spending").getResponseCode(), is(equalTo(404)));
+    }
+
+    private HttpURLConnection open(String pathAndQuery) throws IOException {
+        return (HttpURLConnection) new URL("http://127.0.0.1:" + server.getPort() + pathAndQuery).openConnection();
+    }
+
+    private static String bodyOf(HttpURLConnection connection) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        try (InputStream in = connection.getInputStream()) {
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                body.write(buffer, 0, read);
+            }
+        }
+        return new String(body.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static RefuelChartData chartDataOf(RefuelInfo... refuelInfos) {
+        RefuelDataSet dataSet = new RefuelDataSet(null, new RefuelFileLoader());
+        dataSet.replace(RefuelColumns.of(Arrays.asList(refuelInfos)));
+        return dataSet.snapshot();
+    }
+}